@@ -37,10 +37,21 @@ public abstract class NeedleConfigFactory {
 	}
     };
     private static NeedleConfig defaultNeedleConfig = NeedleConfig.QUIET;
+    //upper bound for the config of all threads, lowered to shed the overhead of CONTEXT and DEBUG without touching the thread configs
+    private static volatile NeedleConfig maximumNeedleConfig = NeedleConfig.DEBUG;
 
     private NeedleConfigFactory() {
     }
 
+    /**
+     * Gets the maximum config. Threads configured above it measure with the maximum config instead.
+     * 
+     * @return the maximum config
+     */
+    public static NeedleConfig getMaximumNeedleConfig() {
+	return maximumNeedleConfig;
+    }
+
     public static NeedleConfig getNeedleConfig() {
 	return doGetNeedleConfig();
     }
@@ -70,6 +81,19 @@ public abstract class NeedleConfigFactory {
 	NeedleConfigFactory.defaultNeedleConfig = defaultNeedleConfig;
     }
 
+    /**
+     * Sets the maximum config for all threads. Threads keep their own config, but measure at most with the maximum one until it gets raised again. Default is {@link NeedleConfig#DEBUG}.
+     * 
+     * @param maximumNeedleConfig
+     *            the maximum config
+     */
+    public static void setMaximumNeedleConfig(final NeedleConfig maximumNeedleConfig) {
+	if (maximumNeedleConfig == null) {
+	    throw new IllegalArgumentException("The maximum NeedleConfig shouldn't be null.");
+	}
+	NeedleConfigFactory.maximumNeedleConfig = maximumNeedleConfig;
+    }
+
     public static void setNeedleConfig(final NeedleConfig needleConfig) {
 	final NeedleConfigContext needleConfigContext = needleConfigThreadLocal.get();
 	needleConfigContext.setNeedleConfig(needleConfig);
@@ -82,7 +106,9 @@ public abstract class NeedleConfigFactory {
 
     private static NeedleConfig doGetNeedleConfig() {
 	final NeedleConfigContext needleConfigContext = needleConfigThreadLocal.get();
-	return needleConfigContext.getNeedleConfig();
+	final NeedleConfig needleConfig = needleConfigContext.getNeedleConfig();
+	final NeedleConfig maximum = maximumNeedleConfig;
+	return (needleConfig.getConfigId() > maximum.getConfigId()) ? maximum : needleConfig;
     }
 
     protected static class NeedleConfigContext {
@@ -28,22 +28,44 @@
 
 package net.sf.needles;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
+import java.util.Arrays;
 
 import net.sf.needles.aggregation.keycreator.AggregationKey;
 
+/**
+ * Id of a needle. The first 16 bytes of the id are held in two longs and the hash code is calculated once, so comparing ids doesn't need to loop over a byte array. The serialized form still is the
+ * byte array of the id, so persisted ids stay readable.
+ */
 public class NeedleId implements Serializable, AggregationKey {
 
     private static final long serialVersionUID = 1L;
-    private byte[] value;
+    private static final ObjectStreamField[] serialPersistentFields = { new ObjectStreamField("value", byte[].class) };
+    //flips the sign bit of all bytes but the first one, so that comparing the longs orders like comparing the signed bytes one by one
+    private static final long BYTE_ORDER_MASK = 0x0080808080808080L;
     public final static NeedleId EMPTY_LOG_ID = new NeedleId(new byte[] { 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0 });
 
+    private transient long high;
+    private transient long low;
+    //the amount of bytes or -1 if the id has no value
+    private transient int length;
+    //only set if the id is longer than 16 bytes
+    private transient byte[] longValue;
+    private transient int hash;
+
     public NeedleId() {
-	this.value = EMPTY_LOG_ID.value;
+	this.high = EMPTY_LOG_ID.high;
+	this.low = EMPTY_LOG_ID.low;
+	this.length = EMPTY_LOG_ID.length;
+	this.hash = EMPTY_LOG_ID.hash;
     }
 
     public NeedleId(final byte[] value) {
-	this.value = value;
+	init(value);
     }
 
     @Override
@@ -58,38 +80,25 @@ public class NeedleId implements Serializable, AggregationKey {
 	    return -1;
 	}
 	final NeedleId other = (NeedleId) o;
-	if (value == other.value) {
-	    return 0;
+	if (length != other.length) {
+	    return length < other.length ? 1 : -1;
 	}
-	if (value == null) {
-	    if (other.value != null) {
-		return 1;
-	    }
-	} else {
-	    if (other.value == null) {
-		return -1;
-	    }
-	    if (value.length < other.value.length) {
-		return 1;
-	    } else if (value.length == other.value.length) {
-		for (int i = 0; i < value.length; i++) {
-		    if (value[i] != other.value[i]) {
-			return value[i] < other.value[i] ? 1 : -1;
-		    }
+	if (high != other.high) {
+	    return (high ^ BYTE_ORDER_MASK) < (other.high ^ BYTE_ORDER_MASK) ? 1 : -1;
+	}
+	if (low != other.low) {
+	    return (low ^ BYTE_ORDER_MASK) < (other.low ^ BYTE_ORDER_MASK) ? 1 : -1;
+	}
+	if (longValue != null) {
+	    for (int i = 16; i < length; i++) {
+		if (longValue[i] != other.longValue[i]) {
+		    return longValue[i] < other.longValue[i] ? 1 : -1;
 		}
-	    } else {
-		return -1;
 	    }
 	}
-	return toString().compareTo(o.toString());
+	return 0;
     }
 
-    //    @Override
-    //    public int compareTo(final Object o) {
-    //
-    //	return toString().compareTo(o.toString());
-    //    }
-
     @Override
     public boolean equals(final Object obj) {
 	if (this == obj) {
@@ -102,42 +111,89 @@ public class NeedleId implements Serializable, AggregationKey {
 	    return false;
 	}
 	final NeedleId other = (NeedleId) obj;
-	if (value == other.value) {
-	    return true;
-	}
-	if (value == null || other.value == null) {
-	    return false;
-	}
-	final int length = value.length;
-	if (other.value.length != length) {
-	    return false;
-	}
-	for (int i = 0; i < length; i++) {
-	    if (value[i] != other.value[i]) {
-		return false;
-	    }
-	}
-
-	return true;
+	return hash == other.hash && high == other.high && low == other.low && length == other.length && (longValue == null || Arrays.equals(longValue, other.longValue));
     }
 
     @Override
     public int hashCode() {
-	int result = 0;
-	for (final byte element : value) {
-	    result = 31 * result + element;
-	}
-	return result;
+	return hash;
     }
 
     @Override
     public String toString() {
-	final StringBuilder sbMd5Hash = new StringBuilder();
-	for (final byte element : value) {
+	final StringBuilder sbMd5Hash = new StringBuilder(Math.max(length, 0) * 2);
+	for (int i = 0; i < length; i++) {
+	    final byte element = getByte(i);
 	    sbMd5Hash.append(Character.forDigit((element >> 4) & 0xf, 16));
 	    sbMd5Hash.append(Character.forDigit(element & 0xf, 16));
 	}
 	return sbMd5Hash.toString();
     }
 
+    /**
+     * Gets a copy of the bytes of the id.
+     * 
+     * @return the value or null if the id has no value
+     */
+    byte[] getValue() {
+	if (length < 0) {
+	    return null;
+	}
+	if (longValue != null) {
+	    return longValue.clone();
+	}
+	final byte[] value = new byte[length];
+	for (int i = 0; i < length; i++) {
+	    value[i] = getByte(i);
+	}
+	return value;
+    }
+
+    private byte getByte(final int index) {
+	if (index < 8) {
+	    return (byte) (high >>> (56 - index * 8));
+	} else if (index < 16) {
+	    return (byte) (low >>> (56 - (index - 8) * 8));
+	}
+	return longValue[index];
+    }
+
+    private void init(final byte[] value) {
+	high = 0;
+	low = 0;
+	longValue = null;
+	if (value == null) {
+	    length = -1;
+	} else {
+	    length = value.length;
+	    for (int i = 0; i < Math.min(length, 16); i++) {
+		if (i < 8) {
+		    high |= (value[i] & 0xffL) << (56 - i * 8);
+		} else {
+		    low |= (value[i] & 0xffL) << (56 - (i - 8) * 8);
+		}
+	    }
+	    if (length > 16) {
+		longValue = value.clone();
+	    }
+	}
+	long result = high ^ Long.rotateLeft(low, 32);
+	result = 31 * result + length;
+	if (longValue != null) {
+	    result = 31 * result + Arrays.hashCode(longValue);
+	}
+	hash = (int) (result ^ (result >>> 32));
+    }
+
+    private void readObject(final ObjectInputStream in) throws IOException, ClassNotFoundException {
+	final ObjectInputStream.GetField fields = in.readFields();
+	init((byte[]) fields.get("value", null));
+    }
+
+    private void writeObject(final ObjectOutputStream out) throws IOException {
+	final ObjectOutputStream.PutField fields = out.putFields();
+	fields.put("value", getValue());
+	out.writeFields();
+    }
+
 }
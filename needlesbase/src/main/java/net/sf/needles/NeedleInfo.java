@@ -130,6 +130,13 @@ public interface NeedleInfo extends Serializable {
      */
     NeedleInfo getRootNeedle();
 
+    /**
+     * Gets the amount of needle trees this needle stands for. Sampled needle trees carry the root needles skipped by the sampler since the last sampled one, so aggregations can scale by it.
+     * 
+     * @return the sample weight, at least 1
+     */
+    long getSampleWeight();
+
     /**
      * Gets the start element.
      * 
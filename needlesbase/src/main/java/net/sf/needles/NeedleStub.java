@@ -70,6 +70,7 @@ public class NeedleStub implements NeedleInfo {
     private Map<String, Object> context;
     private Throwable abortReason;
     private boolean fromparallelProcess;
+    private long sampleWeight = 1;
 
     /**
      * Instantiates a new needle stub.
@@ -136,6 +137,7 @@ public class NeedleStub implements NeedleInfo {
 	targetNeedle.context = sourceNeedle.getContext();
 	targetNeedle.abortReason = sourceNeedle.getAbortReason();
 	targetNeedle.fromparallelProcess = sourceNeedle.isFromParallelProcess();
+	targetNeedle.sampleWeight = sourceNeedle.getSampleWeight();
 	return targetNeedle;
     }
 
@@ -248,6 +250,15 @@ public class NeedleStub implements NeedleInfo {
 	return (parentNeedle != null) ? parentNeedle.getRootNeedle() : this;
     }
 
+    /* (non-Javadoc)
+     * @see net.sf.needles.NeedleInfo#getSampleWeight()
+     */
+    @Override
+    public long getSampleWeight() {
+	//stubs serialized before the sample weight existed read 0
+	return (sampleWeight > 0) ? sampleWeight : 1;
+    }
+
     /**
      * Gets the short info.
      * 
@@ -49,11 +49,11 @@ public interface Aggregation<AGGREGATION extends Aggregation<AGGREGATION>> exten
     void aggregate(final NeedleInfo needle);
 
     /**
-     * Gets the aggregation for needle info.
+     * Gets the aggregation for needle info within this aggregation and its descendants.
      * 
      * @param needleInfo
      *            the needle info
-     * @return the aggregation for needle info
+     * @return the aggregation for needle info or null if there is none
      */
     AGGREGATION getAggregationForNeedleInfo(NeedleInfo needleInfo);
 
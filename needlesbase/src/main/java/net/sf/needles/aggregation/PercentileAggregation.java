@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2013,
+ * Marco Brade
+ * 							[https://github.com/mbrade]
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice,
+ *       this list of conditions and the following disclaimer in the documentation
+ *       and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.sf.needles.aggregation;
+
+public interface PercentileAggregation extends Aggregation<PercentileAggregation> {
+
+    public final static String AGGREGATION_NAME = "Percentile Aggregation";
+
+    /**
+     * Gets the largest duration in milliseconds
+     * 
+     * @return the maximum
+     */
+    double getMaximum();
+
+    /**
+     * Gets the amount of measurements
+     * 
+     * @return the amount
+     */
+    long getMeasurements();
+
+    /**
+     * Gets the duration in milliseconds at the given percentile, e.g. 50 for the median or 99.9.
+     * 
+     * @param percentile
+     *            the percentile from 0 to 100
+     * @return the duration
+     */
+    double getPercentile(double percentile);
+
+    /**
+     * Adds the measurements of the given aggregation, e.g. aggregated by another thread or node.
+     * 
+     * @param aggregation
+     *            the aggregation to merge
+     */
+    void merge(PercentileAggregation aggregation);
+
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2013,
+ * Marco Brade
+ * 							[https://github.com/mbrade]
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice,
+ *       this list of conditions and the following disclaimer in the documentation
+ *       and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.sf.needles.aggregation;
+
+/**
+ * Duration percentiles over a rolling window of the last minutes instead of the whole uptime.
+ */
+public interface WindowedPercentileAggregation extends Aggregation<WindowedPercentileAggregation> {
+
+    public final static String AGGREGATION_NAME = "Windowed Percentile Aggregation";
+
+    /**
+     * Gets the maximum duration in milliseconds within the given window
+     * 
+     * @param windowMillis
+     *            the window ending now in milliseconds
+     * @return the maximum
+     */
+    double getMaximum(long windowMillis);
+
+    /**
+     * Gets the amount of measurements within the given window
+     * 
+     * @param windowMillis
+     *            the window ending now in milliseconds
+     * @return the amount
+     */
+    long getMeasurements(long windowMillis);
+
+    /**
+     * Gets the duration in milliseconds at the given percentile within the given window.
+     * 
+     * @param percentile
+     *            the percentile from 0 to 100
+     * @param windowMillis
+     *            the window ending now in milliseconds
+     * @return the duration
+     */
+    double getPercentile(double percentile, long windowMillis);
+
+    /**
+     * Gets the longest window kept in milliseconds
+     * 
+     * @return the window
+     */
+    long getWindowMillis();
+
+}
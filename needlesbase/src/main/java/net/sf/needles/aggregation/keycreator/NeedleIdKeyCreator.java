@@ -33,7 +33,7 @@ import net.sf.needles.NeedleInfo;
 /**
  * The Class LogIdAggregationMethod.
  */
-public class NeedleIdKeyCreator implements KeyCreator {
+public class NeedleIdKeyCreator implements StableKeyCreator {
 
     private static final long serialVersionUID = 1L;
     /** The Constant NAME. */
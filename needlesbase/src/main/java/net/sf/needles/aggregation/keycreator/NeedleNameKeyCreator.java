@@ -33,7 +33,7 @@ import net.sf.needles.NeedleInfo;
 /**
  * The Class LogNameAggregationMethod.
  */
-public class NeedleNameKeyCreator implements KeyCreator {
+public class NeedleNameKeyCreator implements StableKeyCreator {
 
     private static final long serialVersionUID = 1L;
     public final static NeedleNameKeyCreator INSTANCE = new NeedleNameKeyCreator();
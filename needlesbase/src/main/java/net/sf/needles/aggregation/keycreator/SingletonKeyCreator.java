@@ -33,7 +33,7 @@ import net.sf.needles.NeedleInfo;
 /**
  * The Class SingletonKeyCreator.
  */
-public class SingletonKeyCreator implements KeyCreator {
+public class SingletonKeyCreator implements StableKeyCreator {
 
     /** The Constant serialVersionUID. */
     private static final long serialVersionUID = 1L;
@@ -0,0 +1,469 @@
+/*
+ * Copyright (c) 2013,
+ * Marco Brade
+ * 							[https://github.com/mbrade]
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice,
+ *       this list of conditions and the following disclaimer in the documentation
+ *       and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+//
+// This file was generated by the JavaTM Architecture for XML Binding(JAXB) Reference Implementation, vhudson-jaxb-ri-2.1-833 
+// See <a href="http://java.sun.com/xml/jaxb">http://java.sun.com/xml/jaxb</a> 
+// Any modifications to this file will be lost upon recompilation of the source schema. 
+// Generated on: 2026.10.17 at 10:24:14 PM UTC 
+//
+
+
+package net.sf.needles.configuration;
+
+import java.util.ArrayList;
+import java.util.List;
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlAttribute;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlElements;
+import javax.xml.bind.annotation.XmlRootElement;
+import javax.xml.bind.annotation.XmlType;
+import javax.xml.bind.annotation.adapters.XmlJavaTypeAdapter;
+
+
+/**
+ * <p>Java class for anonymous complex type.
+ * 
+ * <p>The following schema fragment specifies the expected content contained within this class.
+ * 
+ * <pre>
+ * &lt;complexType>
+ *   &lt;complexContent>
+ *     &lt;restriction base="{http://www.w3.org/2001/XMLSchema}anyType">
+ *       &lt;sequence minOccurs="0">
+ *         &lt;sequence maxOccurs="unbounded" minOccurs="0">
+ *           &lt;choice>
+ *             &lt;element name="executionAggregation" type="{http://needles.sourceforge.net/configuration}executionAggregationFactoryConfiguration"/>
+ *             &lt;element name="hotspotAggregation" type="{http://needles.sourceforge.net/configuration}hotspotAggregationFactoryConfiguration"/>
+ *             &lt;element name="top10Aggregation" type="{http://needles.sourceforge.net/configuration}top10AggregationFactoryConfiguration"/>
+ *             &lt;element name="percentileAggregation" type="{http://needles.sourceforge.net/configuration}percentileAggregationFactoryConfiguration"/>
+ *             &lt;element name="windowedExecutionAggregation" type="{http://needles.sourceforge.net/configuration}windowedExecutionAggregationFactoryConfiguration"/>
+ *             &lt;element name="windowedPercentileAggregation" type="{http://needles.sourceforge.net/configuration}windowedPercentileAggregationFactoryConfiguration"/>
+ *             &lt;element name="customAggregation" type="{http://needles.sourceforge.net/configuration}customAggregationFactoryConfiguration"/>
+ *           &lt;/choice>
+ *         &lt;/sequence>
+ *         &lt;sequence minOccurs="0">
+ *           &lt;element name="persistenceConfiguration" type="{http://needles.sourceforge.net/configuration}persistence"/>
+ *         &lt;/sequence>
+ *         &lt;sequence minOccurs="0">
+ *           &lt;element name="overheadGovernor" type="{http://needles.sourceforge.net/configuration}overheadGovernorConfiguration"/>
+ *         &lt;/sequence>
+ *         &lt;sequence minOccurs="0">
+ *           &lt;element name="workerProperties" type="{http://needles.sourceforge.net/configuration}propertyType" maxOccurs="unbounded" minOccurs="0"/>
+ *         &lt;/sequence>
+ *       &lt;/sequence>
+ *       &lt;attribute name="workerClass" type="{http://www.w3.org/2001/XMLSchema}string" />
+ *       &lt;attribute name="maxCallSites" type="{http://www.w3.org/2001/XMLSchema}int" />
+ *       &lt;attribute name="needleRetention" type="{http://needles.sourceforge.net/configuration}needleRetention" />
+ *       &lt;attribute name="needleRetentionCount" type="{http://www.w3.org/2001/XMLSchema}int" />
+ *       &lt;attribute name="samplingProbability" type="{http://www.w3.org/2001/XMLSchema}double" />
+ *       &lt;attribute name="samplingRate" type="{http://www.w3.org/2001/XMLSchema}int" />
+ *       &lt;attribute name="queueCapacity" type="{http://www.w3.org/2001/XMLSchema}int" />
+ *       &lt;attribute name="queueOverflowPolicy" type="{http://needles.sourceforge.net/configuration}overflowPolicy" />
+ *       &lt;attribute name="queueBlockTimeout" type="{http://www.w3.org/2001/XMLSchema}long" />
+ *     &lt;/restriction>
+ *   &lt;/complexContent>
+ * &lt;/complexType>
+ * </pre>
+ * 
+ * 
+ */
+@XmlAccessorType(XmlAccessType.FIELD)
+@XmlType(name = "", propOrder = {
+    "aggregationFactories",
+    "persistenceConfiguration",
+    "overheadGovernor",
+    "workerProperties"
+})
+@XmlRootElement(name = "configuration")
+public class Configuration {
+
+    @XmlElements({
+        @XmlElement(name = "hotspotAggregation", type = HotspotAggregationFactoryConfiguration.class),
+        @XmlElement(name = "customAggregation", type = CustomAggregationFactoryConfiguration.class),
+        @XmlElement(name = "top10Aggregation", type = Top10AggregationFactoryConfiguration.class),
+        @XmlElement(name = "windowedPercentileAggregation", type = WindowedPercentileAggregationFactoryConfiguration.class),
+        @XmlElement(name = "windowedExecutionAggregation", type = WindowedExecutionAggregationFactoryConfiguration.class),
+        @XmlElement(name = "executionAggregation", type = ExecutionAggregationFactoryConfiguration.class),
+        @XmlElement(name = "percentileAggregation", type = PercentileAggregationFactoryConfiguration.class)
+    })
+    protected List<AggregationFactoryConfiguration> aggregationFactories;
+    protected Persistence persistenceConfiguration;
+    protected OverheadGovernorConfiguration overheadGovernor;
+    protected List<PropertyType> workerProperties;
+    @XmlAttribute
+    @XmlJavaTypeAdapter(Adapter1 .class)
+    protected Class workerClass;
+    @XmlAttribute
+    protected Integer maxCallSites;
+    @XmlAttribute
+    protected NeedleRetention needleRetention;
+    @XmlAttribute
+    protected Integer needleRetentionCount;
+    @XmlAttribute
+    protected Double samplingProbability;
+    @XmlAttribute
+    protected Integer samplingRate;
+    @XmlAttribute
+    protected Integer queueCapacity;
+    @XmlAttribute
+    protected OverflowPolicy queueOverflowPolicy;
+    @XmlAttribute
+    protected Long queueBlockTimeout;
+
+    /**
+     * Gets the value of the aggregationFactories property.
+     * 
+     * <p>
+     * This accessor method returns a reference to the live list,
+     * not a snapshot. Therefore any modification you make to the
+     * returned list will be present inside the JAXB object.
+     * This is why there is not a <CODE>set</CODE> method for the aggregationFactories property.
+     * 
+     * <p>
+     * For example, to add a new item, do as follows:
+     * <pre>
+     *    getAggregationFactories().add(newItem);
+     * </pre>
+     * 
+     * 
+     * <p>
+     * Objects of the following type(s) are allowed in the list
+     * {@link HotspotAggregationFactoryConfiguration }
+     * {@link CustomAggregationFactoryConfiguration }
+     * {@link Top10AggregationFactoryConfiguration }
+     * {@link WindowedPercentileAggregationFactoryConfiguration }
+     * {@link WindowedExecutionAggregationFactoryConfiguration }
+     * {@link ExecutionAggregationFactoryConfiguration }
+     * {@link PercentileAggregationFactoryConfiguration }
+     * 
+     * 
+     */
+    public List<AggregationFactoryConfiguration> getAggregationFactories() {
+        if (aggregationFactories == null) {
+            aggregationFactories = new ArrayList<AggregationFactoryConfiguration>();
+        }
+        return this.aggregationFactories;
+    }
+
+    /**
+     * Gets the value of the persistenceConfiguration property.
+     * 
+     * @return
+     *     possible object is
+     *     {@link Persistence }
+     *     
+     */
+    public Persistence getPersistenceConfiguration() {
+        return persistenceConfiguration;
+    }
+
+    /**
+     * Sets the value of the persistenceConfiguration property.
+     * 
+     * @param value
+     *     allowed object is
+     *     {@link Persistence }
+     *     
+     */
+    public void setPersistenceConfiguration(Persistence value) {
+        this.persistenceConfiguration = value;
+    }
+
+    /**
+     * Gets the value of the overheadGovernor property.
+     * 
+     * @return
+     *     possible object is
+     *     {@link OverheadGovernorConfiguration }
+     *     
+     */
+    public OverheadGovernorConfiguration getOverheadGovernor() {
+        return overheadGovernor;
+    }
+
+    /**
+     * Sets the value of the overheadGovernor property.
+     * 
+     * @param value
+     *     allowed object is
+     *     {@link OverheadGovernorConfiguration }
+     *     
+     */
+    public void setOverheadGovernor(OverheadGovernorConfiguration value) {
+        this.overheadGovernor = value;
+    }
+
+    /**
+     * Gets the value of the workerProperties property.
+     * 
+     * <p>
+     * This accessor method returns a reference to the live list,
+     * not a snapshot. Therefore any modification you make to the
+     * returned list will be present inside the JAXB object.
+     * This is why there is not a <CODE>set</CODE> method for the workerProperties property.
+     * 
+     * <p>
+     * For example, to add a new item, do as follows:
+     * <pre>
+     *    getWorkerProperties().add(newItem);
+     * </pre>
+     * 
+     * 
+     * <p>
+     * Objects of the following type(s) are allowed in the list
+     * {@link PropertyType }
+     * 
+     * 
+     */
+    public List<PropertyType> getWorkerProperties() {
+        if (workerProperties == null) {
+            workerProperties = new ArrayList<PropertyType>();
+        }
+        return this.workerProperties;
+    }
+
+    /**
+     * Gets the value of the workerClass property.
+     * 
+     * @return
+     *     possible object is
+     *     {@link String }
+     *     
+     */
+    public Class getWorkerClass() {
+        return workerClass;
+    }
+
+    /**
+     * Sets the value of the workerClass property.
+     * 
+     * @param value
+     *     allowed object is
+     *     {@link String }
+     *     
+     */
+    public void setWorkerClass(Class value) {
+        this.workerClass = value;
+    }
+
+    /**
+     * Gets the value of the maxCallSites property.
+     * 
+     * @return
+     *     possible object is
+     *     {@link Integer }
+     *     
+     */
+    public Integer getMaxCallSites() {
+        return maxCallSites;
+    }
+
+    /**
+     * Sets the value of the maxCallSites property.
+     * 
+     * @param value
+     *     allowed object is
+     *     {@link Integer }
+     *     
+     */
+    public void setMaxCallSites(Integer value) {
+        this.maxCallSites = value;
+    }
+
+    /**
+     * Gets the value of the needleRetention property.
+     * 
+     * @return
+     *     possible object is
+     *     {@link NeedleRetention }
+     *     
+     */
+    public NeedleRetention getNeedleRetention() {
+        return needleRetention;
+    }
+
+    /**
+     * Sets the value of the needleRetention property.
+     * 
+     * @param value
+     *     allowed object is
+     *     {@link NeedleRetention }
+     *     
+     */
+    public void setNeedleRetention(NeedleRetention value) {
+        this.needleRetention = value;
+    }
+
+    /**
+     * Gets the value of the needleRetentionCount property.
+     * 
+     * @return
+     *     possible object is
+     *     {@link Integer }
+     *     
+     */
+    public Integer getNeedleRetentionCount() {
+        return needleRetentionCount;
+    }
+
+    /**
+     * Sets the value of the needleRetentionCount property.
+     * 
+     * @param value
+     *     allowed object is
+     *     {@link Integer }
+     *     
+     */
+    public void setNeedleRetentionCount(Integer value) {
+        this.needleRetentionCount = value;
+    }
+
+    /**
+     * Gets the value of the samplingProbability property.
+     * 
+     * @return
+     *     possible object is
+     *     {@link Double }
+     *     
+     */
+    public Double getSamplingProbability() {
+        return samplingProbability;
+    }
+
+    /**
+     * Sets the value of the samplingProbability property.
+     * 
+     * @param value
+     *     allowed object is
+     *     {@link Double }
+     *     
+     */
+    public void setSamplingProbability(Double value) {
+        this.samplingProbability = value;
+    }
+
+    /**
+     * Gets the value of the samplingRate property.
+     * 
+     * @return
+     *     possible object is
+     *     {@link Integer }
+     *     
+     */
+    public Integer getSamplingRate() {
+        return samplingRate;
+    }
+
+    /**
+     * Sets the value of the samplingRate property.
+     * 
+     * @param value
+     *     allowed object is
+     *     {@link Integer }
+     *     
+     */
+    public void setSamplingRate(Integer value) {
+        this.samplingRate = value;
+    }
+
+    /**
+     * Gets the value of the queueCapacity property.
+     * 
+     * @return
+     *     possible object is
+     *     {@link Integer }
+     *     
+     */
+    public Integer getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    /**
+     * Sets the value of the queueCapacity property.
+     * 
+     * @param value
+     *     allowed object is
+     *     {@link Integer }
+     *     
+     */
+    public void setQueueCapacity(Integer value) {
+        this.queueCapacity = value;
+    }
+
+    /**
+     * Gets the value of the queueOverflowPolicy property.
+     * 
+     * @return
+     *     possible object is
+     *     {@link OverflowPolicy }
+     *     
+     */
+    public OverflowPolicy getQueueOverflowPolicy() {
+        return queueOverflowPolicy;
+    }
+
+    /**
+     * Sets the value of the queueOverflowPolicy property.
+     * 
+     * @param value
+     *     allowed object is
+     *     {@link OverflowPolicy }
+     *     
+     */
+    public void setQueueOverflowPolicy(OverflowPolicy value) {
+        this.queueOverflowPolicy = value;
+    }
+
+    /**
+     * Gets the value of the queueBlockTimeout property.
+     * 
+     * @return
+     *     possible object is
+     *     {@link Long }
+     *     
+     */
+    public Long getQueueBlockTimeout() {
+        return queueBlockTimeout;
+    }
+
+    /**
+     * Sets the value of the queueBlockTimeout property.
+     * 
+     * @param value
+     *     allowed object is
+     *     {@link Long }
+     *     
+     */
+    public void setQueueBlockTimeout(Long value) {
+        this.queueBlockTimeout = value;
+    }
+
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2013,
+ * Marco Brade
+ * 							[https://github.com/mbrade]
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice,
+ *       this list of conditions and the following disclaimer in the documentation
+ *       and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+//
+// This file was generated by the JavaTM Architecture for XML Binding(JAXB) Reference Implementation, vhudson-jaxb-ri-2.1-833 
+// See <a href="http://java.sun.com/xml/jaxb">http://java.sun.com/xml/jaxb</a> 
+// Any modifications to this file will be lost upon recompilation of the source schema. 
+// Generated on: 2026.10.17 at 10:24:14 PM UTC 
+//
+
+
+package net.sf.needles.configuration;
+
+import javax.xml.bind.annotation.XmlRegistry;
+
+
+/**
+ * This object contains factory methods for each 
+ * Java content interface and Java element interface 
+ * generated in the net.sf.needles.configuration package. 
+ * <p>An ObjectFactory allows you to programatically 
+ * construct new instances of the Java representation 
+ * for XML content. The Java representation of XML 
+ * content can consist of schema derived interfaces 
+ * and classes representing the binding of schema 
+ * type definitions, element declarations and model 
+ * groups.  Factory methods for each of these are 
+ * provided in this class.
+ * 
+ */
+@XmlRegistry
+public class ObjectFactory {
+
+
+    /**
+     * Create a new ObjectFactory that can be used to create new instances of schema derived classes for package: net.sf.needles.configuration
+     * 
+     */
+    public ObjectFactory() {
+    }
+
+    /**
+     * Create an instance of {@link HotspotAggregationFactoryConfiguration }
+     * 
+     */
+    public HotspotAggregationFactoryConfiguration createHotspotAggregationFactoryConfiguration() {
+        return new HotspotAggregationFactoryConfiguration();
+    }
+
+    /**
+     * Create an instance of {@link WindowedExecutionAggregationFactoryConfiguration }
+     * 
+     */
+    public WindowedExecutionAggregationFactoryConfiguration createWindowedExecutionAggregationFactoryConfiguration() {
+        return new WindowedExecutionAggregationFactoryConfiguration();
+    }
+
+    /**
+     * Create an instance of {@link PercentileAggregationFactoryConfiguration }
+     * 
+     */
+    public PercentileAggregationFactoryConfiguration createPercentileAggregationFactoryConfiguration() {
+        return new PercentileAggregationFactoryConfiguration();
+    }
+
+    /**
+     * Create an instance of {@link Configuration }
+     * 
+     */
+    public Configuration createConfiguration() {
+        return new Configuration();
+    }
+
+    /**
+     * Create an instance of {@link CustomAggregationFactoryConfiguration }
+     * 
+     */
+    public CustomAggregationFactoryConfiguration createCustomAggregationFactoryConfiguration() {
+        return new CustomAggregationFactoryConfiguration();
+    }
+
+    /**
+     * Create an instance of {@link OverheadGovernorConfiguration }
+     * 
+     */
+    public OverheadGovernorConfiguration createOverheadGovernorConfiguration() {
+        return new OverheadGovernorConfiguration();
+    }
+
+    /**
+     * Create an instance of {@link ExecutionAggregationFactoryConfiguration }
+     * 
+     */
+    public ExecutionAggregationFactoryConfiguration createExecutionAggregationFactoryConfiguration() {
+        return new ExecutionAggregationFactoryConfiguration();
+    }
+
+    /**
+     * Create an instance of {@link WindowedPercentileAggregationFactoryConfiguration }
+     * 
+     */
+    public WindowedPercentileAggregationFactoryConfiguration createWindowedPercentileAggregationFactoryConfiguration() {
+        return new WindowedPercentileAggregationFactoryConfiguration();
+    }
+
+    /**
+     * Create an instance of {@link Persistence }
+     * 
+     */
+    public Persistence createPersistence() {
+        return new Persistence();
+    }
+
+    /**
+     * Create an instance of {@link Top10AggregationFactoryConfiguration }
+     * 
+     */
+    public Top10AggregationFactoryConfiguration createTop10AggregationFactoryConfiguration() {
+        return new Top10AggregationFactoryConfiguration();
+    }
+
+    /**
+     * Create an instance of {@link PropertyType }
+     * 
+     */
+    public PropertyType createPropertyType() {
+        return new PropertyType();
+    }
+
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2013,
+ * Marco Brade
+ * 							[https://github.com/mbrade]
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice,
+ *       this list of conditions and the following disclaimer in the documentation
+ *       and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+//
+// This file was generated by the JavaTM Architecture for XML Binding(JAXB) Reference Implementation, vhudson-jaxb-ri-2.1-833 
+// See <a href="http://java.sun.com/xml/jaxb">http://java.sun.com/xml/jaxb</a> 
+// Any modifications to this file will be lost upon recompilation of the source schema. 
+// Generated on: 2026.10.17 at 10:24:14 PM UTC 
+//
+
+
+package net.sf.needles.configuration;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlAttribute;
+import javax.xml.bind.annotation.XmlType;
+
+
+/**
+ * <p>Java class for overheadGovernorConfiguration complex type.
+ * 
+ * <p>The following schema fragment specifies the expected content contained within this class.
+ * 
+ * <pre>
+ * &lt;complexType name="overheadGovernorConfiguration">
+ *   &lt;complexContent>
+ *     &lt;restriction base="{http://www.w3.org/2001/XMLSchema}anyType">
+ *       &lt;attribute name="maxOverhead" use="required" type="{http://www.w3.org/2001/XMLSchema}double" />
+ *       &lt;attribute name="maxQueueSize" use="required" type="{http://www.w3.org/2001/XMLSchema}int" />
+ *       &lt;attribute name="checkInterval" type="{http://www.w3.org/2001/XMLSchema}long" />
+ *       &lt;attribute name="recoveryChecks" type="{http://www.w3.org/2001/XMLSchema}int" />
+ *     &lt;/restriction>
+ *   &lt;/complexContent>
+ * &lt;/complexType>
+ * </pre>
+ * 
+ * 
+ */
+@XmlAccessorType(XmlAccessType.FIELD)
+@XmlType(name = "overheadGovernorConfiguration")
+public class OverheadGovernorConfiguration {
+
+    @XmlAttribute(required = true)
+    protected double maxOverhead;
+    @XmlAttribute(required = true)
+    protected int maxQueueSize;
+    @XmlAttribute
+    protected Long checkInterval;
+    @XmlAttribute
+    protected Integer recoveryChecks;
+
+    /**
+     * Gets the value of the maxOverhead property.
+     * 
+     */
+    public double getMaxOverhead() {
+        return maxOverhead;
+    }
+
+    /**
+     * Sets the value of the maxOverhead property.
+     * 
+     */
+    public void setMaxOverhead(double value) {
+        this.maxOverhead = value;
+    }
+
+    /**
+     * Gets the value of the maxQueueSize property.
+     * 
+     */
+    public int getMaxQueueSize() {
+        return maxQueueSize;
+    }
+
+    /**
+     * Sets the value of the maxQueueSize property.
+     * 
+     */
+    public void setMaxQueueSize(int value) {
+        this.maxQueueSize = value;
+    }
+
+    /**
+     * Gets the value of the checkInterval property.
+     * 
+     * @return
+     *     possible object is
+     *     {@link Long }
+     *     
+     */
+    public Long getCheckInterval() {
+        return checkInterval;
+    }
+
+    /**
+     * Sets the value of the checkInterval property.
+     * 
+     * @param value
+     *     allowed object is
+     *     {@link Long }
+     *     
+     */
+    public void setCheckInterval(Long value) {
+        this.checkInterval = value;
+    }
+
+    /**
+     * Gets the value of the recoveryChecks property.
+     * 
+     * @return
+     *     possible object is
+     *     {@link Integer }
+     *     
+     */
+    public Integer getRecoveryChecks() {
+        return recoveryChecks;
+    }
+
+    /**
+     * Sets the value of the recoveryChecks property.
+     * 
+     * @param value
+     *     allowed object is
+     *     {@link Integer }
+     *     
+     */
+    public void setRecoveryChecks(Integer value) {
+        this.recoveryChecks = value;
+    }
+
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2013,
+ * Marco Brade
+ * 							[https://github.com/mbrade]
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice,
+ *       this list of conditions and the following disclaimer in the documentation
+ *       and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+//
+// This file was generated by the JavaTM Architecture for XML Binding(JAXB) Reference Implementation, vhudson-jaxb-ri-2.1-833 
+// See <a href="http://java.sun.com/xml/jaxb">http://java.sun.com/xml/jaxb</a> 
+// Any modifications to this file will be lost upon recompilation of the source schema. 
+// Generated on: 2026.10.17 at 10:24:14 PM UTC 
+//
+
+
+package net.sf.needles.configuration;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlAttribute;
+import javax.xml.bind.annotation.XmlType;
+
+
+/**
+ * <p>Java class for percentileAggregationFactoryConfiguration complex type.
+ * 
+ * <p>The following schema fragment specifies the expected content contained within this class.
+ * 
+ * <pre>
+ * &lt;complexType name="percentileAggregationFactoryConfiguration">
+ *   &lt;complexContent>
+ *     &lt;extension base="{http://needles.sourceforge.net/configuration}aggregationFactoryConfiguration">
+ *       &lt;attribute name="keyCreator" type="{http://needles.sourceforge.net/configuration}keyCreator" />
+ *       &lt;attribute name="maxDuration" type="{http://www.w3.org/2001/XMLSchema}long" />
+ *       &lt;attribute name="significantDigits" type="{http://www.w3.org/2001/XMLSchema}int" />
+ *     &lt;/extension>
+ *   &lt;/complexContent>
+ * &lt;/complexType>
+ * </pre>
+ * 
+ * 
+ */
+@XmlAccessorType(XmlAccessType.FIELD)
+@XmlType(name = "percentileAggregationFactoryConfiguration")
+public class PercentileAggregationFactoryConfiguration
+    extends AggregationFactoryConfiguration
+{
+
+    @XmlAttribute
+    protected KeyCreator keyCreator;
+    @XmlAttribute
+    protected Long maxDuration;
+    @XmlAttribute
+    protected Integer significantDigits;
+
+    /**
+     * Gets the value of the keyCreator property.
+     * 
+     * @return
+     *     possible object is
+     *     {@link KeyCreator }
+     *     
+     */
+    public KeyCreator getKeyCreator() {
+        return keyCreator;
+    }
+
+    /**
+     * Sets the value of the keyCreator property.
+     * 
+     * @param value
+     *     allowed object is
+     *     {@link KeyCreator }
+     *     
+     */
+    public void setKeyCreator(KeyCreator value) {
+        this.keyCreator = value;
+    }
+
+    /**
+     * Gets the value of the maxDuration property.
+     * 
+     * @return
+     *     possible object is
+     *     {@link Long }
+     *     
+     */
+    public Long getMaxDuration() {
+        return maxDuration;
+    }
+
+    /**
+     * Sets the value of the maxDuration property.
+     * 
+     * @param value
+     *     allowed object is
+     *     {@link Long }
+     *     
+     */
+    public void setMaxDuration(Long value) {
+        this.maxDuration = value;
+    }
+
+    /**
+     * Gets the value of the significantDigits property.
+     * 
+     * @return
+     *     possible object is
+     *     {@link Integer }
+     *     
+     */
+    public Integer getSignificantDigits() {
+        return significantDigits;
+    }
+
+    /**
+     * Sets the value of the significantDigits property.
+     * 
+     * @param value
+     *     allowed object is
+     *     {@link Integer }
+     *     
+     */
+    public void setSignificantDigits(Integer value) {
+        this.significantDigits = value;
+    }
+
+}
@@ -34,6 +34,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
 import net.sf.needles.aggregation.Aggregation;
@@ -47,7 +48,11 @@ import net.sf.needles.aggregation.worker.AsyncAggregationWorker;
  */
 public class AggregationContext {
 
+    /** The time within which reads share the flush of an earlier read, so the getters called for one page or request flush once. */
+    public static final long READ_FLUSH_INTERVAL_MILLIS = 200;
+
     private static AtomicReference<AggregationWorker> worker = new AtomicReference<AggregationWorker>(new AsyncAggregationWorker());
+    private static final AtomicLong lastReadFlushMillis = new AtomicLong();
 
     static {
 	Runtime.getRuntime().traceInstructions(true);
@@ -58,8 +63,17 @@ public class AggregationContext {
     private AggregationContext() {
     }
 
+    /**
+     * Lets the aggregation worker aggregate the needles it holds back, so the aggregations read afterwards are up to date. The getters of this class flush on their own, but only once within
+     * {@link #READ_FLUSH_INTERVAL_MILLIS}, call this to be sure the needles stopped so far are included.
+     */
+    public static void flush() {
+	lastReadFlushMillis.set(System.currentTimeMillis());
+	worker.get().flush();
+    }
+
     public static Aggregation<?> getAggregation(final String aggregationName, final AggregationKey aggregationKey) {
-	final AggregationFactory<?> factory = worker.get().getAggregationFactory(aggregationName);
+	final AggregationFactory<?> factory = getFlushedAggregationWorker().getAggregationFactory(aggregationName);
 	if (factory != null) {
 	    return factory.getAggregation(aggregationKey);
 	}
@@ -73,7 +87,7 @@ public class AggregationContext {
      */
     public static Map<String, AggregationFactory<? extends Aggregation<?>>> getAggregationFactories() {
 	final Map<String, AggregationFactory<? extends Aggregation<?>>> result = new HashMap<String, AggregationFactory<? extends Aggregation<?>>>();
-	final List<AggregationFactory<? extends Aggregation<?>>> factories = worker.get().getAggregationFactories();
+	final List<AggregationFactory<? extends Aggregation<?>>> factories = getFlushedAggregationWorker().getAggregationFactories();
 	for (final AggregationFactory<? extends Aggregation<?>> factory : factories) {
 	    result.put(factory.getName(), factory);
 	}
@@ -81,7 +95,7 @@ public class AggregationContext {
     }
 
     public static AggregationFactory<? extends Aggregation<?>> getAggregationFactory(final String aggregationName) {
-	final AggregationFactory<? extends Aggregation<?>> factory = worker.get().getAggregationFactory(aggregationName);
+	final AggregationFactory<? extends Aggregation<?>> factory = getFlushedAggregationWorker().getAggregationFactory(aggregationName);
 	return factory;
     }
 
@@ -92,7 +106,7 @@ public class AggregationContext {
      */
     public static Map<String, List<? extends Aggregation<?>>> getAggregations() {
 	final Map<String, List<? extends Aggregation<?>>> result = new HashMap<String, List<? extends Aggregation<?>>>();
-	final List<AggregationFactory<? extends Aggregation<?>>> factories = worker.get().getAggregationFactories();
+	final List<AggregationFactory<? extends Aggregation<?>>> factories = getFlushedAggregationWorker().getAggregationFactories();
 	for (final AggregationFactory<? extends Aggregation<?>> factory : factories) {
 	    result.put(factory.getName(), factory.getRootAggregations());
 	}
@@ -101,7 +115,7 @@ public class AggregationContext {
 
     public static Map<AggregationKey, Map<String, Aggregation<?>>> getAggregations(final List<AggregationKey> aggregationKeys) {
 	final Map<AggregationKey, Map<String, Aggregation<?>>> result = new TreeMap<AggregationKey, Map<String, Aggregation<?>>>();
-	for (final AggregationFactory aggregationFactory : worker.get().getAggregationFactories()) {
+	for (final AggregationFactory aggregationFactory : getFlushedAggregationWorker().getAggregationFactories()) {
 	    for (final AggregationKey aggregationKey : aggregationKeys) {
 		final Aggregation aggregation = aggregationFactory.getAggregation(aggregationKey);
 		if (aggregation != null) {
@@ -125,7 +139,7 @@ public class AggregationContext {
      */
     public static List<Aggregation<?>> getAggregations(final NeedleInfo needleInfo) {
 	final List<Aggregation<?>> aggregations = new ArrayList<Aggregation<?>>();
-	final List<AggregationFactory<? extends Aggregation<?>>> factories = worker.get().getAggregationFactories();
+	final List<AggregationFactory<? extends Aggregation<?>>> factories = getFlushedAggregationWorker().getAggregationFactories();
 	for (final AggregationFactory<? extends Aggregation<?>> factory : factories) {
 	    final Aggregation<?> aggregation = factory.getAggregation(needleInfo);
 	    if (aggregation != null) {
@@ -142,7 +156,7 @@ public class AggregationContext {
      * @return A map of aggregations
      */
     public static Map<AggregationKey, Aggregation<?>> getAggregations(final String aggregationName) {
-	final AggregationFactory<?> factory = worker.get().getAggregationFactory(aggregationName);
+	final AggregationFactory<?> factory = getFlushedAggregationWorker().getAggregationFactory(aggregationName);
 	if (factory != null) {
 	    final Map<AggregationKey, Aggregation<?>> result = new TreeMap<AggregationKey, Aggregation<?>>();
 	    for (final Object rootAggregation : factory.getRootAggregations()) {
@@ -154,6 +168,16 @@ public class AggregationContext {
 	return Collections.emptyMap();
     }
 
+    /**
+     * Gets the amount of needles the {@link AggregationWorker} dropped because of its overflow policy.
+     * 
+     * @return the dropped needle count
+     */
+    public static long getDroppedNeedleCount() {
+	final AggregationWorker worker = getAggregationWorker();
+	return (worker != null) ? worker.getDroppedNeedleCount() : 0;
+    }
+
     /**
      * Gets the aggregation worker.
      * 
@@ -174,6 +198,7 @@ public class AggregationContext {
 	    throw new IllegalArgumentException("An AggregationWorker has to be set.");
 	}
 	final AggregationWorker oldWorker = AggregationContext.worker.getAndSet(worker);
+	lastReadFlushMillis.set(0);
 	if (oldWorker != null && oldWorker != worker) {
 	    oldWorker.shutdown();
 	}
@@ -203,6 +228,22 @@ public class AggregationContext {
 	worker.get().aggregate(needle);
     }
 
+    /**
+     * Lets the aggregation worker aggregate the needles it holds back, unless another read did so within {@link #READ_FLUSH_INTERVAL_MILLIS}. Reads arriving while a flush is running don't wait
+     * for it.
+     * 
+     * @return the aggregation worker
+     */
+    private static AggregationWorker getFlushedAggregationWorker() {
+	final AggregationWorker result = worker.get();
+	final long now = System.currentTimeMillis();
+	final long last = lastReadFlushMillis.get();
+	if ((now - last >= READ_FLUSH_INTERVAL_MILLIS || now < last) && lastReadFlushMillis.compareAndSet(last, now)) {
+	    result.flush();
+	}
+	return result;
+    }
+
     private static class ShutdownHook extends Thread {
 
 	private ShutdownHook() {
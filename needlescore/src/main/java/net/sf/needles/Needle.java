@@ -28,18 +28,23 @@
 
 package net.sf.needles;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 
 import net.sf.needles.renderer.DeepNeedleRenderer;
 import net.sf.needles.renderer.NeedleRenderer;
 import net.sf.needles.renderer.RendererHelper;
 import net.sf.needles.renderer.SimpleNeedleRenderer;
+import net.sf.needles.util.AppendOnlyList;
 import net.sf.needles.util.ExceptionUtils;
 
 /**
@@ -48,6 +53,20 @@ import net.sf.needles.util.ExceptionUtils;
 public final class Needle implements NeedleInfo {
 
     private static final long serialVersionUID = 1L;
+    //keeps the stream format of the former LinkedList debug lines and LinkedBlockingQueue children, so persisted needles stay readable
+    private static final ObjectStreamField[] serialPersistentFields = {
+	                                                              new ObjectStreamField("startTime", Long.TYPE),
+	                                                              new ObjectStreamField("duration", Long.TYPE),
+	                                                              new ObjectStreamField("state", Integer.TYPE),
+	                                                              new ObjectStreamField("name", String.class),
+	                                                              new ObjectStreamField("needleId", NeedleId.class),
+	                                                              new ObjectStreamField("parent", Needle.class),
+	                                                              new ObjectStreamField("abortReason", Throwable.class),
+	                                                              new ObjectStreamField("context", Map.class),
+	                                                              new ObjectStreamField("debugLines", List.class),
+	                                                              new ObjectStreamField("children", LinkedBlockingQueue.class),
+	                                                              new ObjectStreamField("fromParallelProcess", Boolean.TYPE),
+	                                                              new ObjectStreamField("sampleWeight", Long.TYPE) };
 
     private static final RendererHelper RENDERER_HELPER = new RendererHelper();
 
@@ -56,19 +75,52 @@ public final class Needle implements NeedleInfo {
 	                                                                         new SimpleNeedleRenderer(true, true, false, null, false, true, true, true, true, RENDERER_HELPER),
 	                                                                         new SimpleNeedleRenderer(true, false, true, "\t", true, true, true, true, true, RENDERER_HELPER),
 	                                                                         "\n", RENDERER_HELPER);
+
+    /**
+     * Shared inert instance returned by the static start methods while measurement is disabled ({@link NeedleConfig#QUIET}). Lifecycle, debug and context calls on it return immediately.
+     */
+    private static final Needle DISABLED_NEEDLE = new Needle("disabled", false);
+
+    //lifecycle states, the transient STARTING, STOPPING and ABORTING states are held while the timing fields get written
+    private static final int NEW = 0;
+    private static final int STARTING = 1;
+    private static final int STARTED = 2;
+    private static final int STOPPING = 3;
+    private static final int ABORTING = 4;
+    private static final int STOPPED = 5;
+    private static final int ABORTED = 6;
+    private static final long UNKNOWN_DURATION = Long.MIN_VALUE;
+    private static final AtomicIntegerFieldUpdater<Needle> STATE_UPDATER = AtomicIntegerFieldUpdater.newUpdater(Needle.class, "state");
+
     private transient long startNanos = 0;
     private transient int startStackIndex = 3;
     private transient int stopStackIndex = 3;
+    //start and stop element shared with the call site table of the NeedleContext
+    private transient StackTraceElement[] callSite;
+    //start element known before the start, saves the stack walk
+    private transient StackTraceElement startElement;
+    //true if the needle belongs to a needle tree which hasn't been sampled
+    private transient boolean unsampled;
     private long startTime = 0;
     private long duration = -1;
+    //written after the timing fields, so reading the state publishes them to other threads
+    private volatile int state = NEW;
     private String name;
     private NeedleId needleId;
     private Needle parent;
     private Throwable abortReason;
     private Map<String, Object> context;
-    private final List<String> debugLines = new LinkedList<String>();
-    private final LinkedBlockingQueue<Needle> children = new LinkedBlockingQueue<Needle>();
+    //allocated with the first entry, most needles are leaves without debug lines
+    private volatile AppendOnlyList<String> debugLines;
+    private volatile AppendOnlyList<Needle> children;
     private boolean fromParallelProcess;//will be set by NeedleContext
+    //amount of needle trees this one stands for, 0 until decided on start
+    private long sampleWeight = 0;
+    //position within the tree, updated when the needle gets attached to a parent. 0 and null if not known yet (deserialized needles)
+    private transient int depth = 1;
+    private transient Needle root = this;
+    //calculated once the needle and all its children are stopped
+    private transient volatile long ownDurationNanos = UNKNOWN_DURATION;
 
     /**
      * Instantiates a new log.
@@ -100,6 +152,17 @@ public final class Needle implements NeedleInfo {
 	copyData(needle);
     }
 
+    /**
+     * Instantiates an inert needle. A not sampled one is started right away, stopping it leaves the not sampled tree level once.
+     */
+    private Needle(final String name, final boolean unsampled) {
+	this.name = name;
+	this.unsampled = unsampled;
+	if (unsampled) {
+	    state = STARTED;
+	}
+    }
+
     /**
      * Start.
      * 
@@ -108,14 +171,32 @@ public final class Needle implements NeedleInfo {
      * @return the log
      */
     public static Needle start(final String name) {
+	if (!NeedleConfigFactory.isMeasuremtEnabled()) {
+	    return DISABLED_NEEDLE;
+	}
+	final NeedleContext needleContext = getNeedleContext();
+	final long sampleWeight = needleContext.sampleNeedle();
+	if (sampleWeight == 0) {
+	    return needleContext.startUnsampledNeedle(new Needle(name, true));
+	}
 	final Needle needle = new Needle(name);
+	needle.sampleWeight = sampleWeight;
 	needle.startStackIndex = 4;
 	needle.start();
 	return needle;
     }
 
     public static Needle start(final String name, final Map<String, Object> context) {
+	if (!NeedleConfigFactory.isMeasuremtEnabled()) {
+	    return DISABLED_NEEDLE;
+	}
+	final NeedleContext needleContext = getNeedleContext();
+	final long sampleWeight = needleContext.sampleNeedle();
+	if (sampleWeight == 0) {
+	    return needleContext.startUnsampledNeedle(new Needle(name, true));
+	}
 	final Needle needle = new Needle(name, context);
+	needle.sampleWeight = sampleWeight;
 	needle.startStackIndex = 4;
 	needle.start();
 	return needle;
@@ -131,21 +212,64 @@ public final class Needle implements NeedleInfo {
      * @return the log
      */
     public static Needle start(final String name, final Object... context) {
+	if (!NeedleConfigFactory.isMeasuremtEnabled()) {
+	    return DISABLED_NEEDLE;
+	}
+	final NeedleContext needleContext = getNeedleContext();
+	final long sampleWeight = needleContext.sampleNeedle();
+	if (sampleWeight == 0) {
+	    return needleContext.startUnsampledNeedle(new Needle(name, true));
+	}
 	final Needle needle = new Needle(name, context);
+	needle.sampleWeight = sampleWeight;
 	needle.startStackIndex = 4;
 	needle.start();
 	return needle;
     }
 
+    /**
+     * Starts a needle of the given call site. Only starts of a call site which isn't resolved yet walk the stack.
+     * 
+     * @param callSite
+     *            the call site
+     * @param context
+     *            the context
+     * @return the needle
+     */
+    static Needle start(final NeedleCallSite callSite, final Map<String, Object> context) {
+	if (!NeedleConfigFactory.isMeasuremtEnabled()) {
+	    return DISABLED_NEEDLE;
+	}
+	final NeedleContext needleContext = getNeedleContext();
+	final long sampleWeight = needleContext.sampleNeedle();
+	if (sampleWeight == 0) {
+	    return needleContext.startUnsampledNeedle(new Needle(callSite.getName(), true));
+	}
+	final Needle needle = new Needle(callSite.getName(), context);
+	needle.sampleWeight = sampleWeight;
+	needle.startStackIndex = 5;
+	needle.startElement = callSite.getStartElement();
+	needle.start();
+	if (needle.startElement == null && needle.callSite != null) {
+	    callSite.setStartElement(needle.callSite[0]);
+	}
+	return needle;
+    }
+
     /**
      * Stop current log.
      */
     public static void stopCurrentNeedle() {
+	final NeedleContext needleContext = getNeedleContext();
+	if (needleContext.isUnsampled()) {
+	    needleContext.getCurrentUnsampledNeedle().stop();
+	    return;
+	}
 	final Needle needle = NeedleContext.getCurrentNeedle();
 	if (needle != null) {
 	    needle.stopStackIndex = 4;
 	    needle.stop();
-	} else {
+	} else if (NeedleConfigFactory.isMeasuremtEnabled()) {
 	    throw new IllegalStateException("There is no current log to stop within this Threastack.");
 	}
     }
@@ -179,19 +303,34 @@ public final class Needle implements NeedleInfo {
      * @param reason
      *            the reason
      */
-    public synchronized void abort(final Throwable reason) {
-	if (!isStarted()) {
-	    throw new IllegalStateException("Abort can not be called on a not started needle.");
+    public void abort(final Throwable reason) {
+	if (isDisabled()) {
+	    stopUnsampled(ABORTED);
+	    return;
 	}
-	if (!isStopped()) {
-	    if (reason == null) {
-		abortReason = new NeedleException("Needle got aborted manually without exception.");
-	    } else {
-		abortReason = reason;
+	int current;
+	do {
+	    current = state;
+	    if (current < STARTED) {
+		throw new IllegalStateException("Abort can not be called on a not started needle.");
+	    }
+	    if (current != STARTED) {
+		return;
 	    }
-	    duration = System.nanoTime() - startNanos;
-	    stopStackIndex = (reason != null) ? 0 : 1;
-	    getNeedleContext().stopNeedle(this, ExceptionUtils.getStackTraceElement(abortReason, stopStackIndex));
+	} while (!STATE_UPDATER.compareAndSet(this, STARTED, ABORTING));
+	if (reason == null) {
+	    abortReason = new NeedleException("Needle got aborted manually without exception.");
+	} else {
+	    abortReason = reason;
+	}
+	final long end = System.nanoTime();
+	duration = end - startNanos;
+	stopStackIndex = (reason != null) ? 0 : 1;
+	state = ABORTED;
+	calculateOwnDuration();
+	getNeedleContext().stopNeedle(this, ExceptionUtils.getStackTraceElement(abortReason, stopStackIndex));
+	if (OverheadGovernor.isActive()) {
+	    OverheadGovernor.recordOverhead(System.nanoTime() - end);
 	}
     }
 
@@ -202,20 +341,28 @@ public final class Needle implements NeedleInfo {
      *            the log
      */
     public void addChild(final Needle needle) {
-	children.add(needle);
+	if (isDisabled() || needle.isDisabled()) {
+	    return;
+	}
+	getOrCreateChildren().add(needle);
+	ownDurationNanos = UNKNOWN_DURATION;
 	needle.setParent(this);
     }
 
     public void addContextEntry(final String key, final Object value) {
-	if (NeedleConfigFactory.isContextEnabled()) {
+	if (!isDisabled() && NeedleConfigFactory.isContextEnabled()) {
+	    if (context == null) {//started before the context got enabled
+		context = new HashMap<String, Object>();
+	    }
 	    context.put(key, value);
 	}
     }
 
     public Needle debug(final CharSequence... debugLines) {
-	if (NeedleConfigFactory.isDebugEnabled()) {
+	if (!isDisabled() && NeedleConfigFactory.isDebugEnabled()) {
+	    final AppendOnlyList<String> lines = getOrCreateDebugLines();
 	    for (final CharSequence debugLine : debugLines) {
-		this.debugLines.add(debugLine.toString());
+		lines.add(debugLine.toString());
 	    }
 	}
 	return this;
@@ -228,16 +375,17 @@ public final class Needle implements NeedleInfo {
      *            the message to append debug informations
      */
     public Needle debug(final CharSequence message) {
-	if (NeedleConfigFactory.isDebugEnabled()) {
-	    debugLines.add(message.toString());
+	if (!isDisabled() && NeedleConfigFactory.isDebugEnabled()) {
+	    getOrCreateDebugLines().add(message.toString());
 	}
 	return this;
     }
 
     public Needle debug(final Collection<? extends CharSequence> debugLines) {
-	if (NeedleConfigFactory.isDebugEnabled()) {
+	if (!isDisabled() && NeedleConfigFactory.isDebugEnabled()) {
+	    final AppendOnlyList<String> lines = getOrCreateDebugLines();
 	    for (final CharSequence debugLine : debugLines) {
-		this.debugLines.add(debugLine.toString());
+		lines.add(debugLine.toString());
 	    }
 	}
 	return this;
@@ -258,7 +406,8 @@ public final class Needle implements NeedleInfo {
      */
     @Override
     public int getChildCount() {
-	return children.size();
+	final AppendOnlyList<Needle> current = children;
+	return (current != null) ? current.size() : 0;
     }
 
     /* (non-Javadoc)
@@ -266,11 +415,7 @@ public final class Needle implements NeedleInfo {
      */
     @Override
     public List<NeedleInfo> getChildren() {
-	final List<NeedleInfo> result = new LinkedList<NeedleInfo>();
-	for (final NeedleInfo needle : children) {
-	    result.add(needle);
-	}
-	return result;
+	return AppendOnlyList.<NeedleInfo> snapshot(children);
     }
 
     /* (non-Javadoc)
@@ -286,7 +431,7 @@ public final class Needle implements NeedleInfo {
      */
     @Override
     public List<String> getDebugLines() {
-	return Collections.unmodifiableList(debugLines);
+	return AppendOnlyList.<String> snapshot(debugLines);
     }
 
     /* (non-Javadoc)
@@ -294,7 +439,12 @@ public final class Needle implements NeedleInfo {
      */
     @Override
     public int getDepth() {
-	return (parent != null) ? parent.getDepth() + 1 : 1;
+	int result = depth;
+	if (result == 0) {
+	    result = (parent != null) ? parent.getDepth() + 1 : 1;
+	    depth = result;
+	}
+	return result;
     }
 
     /* (non-Javadoc)
@@ -310,9 +460,10 @@ public final class Needle implements NeedleInfo {
      */
     @Override
     public long getDurationNanos() {
-	if (isStopped()) {
+	final int current = state;
+	if (current >= STOPPED) {
 	    return duration;
-	} else if (isStarted()) {
+	} else if (current >= STARTED) {
 	    return System.nanoTime() - startNanos;
 	} else {
 	    return 0;
@@ -337,7 +488,8 @@ public final class Needle implements NeedleInfo {
      */
     @Override
     public NeedleState getNeedleState() {
-	return (isAborted()) ? NeedleState.ABORTED : (isStopped()) ? NeedleState.STOPPED : (isStarted()) ? NeedleState.STARTED : NeedleState.NEW;
+	final int current = state;
+	return (current == ABORTED) ? NeedleState.ABORTED : (current == STOPPED) ? NeedleState.STOPPED : (current >= STARTED) ? NeedleState.STARTED : NeedleState.NEW;
     }
 
     /* (non-Javadoc)
@@ -345,11 +497,17 @@ public final class Needle implements NeedleInfo {
      */
     @Override
     public long getOwnDurationNanos() {
-	Long childDurations = 0L;
-	for (final Needle child : children) {
-	    childDurations += child.getDurationNanos();
-	}
-	return getDurationNanos() - childDurations;
+	final long result = ownDurationNanos;
+	return (result != UNKNOWN_DURATION) ? result : calculateOwnDuration();
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.needles.NeedleInfo#getSampleWeight()
+     */
+    @Override
+    public long getSampleWeight() {
+	final long result = sampleWeight;
+	return (result > 0) ? result : 1;
     }
 
     /**
@@ -363,11 +521,12 @@ public final class Needle implements NeedleInfo {
     }
 
     public Needle getRootNeedle() {
-	if (parent != null) {
-	    return parent.getRootNeedle();
-	} else {
-	    return this;
+	Needle result = root;
+	if (result == null) {
+	    result = (parent != null) ? parent.getRootNeedle() : this;
+	    root = result;
 	}
+	return result;
     }
 
     /* (non-Javadoc)
@@ -383,7 +542,7 @@ public final class Needle implements NeedleInfo {
      */
     @Override
     public long getStartTimeMillis() {
-	return startTime;
+	return (state >= STARTED) ? startTime : 0;
     }
 
     /* (non-Javadoc)
@@ -407,7 +566,16 @@ public final class Needle implements NeedleInfo {
      */
     @Override
     public boolean isAborted() {
-	return abortReason != null;
+	return state == ABORTED;
+    }
+
+    /**
+     * Checks if this is an inert needle, either returned while measurement is disabled or belonging to a needle tree which hasn't been sampled.
+     * 
+     * @return true, if disabled
+     */
+    public boolean isDisabled() {
+	return this == DISABLED_NEEDLE || unsampled;
     }
 
     /*
@@ -429,7 +597,7 @@ public final class Needle implements NeedleInfo {
      */
     @Override
     public boolean isStarted() {
-	return startTime != 0;
+	return state >= STARTED;
     }
 
     /* (non-Javadoc)
@@ -437,7 +605,7 @@ public final class Needle implements NeedleInfo {
      */
     @Override
     public boolean isStopped() {
-	return duration != -1;
+	return state >= STOPPED;
     }
 
     /*
@@ -451,32 +619,71 @@ public final class Needle implements NeedleInfo {
     /**
      * Start.
      */
-    public synchronized void start() {
-	if (isStopped()) {
-	    throw new IllegalStateException("The log has already been stopped.");
+    public void start() {
+	if (isDisabled()) {
+	    return;
 	}
-	if (isStarted()) {
+	if (!STATE_UPDATER.compareAndSet(this, NEW, STARTING)) {
+	    if (state >= STOPPING) {
+		throw new IllegalStateException("The log has already been stopped.");
+	    }
 	    throw new IllegalStateException("The log has already been started.");
 	}
-	getNeedleContext().startNeedle(this);
+	final boolean governed = OverheadGovernor.isActive();
+	final long begin = governed ? System.nanoTime() : 0;
+	final NeedleContext needleContext = getNeedleContext();
+	if (sampleWeight == 0) {
+	    sampleWeight = needleContext.sampleNeedle();
+	    if (sampleWeight == 0) {
+		unsampled = true;
+		state = STARTED;
+		needleContext.startUnsampledNeedle(this);
+		return;
+	    }
+	}
+	try {
+	    needleContext.startNeedle(this);
+	} catch (final RuntimeException e) {
+	    state = NEW;
+	    throw e;
+	}
 	startTime = System.currentTimeMillis();
 	startNanos = System.nanoTime();
+	state = STARTED;
+	if (governed) {
+	    OverheadGovernor.recordOverhead(startNanos - begin);
+	}
     }
 
     /**
      * Stop.
      */
-    public synchronized void stop() {
-	if (!isStarted()) {
-	    throw new IllegalStateException("The log has not been started yet.");
+    public void stop() {
+	if (isDisabled()) {
+	    stopUnsampled(STOPPED);
+	    return;
 	}
-	if (!isAborted()) {//if already aborted we do nothing because its also stopped but within an unusual way. 
-	    if (isStopped()) {
+	int current;
+	do {
+	    current = state;
+	    if (current < STARTED) {
+		throw new IllegalStateException("The log has not been started yet.");
+	    }
+	    if (current == ABORTING || current == ABORTED) {//if already aborted we do nothing because its also stopped but within an unusual way.
+		return;
+	    }
+	    if (current != STARTED) {
 		throw new IllegalStateException("The log has already been stopped.");
 	    }
-	    duration = System.nanoTime() - startNanos;
-	    //pop from stack
-	    getNeedleContext().stopNeedle(this);
+	} while (!STATE_UPDATER.compareAndSet(this, STARTED, STOPPING));
+	final long end = System.nanoTime();
+	duration = end - startNanos;
+	state = STOPPED;
+	calculateOwnDuration();
+	//pop from stack
+	getNeedleContext().stopNeedle(this);
+	if (OverheadGovernor.isActive()) {
+	    OverheadGovernor.recordOverhead(System.nanoTime() - end);
 	}
     }
 
@@ -502,7 +709,42 @@ public final class Needle implements NeedleInfo {
 	    this.context = (context == null) ? new HashMap<String, Object>() : new HashMap<String, Object>(context);
 	}
 	abortReason = needle.getAbortReason();
+	sampleWeight = needle.getSampleWeight();
 	debug(needle.getDebugLines());
+	switch (needle.getNeedleState()) {
+	case ABORTED:
+	    state = ABORTED;
+	    break;
+	case STOPPED:
+	    state = STOPPED;
+	    break;
+	case STARTED:
+	    //keep the copy running from the point the source got started
+	    startNanos = System.nanoTime() - duration;
+	    duration = -1;
+	    state = STARTED;
+	    break;
+	default:
+	    state = NEW;
+	}
+    }
+
+    /**
+     * Gets the start and stop element of this needle.
+     * 
+     * @return the call site or null if not known
+     */
+    StackTraceElement[] getCallSite() {
+	return callSite;
+    }
+
+    /**
+     * Gets the start element handed over before the start.
+     * 
+     * @return the start element or null if it has to be resolved
+     */
+    StackTraceElement getStartElement() {
+	return startElement;
     }
 
     /**
@@ -523,6 +765,119 @@ public final class Needle implements NeedleInfo {
 	return stopStackIndex;
     }
 
+    private void stopUnsampled(final int stoppedState) {
+	//only the first stop leaves the not sampled tree level
+	if (unsampled && STATE_UPDATER.compareAndSet(this, STARTED, stoppedState)) {
+	    getNeedleContext().stopUnsampledNeedle(this);
+	}
+    }
+
+    private long calculateOwnDuration() {
+	boolean complete = isStopped();
+	long childDurations = 0;
+	final AppendOnlyList<Needle> current = children;
+	if (current != null) {
+	    for (int i = 0; i < current.size(); i++) {
+		final Needle child = current.get(i);
+		childDurations += child.getDurationNanos();
+		complete &= child.isStopped();
+	    }
+	}
+	final long result = getDurationNanos() - childDurations;
+	if (complete) {
+	    ownDurationNanos = result;
+	}
+	return result;
+    }
+
+    private AppendOnlyList<Needle> getOrCreateChildren() {
+	AppendOnlyList<Needle> result = children;
+	if (result == null) {
+	    children = result = new AppendOnlyList<Needle>();
+	}
+	return result;
+    }
+
+    private AppendOnlyList<String> getOrCreateDebugLines() {
+	AppendOnlyList<String> result = debugLines;
+	if (result == null) {
+	    debugLines = result = new AppendOnlyList<String>();
+	}
+	return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void readObject(final ObjectInputStream in) throws IOException, ClassNotFoundException {
+	final ObjectInputStream.GetField fields = in.readFields();
+	startTime = fields.get("startTime", 0L);
+	duration = fields.get("duration", -1L);
+	name = (String) fields.get("name", null);
+	needleId = (NeedleId) fields.get("needleId", null);
+	parent = (Needle) fields.get("parent", null);
+	abortReason = (Throwable) fields.get("abortReason", null);
+	context = (Map<String, Object>) fields.get("context", null);
+	fromParallelProcess = fields.get("fromParallelProcess", false);
+	sampleWeight = fields.get("sampleWeight", 1L);
+	final Collection<String> lines = (Collection<String>) fields.get("debugLines", null);
+	if (lines != null && !lines.isEmpty()) {
+	    getOrCreateDebugLines();
+	    for (final String line : lines) {
+		debugLines.add(line);
+	    }
+	}
+	final Collection<Needle> childNeedles = (Collection<Needle>) fields.get("children", null);
+	if (childNeedles != null && !childNeedles.isEmpty()) {
+	    getOrCreateChildren();
+	    for (final Needle child : childNeedles) {
+		children.add(child);
+	    }
+	}
+	int readState = fields.get("state", NEW);
+	if (readState == NEW && startTime != 0) {
+	    //written before the state got serialized
+	    readState = (abortReason != null) ? ABORTED : (duration != -1) ? STOPPED : STARTED;
+	}
+	state = readState;
+	ownDurationNanos = UNKNOWN_DURATION;
+    }
+
+    private void writeObject(final ObjectOutputStream out) throws IOException {
+	final ObjectOutputStream.PutField fields = out.putFields();
+	fields.put("startTime", startTime);
+	fields.put("duration", duration);
+	fields.put("state", state);
+	fields.put("name", name);
+	fields.put("needleId", needleId);
+	fields.put("parent", parent);
+	fields.put("abortReason", abortReason);
+	fields.put("context", context);
+	fields.put("debugLines", new LinkedList<String>(getDebugLines()));
+	fields.put("children", new LinkedBlockingQueue<Needle>(AppendOnlyList.<Needle> snapshot(children)));
+	fields.put("fromParallelProcess", fromParallelProcess);
+	fields.put("sampleWeight", getSampleWeight());
+	out.writeFields();
+    }
+
+    /**
+     * Sets the start and stop element of this needle.
+     * 
+     * @param callSite
+     *            the call site
+     */
+    void setCallSite(final StackTraceElement[] callSite) {
+	this.callSite = callSite;
+    }
+
+    /**
+     * Sets the amount of needle trees this needle stands for.
+     * 
+     * @param sampleWeight
+     *            the sample weight
+     */
+    void setSampleWeight(final long sampleWeight) {
+	this.sampleWeight = sampleWeight;
+    }
+
     /**
      * Sets the log id.
      * 
@@ -541,5 +896,17 @@ public final class Needle implements NeedleInfo {
      */
     protected void setParent(final Needle parent) {
 	this.parent = parent;
+	updateTreePosition();
+    }
+
+    private void updateTreePosition() {
+	depth = (parent != null) ? parent.getDepth() + 1 : 1;
+	root = (parent != null) ? parent.getRootNeedle() : this;
+	final AppendOnlyList<Needle> current = children;
+	if (current != null) {
+	    for (int i = 0; i < current.size(); i++) {
+		current.get(i).updateTreePosition();
+	    }
+	}
     }
 }
@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2013,
+ * Marco Brade
+ * 							[https://github.com/mbrade]
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice,
+ *       this list of conditions and the following disclaimer in the documentation
+ *       and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.sf.needles;
+
+import java.util.Map;
+
+/**
+ * Start location of needles which gets resolved only once. The static {@link Needle#start(String)} methods walk the stack on every start to find the calling line, a call site instead remembers the
+ * line of its first measured start and hands it to all later needles, so they skip the walk. Keep one instance per location in a static field and start the needles of that location through it:
+ * 
+ * <pre>
+ * private static final NeedleCallSite LOAD = new NeedleCallSite(&quot;load&quot;);
+ * 
+ * final Needle needle = LOAD.start();
+ * try {
+ *     ...
+ * } finally {
+ *     needle.stop();
+ * }
+ * </pre>
+ * 
+ * Needles started through one instance from several lines all get the line of the first start.
+ */
+public final class NeedleCallSite {
+
+    private final String name;
+    private volatile StackTraceElement startElement;
+
+    /**
+     * Instantiates a new call site.
+     * 
+     * @param name
+     *            the name of the needles started from it
+     */
+    public NeedleCallSite(final String name) {
+	if (name == null || name.trim().length() == 0) {
+	    throw new IllegalArgumentException("The name has to be valid and not empty or null.");
+	}
+	this.name = name;
+    }
+
+    /**
+     * Gets the name of the needles started from this call site.
+     * 
+     * @return the name
+     */
+    public String getName() {
+	return name;
+    }
+
+    /**
+     * Gets the resolved start element.
+     * 
+     * @return the start element or null if no measured needle got started yet
+     */
+    public StackTraceElement getStartElement() {
+	return startElement;
+    }
+
+    /**
+     * Starts a needle at this call site.
+     * 
+     * @return the needle
+     */
+    public Needle start() {
+	return Needle.start(this, null);
+    }
+
+    /**
+     * Starts a needle at this call site.
+     * 
+     * @param context
+     *            the context
+     * @return the needle
+     */
+    public Needle start(final Map<String, Object> context) {
+	return Needle.start(this, context);
+    }
+
+    void setStartElement(final StackTraceElement startElement) {
+	if (this.startElement == null) {
+	    this.startElement = startElement;
+	}
+    }
+}
@@ -28,43 +28,27 @@
 
 package net.sf.needles;
 
-import java.nio.charset.Charset;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
-import java.util.LinkedList;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Set;
 import java.util.Stack;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
-import net.sf.needles.util.ExceptionUtils;
-
-import org.apache.log4j.Logger;
+import net.sf.needles.sampling.Sampler;
+import net.sf.needles.util.CallSiteResolver;
+import net.sf.needles.util.ClockCache;
+import net.sf.needles.util.Murmur3Hasher;
 
 /**
  * The Class NeedleContext.
  */
 public class NeedleContext {
 
-    private final static Logger LOG = Logger.getLogger(NeedleContext.class);
-    private static final Charset charset = Charset.forName("UTF-8");
-    private static HashBuilder hashBuilder = null;
-    static {
-	MessageDigest digest = null;
-	try {
-	    digest = MessageDigest.getInstance("MD5");
-	} catch (final NoSuchAlgorithmException nsa) {
-	    try {
-		digest = MessageDigest.getInstance("SH1");
-	    } catch (final NoSuchAlgorithmException e) {
-		LOG.warn("Couldn't not find hash algorithms MD5 and SH1");
-	    }
-	}
-	if (digest != null) {
-	    hashBuilder = new MessageDigestHashBuilder(digest);
-	} else {
-	    hashBuilder = new StringHashBuilder();
-	}
-    }
+    private static final int MAX_CACHED_NEEDLE_IDS = 1 << 16;
+    private static final int DEFAULT_MAX_CALL_SITES = 8192;
 
     private static final ThreadLocal<NeedleContext> needleContextTL = new ThreadLocal<NeedleContext>() {
 	@Override
@@ -73,11 +57,21 @@ public class NeedleContext {
 	}
     };
 
-    //shared over all LogContexts
-    private static ConcurrentHashMap<NeedleId, StackTraceElement[]> stackTraceElements = new ConcurrentHashMap<NeedleId, StackTraceElement[]>();
+    //start and stop elements by needle id, shared over all LogContexts. Started needles keep a reference to their entry, so eviction only affects lookups of needles created elsewhere.
+    private static final ClockCache<NeedleId, StackTraceElement[]> stackTraceElements = new ClockCache<NeedleId, StackTraceElement[]>(DEFAULT_MAX_CALL_SITES);
+    //calculated ids by parent id, name and call site, shared over all LogContexts. Evicted ids just get calculated again.
+    private static final ClockCache<NeedleIdKey, NeedleId> needleIds = new ClockCache<NeedleIdKey, NeedleId>(MAX_CACHED_NEEDLE_IDS);
 
     private static boolean doRegisterUncaughtExceptionHandler = false;
+    private static volatile NeedleRetention retention = NeedleRetention.KEEP_ALL;
+    private static volatile int retentionCount = 1;
+    private static final AtomicLong releasedRootNeedles = new AtomicLong();
+    private static volatile Sampler sampler = null;
     private final ThreadLogs threadLogs = new ThreadLogs();
+    //running inert needles of the needle tree which hasn't been sampled, the first one is its root. Empty if the thread isn't within one
+    private final ArrayDeque<Needle> unsampledNeedles = new ArrayDeque<Needle>();
+    private final Murmur3Hasher hasher = new Murmur3Hasher();
+    private final NeedleIdKey needleIdKey = new NeedleIdKey();
 
     private NeedleContext() {
     }
@@ -96,6 +90,43 @@ public class NeedleContext {
     public static void cleanup() {
 	final NeedleContext currentNeedleContext = getNeedleContext();
 	currentNeedleContext.threadLogs.clear();
+	currentNeedleContext.unsampledNeedles.clear();
+    }
+
+    /**
+     * Gets the amount of call site lookups which found no entry in the call site table.
+     * 
+     * @return the miss count
+     */
+    public static long getCallSiteMissCount() {
+	return stackTraceElements.getMissCount();
+    }
+
+    /**
+     * Gets the amount of call site lookups which found an entry in the call site table.
+     * 
+     * @return the hit count
+     */
+    public static long getCallSiteHitCount() {
+	return stackTraceElements.getHitCount();
+    }
+
+    /**
+     * Gets the amount of entries evicted from the call site table.
+     * 
+     * @return the eviction count
+     */
+    public static long getCallSiteEvictionCount() {
+	return stackTraceElements.getEvictionCount();
+    }
+
+    /**
+     * Gets the maximum amount of entries within the call site table holding the start and stop {@link StackTraceElement}s per {@link NeedleId}.
+     * 
+     * @return the maximum amount of call sites
+     */
+    public static int getMaxCallSites() {
+	return stackTraceElements.getMaximumSize();
     }
 
     /**
@@ -116,6 +147,42 @@ public class NeedleContext {
 	return needleContextTL.get();
     }
 
+    /**
+     * Gets the amount of root needles released by the {@link NeedleRetention} over all threads.
+     * 
+     * @return the released root needle count
+     */
+    public static long getReleasedRootNeedleCount() {
+	return releasedRootNeedles.get();
+    }
+
+    /**
+     * Gets the retention of root needles.
+     * 
+     * @return the retention
+     */
+    public static NeedleRetention getRetention() {
+	return retention;
+    }
+
+    /**
+     * Gets the amount of root needles kept per thread for {@link NeedleRetention#KEEP_LAST}.
+     * 
+     * @return the retention count
+     */
+    public static int getRetentionCount() {
+	return retentionCount;
+    }
+
+    /**
+     * Gets the {@link Sampler} deciding which root needles get measured.
+     * 
+     * @return the sampler or null if all root needles get measured
+     */
+    public static Sampler getSampler() {
+	return sampler;
+    }
+
     /**
      * Gets the root needles.
      * 
@@ -135,54 +202,60 @@ public class NeedleContext {
     }
 
     /**
-     * Will configure if the {@link NeedleUncaughtExceptionHandler} will be set for all Threads as {@link Thread#setUncaughtExceptionHandler(java.lang.Thread.UncaughtExceptionHandler)} to set the
-     * current log to abort if not currently stopped.
+     * Sets how long the root needles of a thread are kept if {@link #cleanup()} isn't called. Default is {@link NeedleRetention#KEEP_ALL}.
      * 
-     * @param value
-     *            the value
+     * @param retention
+     *            the retention
+     * @param retentionCount
+     *            the amount of root needles kept per thread for {@link NeedleRetention#KEEP_LAST}
      */
-    public static void registerUncaughtExceptionHandler(final boolean value) {
-	doRegisterUncaughtExceptionHandler = value;
+    public static void setRetention(final NeedleRetention retention, final int retentionCount) {
+	if (retention == null) {
+	    throw new IllegalArgumentException("The retention shouldn't be null.");
+	}
+	if (retentionCount < 1) {
+	    throw new IllegalArgumentException("The retention count has to be at least 1 but was: " + retentionCount);
+	}
+	NeedleContext.retentionCount = retentionCount;
+	NeedleContext.retention = retention;
     }
 
-    private static NeedleId calculateNeedleId(final Needle needle, final StackTraceElement element) {
-	final StringBuilder sb = getPath(needle);
-	if (element != null) {
-	    sb.append(element.getClassName())
-	      .append(".")
-	      .append(element.getMethodName())
-	      .append("#")
-	      .append(element.getLineNumber());
-	}
-	needle.setNeedleId(new NeedleId(getHash(sb.toString())));
-	return needle.getId();
+    /**
+     * Sets the {@link Sampler} deciding on the start of a root needle if its needle tree gets measured. Needles of a not sampled tree are inert and don't get aggregated, the sampled trees carry the
+     * amount of trees they stand for as {@link NeedleInfo#getSampleWeight()}. Default is null which measures all root needles.
+     * 
+     * @param sampler
+     *            the sampler or null to measure all root needles
+     */
+    public static void setSampler(final Sampler sampler) {
+	NeedleContext.sampler = sampler;
     }
 
-    private static byte[] getHash(final String value) {
-	return hashBuilder.buildHash(value);
+    /**
+     * Sets the maximum amount of entries within the call site table. If the table is full the least recently used entries get evicted. Default is 8192.
+     * 
+     * @param maxCallSites
+     *            the maximum amount of call sites
+     */
+    public static void setMaxCallSites(final int maxCallSites) {
+	stackTraceElements.setMaximumSize(maxCallSites);
     }
 
     /**
-     * Returns the ID of the LogEvent.
+     * Will configure if the {@link NeedleUncaughtExceptionHandler} will be set for all Threads as {@link Thread#setUncaughtExceptionHandler(java.lang.Thread.UncaughtExceptionHandler)} to set the
+     * current log to abort if not currently stopped.
      * 
-     * @return unique id
+     * @param value
+     *            the value
      */
-    private static StringBuilder getPath(final NeedleInfo needle) {
-	final StringBuilder builder = new StringBuilder();
-	if (needle.getParentNeedle() != null) {
-	    builder.append(needle.getParentNeedle().getId());
-	}
-	builder.append("/").append(needle.getName());
-	return builder;
+    public static void registerUncaughtExceptionHandler(final boolean value) {
+	doRegisterUncaughtExceptionHandler = value;
     }
 
     private NeedleInfo addChildNeedleToCurrentThreadStack(final NeedleInfo needle, final boolean aggregate) {
-	StackTraceElement[] elements = stackTraceElements.get(needle.getId());
-	if (elements == null) {
-	    elements = new StackTraceElement[] { needle.getStartStackTraceElement(), needle.getStopStackTraceElement() };
-	}
-	stackTraceElements.putIfAbsent(needle.getId(), elements);
-	final Needle resultNeedle = threadLogs.addNeedle(needle, false, false);//add the needles but don't touch the UncaughtExceptionHandler in this case.
+	final StackTraceElement[] elements = registerCallSite(needle);
+	final Needle resultNeedle = threadLogs.addNeedle(needle, false, false);
+	resultNeedle.setCallSite(elements);//add the needles but don't touch the UncaughtExceptionHandler in this case.
 	try {
 	    for (final NeedleInfo child : needle.getChildren()) {
 		addChildNeedleToCurrentThreadStack(child, aggregate);
@@ -197,9 +270,35 @@ public class NeedleContext {
 	}
     }
 
+    private static StackTraceElement[] registerCallSite(final NeedleInfo needle) {
+	StackTraceElement[] elements = (needle instanceof Needle) ? ((Needle) needle).getCallSite() : null;
+	if (elements == null && needle.getId() != null) {
+	    elements = stackTraceElements.get(needle.getId());
+	    if (elements == null) {
+		elements = new StackTraceElement[] { needle.getStartStackTraceElement(), needle.getStopStackTraceElement() };
+		final StackTraceElement[] existing = stackTraceElements.putIfAbsent(needle.getId(), elements);
+		if (existing != null) {
+		    elements = existing;
+		}
+	    }
+	}
+	return elements;
+    }
+
+    private static StackTraceElement[] getCallSite(final Needle needle) {
+	StackTraceElement[] elements = needle.getCallSite();
+	if (elements == null && needle.getId() != null) {
+	    elements = stackTraceElements.get(needle.getId());
+	}
+	return elements;
+    }
+
     private void afterStopNeedle(final NeedleInfo needle) {
 	threadLogs.pop();
 	AggregationContext.aggregateNeedle(needle);
+	if (retention == NeedleRetention.DROP_ON_STOP && needle.isRoot()) {
+	    threadLogs.releaseRootNeedle(needle);
+	}
     }
 
     /* (non-Javadoc)
@@ -213,21 +312,11 @@ public class NeedleContext {
      * @return true, if successful
      */
     NeedleInfo addNeedleToCurrentThreadStack(final NeedleInfo needle, final boolean aggregate) {
-	boolean containsEvent = (needle.getParentNeedle() != null);
-	if (!containsEvent) {
-	    for (final Needle aNeedle : threadLogs.getNeedles()) {
-		if (containsEvent = (aNeedle == needle)) {
-		    break;
-		}
-	    }
-	}
+	final boolean containsEvent = (needle.getParentNeedle() != null) || threadLogs.containsRootNeedle(needle);
 	if (!containsEvent) {
-	    StackTraceElement[] elements = stackTraceElements.get(needle.getId());
-	    if (elements == null) {
-		elements = new StackTraceElement[] { needle.getStartStackTraceElement(), needle.getStopStackTraceElement() };
-	    }
-	    stackTraceElements.putIfAbsent(needle.getId(), elements);
+	    final StackTraceElement[] elements = registerCallSite(needle);
 	    final Needle resultNeedle = threadLogs.addNeedle(needle, false);//add the needles but don't touch the UncaughtExceptionHandler in this case.
+	    resultNeedle.setCallSite(elements);
 	    try {
 		for (final NeedleInfo child : needle.getChildren()) {
 		    addChildNeedleToCurrentThreadStack(child, aggregate);
@@ -252,7 +341,34 @@ public class NeedleContext {
      * @return the stack trace element
      */
     StackTraceElement calculateStackTraceElement(final int index) {
-	return ExceptionUtils.getStackTraceElement(new Exception(), index);
+	return CallSiteResolver.getStackTraceElement(index);
+    }
+
+    /**
+     * Calculates the id of the needle out of the id of its parent, its name and the call site it got started from. Ids get cached, so the same path results in the same {@link NeedleId} instance
+     * as long as it isn't evicted. An evicted id gets calculated again with the same value.
+     * 
+     * @param needle
+     *            the needle
+     * @param element
+     *            the start element
+     * @return the id
+     */
+    NeedleId calculateNeedleId(final Needle needle, final StackTraceElement element) {
+	final NeedleInfo parent = needle.getParentNeedle();
+	final NeedleId parentId = (parent != null) ? parent.getId() : null;
+	needleIdKey.set(parentId, needle.getName(), element);
+	NeedleId id = needleIds.get(needleIdKey);
+	if (id == null) {
+	    id = new NeedleId(buildHash(parentId, needle.getName(), element));
+	    final NeedleId existing = needleIds.putIfAbsent(needleIdKey.copy(), id);
+	    if (existing != null) {
+		id = existing;
+	    }
+	}
+	needleIdKey.set(null, null, null);
+	needle.setNeedleId(id);
+	return id;
     }
 
     /**
@@ -263,11 +379,8 @@ public class NeedleContext {
      * @return the start element
      */
     StackTraceElement getStartElement(final Needle needle) {
-	if (needle.getId() != null) {
-	    final StackTraceElement[] elements = stackTraceElements.get(needle.getId());
-	    return (elements != null) ? elements[0] : null;
-	}
-	return null;
+	final StackTraceElement[] elements = getCallSite(needle);
+	return (elements != null) ? elements[0] : null;
     }
 
     /**
@@ -278,11 +391,54 @@ public class NeedleContext {
      * @return the stop element
      */
     StackTraceElement getStopElement(final Needle needle) {
-	if (needle.getId() != null) {
-	    final StackTraceElement[] elements = stackTraceElements.get(needle.getId());
-	    return (elements != null) ? elements[1] : null;
+	final StackTraceElement[] elements = getCallSite(needle);
+	return (elements != null) ? elements[1] : null;
+    }
+
+    private byte[] buildHash(final NeedleId parentId, final String name, final StackTraceElement element) {
+	if (parentId != null) {
+	    hasher.putBytes(parentId.getValue());
+	}
+	hasher.putString(name);
+	if (element != null) {
+	    hasher.putString(element.getClassName()).putString(element.getMethodName()).putInt(element.getLineNumber());
+	}
+	return hasher.hash();
+    }
+
+    /**
+     * Checks if the thread is within a needle tree which hasn't been sampled.
+     * 
+     * @return true, if not sampled
+     */
+    boolean isUnsampled() {
+	return !unsampledNeedles.isEmpty();
+    }
+
+    /**
+     * Gets the innermost running needle of the not sampled needle tree.
+     * 
+     * @return the needle or null if the thread isn't within a not sampled tree
+     */
+    Needle getCurrentUnsampledNeedle() {
+	return unsampledNeedles.peekLast();
+    }
+
+    /**
+     * Decides if a needle getting started on this thread gets measured. A root needle asks the {@link Sampler}, all other needles inherit the decision of their tree.
+     * 
+     * @return the sample weight of a root needle, 1 for other measured needles or 0 if the needle isn't measured
+     */
+    long sampleNeedle() {
+	if (!unsampledNeedles.isEmpty()) {
+	    return 0;
 	}
-	return null;
+	final Sampler current = sampler;
+	if (current == null || !threadLogs.isRootPosition()) {
+	    return 1;
+	}
+	final long weight = current.sample();
+	return (weight > 0) ? weight : 0;
     }
 
     /**
@@ -294,12 +450,23 @@ public class NeedleContext {
     void startNeedle(final Needle needle) {
 	//set the given log as the root one and or set it as child to the current root log.
 	threadLogs.addNeedle(needle, doRegisterUncaughtExceptionHandler);
-	final StackTraceElement startElement = calculateStackTraceElement(needle.getStartStackIndex());
+	final NeedleInfo parent = needle.getParentNeedle();
+	if (parent != null) {
+	    needle.setSampleWeight(parent.getSampleWeight());
+	}
+	final StackTraceElement knownElement = needle.getStartElement();
+	final StackTraceElement startElement = (knownElement != null) ? knownElement : calculateStackTraceElement(needle.getStartStackIndex());
 	//get the log id
 	final NeedleId id = calculateNeedleId(needle, startElement);
-	if (!stackTraceElements.containsKey(id)) {
-	    stackTraceElements.putIfAbsent(id, new StackTraceElement[] { startElement, null });
+	StackTraceElement[] elements = stackTraceElements.get(id);
+	if (elements == null) {
+	    elements = new StackTraceElement[] { startElement, null };
+	    final StackTraceElement[] existing = stackTraceElements.putIfAbsent(id, elements);
+	    if (existing != null) {
+		elements = existing;
+	    }
 	}
+	needle.setCallSite(elements);
     }
 
     /**
@@ -309,10 +476,8 @@ public class NeedleContext {
      *            the log
      */
     void stopNeedle(final Needle needle) {
-	//get the logId
-	final NeedleId id = needle.getId();
 	//calculate the stopping stacktracelement for the log and register (global part)
-	final StackTraceElement[] elements = stackTraceElements.get(id);
+	final StackTraceElement[] elements = getCallSite(needle);
 	if (elements != null && elements[1] == null) {//dont care for double inserts
 	    elements[1] = calculateStackTraceElement(needle.getStopStackIndex());
 	}
@@ -328,47 +493,49 @@ public class NeedleContext {
      *            the element
      */
     void stopNeedle(final Needle needle, final StackTraceElement element) {
-	final NeedleId id = needle.getId();
 	//calculate the stopping stacktracelement for the log and register (global part)
-	final StackTraceElement[] elements = stackTraceElements.get(id);
+	final StackTraceElement[] elements = getCallSite(needle);
 	if (elements != null && elements[1] == null) {//dont care for double inserts
 	    elements[1] = element;
 	}
 	afterStopNeedle(needle);
     }
 
-    private static class MessageDigestHashBuilder implements HashBuilder {
-
-	private final MessageDigest digest;
-
-	private MessageDigestHashBuilder(final MessageDigest digest) {
-	    this.digest = digest;
-	}
-
-	@Override
-	public byte[] buildHash(final String input) {
-	    try {
-		return ((MessageDigest) digest.clone()).digest(charset.encode(input).array());
-	    } catch (final CloneNotSupportedException e) {
-		return charset.encode(input).array();
-	    }
-	}
-
+    /**
+     * Enters a level of the not sampled needle tree, a needle started outside of such a tree becomes its root.
+     * 
+     * @param needle
+     *            the inert needle standing for the level
+     * @return the needle
+     */
+    Needle startUnsampledNeedle(final Needle needle) {
+	unsampledNeedles.addLast(needle);
+	return needle;
     }
 
-    private static class StringHashBuilder implements HashBuilder {
-
-	@Override
-	public byte[] buildHash(final String input) {
-	    return charset.encode(input).array();
+    /**
+     * Leaves the level of the not sampled needle tree of the given inert needle. Levels of children which haven't been stopped get left with it, so stopping the root always ends the tree.
+     * 
+     * @param needle
+     *            the inert needle
+     */
+    void stopUnsampledNeedle(final Needle needle) {
+	if (unsampledNeedles.peekFirst() == needle) {
+	    unsampledNeedles.clear();
+	} else if (unsampledNeedles.contains(needle)) {
+	    while (unsampledNeedles.pollLast() != needle) {
+		//drop the children left running
+	    }
 	}
-
     }
 
     private static class ThreadLogs {
 
-	/** The needles. */
-	private final List<Needle> needles = new LinkedList<Needle>();
+	/** The root needles in the order they got added. */
+	private final ArrayDeque<Needle> needles = new ArrayDeque<Needle>();
+
+	/** The root needles for membership checks. */
+	private final Set<NeedleInfo> rootNeedles = Collections.newSetFromMap(new IdentityHashMap<NeedleInfo, Boolean>());
 
 	/** The last needles */
 	private final Stack<Needle> lastNeedles = new Stack<Needle>();
@@ -386,23 +553,48 @@ public class NeedleContext {
 	public void clear() {
 	    NeedleUncaughtExceptionHandler.unregisterLogUncaughtExceptionHandler();
 	    needles.clear();
+	    rootNeedles.clear();
 	    lastNeedles.clear();
 	}
 
+	/**
+	 * Checks if the given needle is one of the root needles.
+	 * 
+	 * @param needle
+	 *            the needle
+	 * @return true, if it is a root needle of this thread
+	 */
+	public boolean containsRootNeedle(final NeedleInfo needle) {
+	    return rootNeedles.contains(needle);
+	}
+
 	/**
 	 * Gets the needles.
 	 * 
 	 * @return the log
 	 */
 	public List<Needle> getNeedles() {
-	    return needles;
+	    return new ArrayList<Needle>(needles);
+	}
+
+	/**
+	 * Checks if a needle started now would become a root needle.
+	 * 
+	 * @return true, if there is no running needle on the stack
+	 */
+	public boolean isRootPosition() {
+	    if (lastNeedles.isEmpty()) {
+		return true;
+	    }
+	    final Needle lastNeedle = lastNeedles.peek();
+	    return !lastNeedle.isStarted() || lastNeedle.isStopped();
 	}
 
 	public Needle peek() {
 	    if (!lastNeedles.isEmpty()) {
 		return lastNeedles.peek();
 	    } else {
-		return (!needles.isEmpty()) ? needles.get(0) : null;
+		return needles.peekFirst();
 	    }
 	}
 
@@ -415,9 +607,33 @@ public class NeedleContext {
 	    }
 	}
 
+	/**
+	 * Releases the given root needle.
+	 * 
+	 * @param needle
+	 *            the needle
+	 */
+	public void releaseRootNeedle(final NeedleInfo needle) {
+	    if (rootNeedles.remove(needle)) {
+		needles.remove(needle);
+		releasedRootNeedles.incrementAndGet();
+	    }
+	}
+
+	private void addRootNeedle(final Needle needle) {
+	    if (retention == NeedleRetention.KEEP_LAST) {
+		while (needles.size() >= retentionCount) {
+		    rootNeedles.remove(needles.pollFirst());
+		    releasedRootNeedles.incrementAndGet();
+		}
+	    }
+	    needles.add(needle);
+	    rootNeedles.add(needle);
+	}
+
 	private Needle addNeedle(final NeedleInfo needleInfo, final boolean registerUncaughExceptionHandler, final boolean checkNeedleState) {
 	    final Needle lastNeedle = (lastNeedles.isEmpty()) ? null : lastNeedles.peek();
-	    if (registerUncaughExceptionHandler && needles.isEmpty()) {
+	    if (registerUncaughExceptionHandler && needles.isEmpty() && !(Thread.currentThread().getUncaughtExceptionHandler() instanceof NeedleUncaughtExceptionHandler)) {
 		NeedleUncaughtExceptionHandler.registerNeedleUncaughtExceptionHandler();
 	    }
 	    final Needle needle = (needleInfo.getClass() == Needle.class) ? (Needle) needleInfo : new Needle(needleInfo);
@@ -427,13 +643,61 @@ public class NeedleContext {
 	    } else {
 		lastNeedles.clear();
 		lastNeedles.push(needle);
-		needles.add(needle);
+		addRootNeedle(needle);
 	    }
 	    return needle;
 	}
     }
 
-    interface HashBuilder {
-	byte[] buildHash(String input);
+    /**
+     * Key of a calculated {@link NeedleId}. Every {@link NeedleContext} uses its own instance for lookups, so only the keys that get stored have to be created.
+     */
+    private static final class NeedleIdKey {
+
+	private NeedleId parentId;
+	private String name;
+	private StackTraceElement element;
+	private int hash;
+
+	private NeedleIdKey() {
+	}
+
+	private NeedleIdKey(final NeedleId parentId, final String name, final StackTraceElement element) {
+	    set(parentId, name, element);
+	}
+
+	@Override
+	public boolean equals(final Object obj) {
+	    if (this == obj) {
+		return true;
+	    }
+	    if (!(obj instanceof NeedleIdKey)) {
+		return false;
+	    }
+	    final NeedleIdKey other = (NeedleIdKey) obj;
+	    return hash == other.hash && equal(parentId, other.parentId) && equal(name, other.name) && equal(element, other.element);
+	}
+
+	@Override
+	public int hashCode() {
+	    return hash;
+	}
+
+	private NeedleIdKey copy() {
+	    return new NeedleIdKey(parentId, name, element);
+	}
+
+	private boolean equal(final Object value, final Object other) {
+	    return (value == other) || (value != null && value.equals(other));
+	}
+
+	private void set(final NeedleId parentId, final String name, final StackTraceElement element) {
+	    this.parentId = parentId;
+	    this.name = name;
+	    this.element = element;
+	    int result = (parentId == null) ? 0 : parentId.hashCode();
+	    result = 31 * result + ((name == null) ? 0 : name.hashCode());
+	    this.hash = 31 * result + ((element == null) ? 0 : element.hashCode());
+	}
     }
 }
@@ -0,0 +1,343 @@
+/*
+ * Copyright (c) 2013,
+ * Marco Brade
+ * 							[https://github.com/mbrade]
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice,
+ *       this list of conditions and the following disclaimer in the documentation
+ *       and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.sf.needles;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.sf.needles.aggregation.worker.AggregationWorker;
+import net.sf.needles.util.StripedCounter;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Keeps the overhead of the needles within a budget. The time threads spend within the needle bookkeeping on start, stop and abort and the queue size of the {@link AggregationWorker} get checked
+ * periodically. If one of them exceeds its budget the {@link NeedleConfigFactory#setMaximumNeedleConfig(NeedleConfig) maximum config} gets lowered by one level, down to the minimum config. Once both
+ * stay below half of their budget for the configured amount of checks it gets raised again by one level, up to the maximum config set when the governor got started. Every transition is counted and
+ * published to the {@link OverheadGovernorListener}s.
+ */
+public class OverheadGovernor {
+
+    /** The default interval between two checks in milliseconds. */
+    public static final long DEFAULT_CHECK_INTERVAL_MILLIS = 1000;
+
+    private final static Logger LOG = Logger.getLogger(OverheadGovernor.class);
+    private static final StripedCounter overheadNanos = new StripedCounter();
+    private static volatile OverheadGovernor governor = null;
+
+    private final long checkIntervalMillis;
+    private final double maxOverhead;
+    private final int maxQueueSize;
+    private volatile int recoveryChecks = 3;
+    private volatile NeedleConfig minimumNeedleConfig = NeedleConfig.MEASUREMENT;
+    private final List<OverheadGovernorListener> listeners = new CopyOnWriteArrayList<OverheadGovernorListener>();
+    private final AtomicLong downgrades = new AtomicLong();
+    private final AtomicLong upgrades = new AtomicLong();
+    private volatile double lastOverhead = 0.0;
+    private volatile int lastQueueSize = 0;
+    //guarded by this
+    private NeedleConfig maximumNeedleConfig = NeedleConfig.DEBUG;
+    private ScheduledExecutorService executor;
+    private long lastCheckNanos;
+    private long lastOverheadNanos;
+    private int healthyChecks;
+
+    /**
+     * Instantiates a new overhead governor checking every second.
+     * 
+     * @param maxOverhead
+     *            the maximum share of the available processor time spent within the needle bookkeeping, e.g. 0.05 for 5%
+     * @param maxQueueSize
+     *            the maximum amount of needles waiting for aggregation
+     */
+    public OverheadGovernor(final double maxOverhead, final int maxQueueSize) {
+	this(DEFAULT_CHECK_INTERVAL_MILLIS, maxOverhead, maxQueueSize);
+    }
+
+    /**
+     * Instantiates a new overhead governor.
+     * 
+     * @param checkIntervalMillis
+     *            the interval between two checks in milliseconds
+     * @param maxOverhead
+     *            the maximum share of the available processor time spent within the needle bookkeeping, e.g. 0.05 for 5%
+     * @param maxQueueSize
+     *            the maximum amount of needles waiting for aggregation
+     */
+    public OverheadGovernor(final long checkIntervalMillis, final double maxOverhead, final int maxQueueSize) {
+	if (checkIntervalMillis < 1) {
+	    throw new IllegalArgumentException("The check interval has to be at least 1 ms but was: " + checkIntervalMillis);
+	}
+	if (!(maxOverhead > 0.0)) {
+	    throw new IllegalArgumentException("The maximum overhead has to be greater than 0 but was: " + maxOverhead);
+	}
+	if (maxQueueSize < 1) {
+	    throw new IllegalArgumentException("The maximum queue size has to be at least 1 but was: " + maxQueueSize);
+	}
+	this.checkIntervalMillis = checkIntervalMillis;
+	this.maxOverhead = maxOverhead;
+	this.maxQueueSize = maxQueueSize;
+    }
+
+    /**
+     * Gets the started governor.
+     * 
+     * @return the governor or null if none is started
+     */
+    public static OverheadGovernor getGovernor() {
+	return governor;
+    }
+
+    /**
+     * Gets the time spent within the needle bookkeeping over all threads since the first governor got started.
+     * 
+     * @return the overhead in nanoseconds
+     */
+    public static long getOverheadNanos() {
+	return overheadNanos.sum();
+    }
+
+    /**
+     * Checks if the needle bookkeeping has to be measured.
+     * 
+     * @return true, if a governor is started
+     */
+    static boolean isActive() {
+	return governor != null;
+    }
+
+    /**
+     * Adds time spent within the needle bookkeeping of the current thread.
+     * 
+     * @param nanos
+     *            the overhead in nanoseconds
+     */
+    static void recordOverhead(final long nanos) {
+	overheadNanos.add(nanos);
+    }
+
+    public void addListener(final OverheadGovernorListener listener) {
+	listeners.add(listener);
+    }
+
+    public long getCheckIntervalMillis() {
+	return checkIntervalMillis;
+    }
+
+    /**
+     * Gets the amount of times the maximum config got lowered.
+     * 
+     * @return the downgrade count
+     */
+    public long getDowngradeCount() {
+	return downgrades.get();
+    }
+
+    /**
+     * Gets the share of the available processor time spent within the needle bookkeeping during the last check interval.
+     * 
+     * @return the last overhead
+     */
+    public double getLastOverhead() {
+	return lastOverhead;
+    }
+
+    /**
+     * Gets the queue size of the {@link AggregationWorker} at the last check.
+     * 
+     * @return the last queue size
+     */
+    public int getLastQueueSize() {
+	return lastQueueSize;
+    }
+
+    public double getMaxOverhead() {
+	return maxOverhead;
+    }
+
+    public int getMaxQueueSize() {
+	return maxQueueSize;
+    }
+
+    public NeedleConfig getMinimumNeedleConfig() {
+	return minimumNeedleConfig;
+    }
+
+    public int getRecoveryChecks() {
+	return recoveryChecks;
+    }
+
+    /**
+     * Gets the amount of times the maximum config got raised.
+     * 
+     * @return the upgrade count
+     */
+    public long getUpgradeCount() {
+	return upgrades.get();
+    }
+
+    public void removeListener(final OverheadGovernorListener listener) {
+	listeners.remove(listener);
+    }
+
+    /**
+     * Sets the lowest config the governor steps down to. Default is {@link NeedleConfig#MEASUREMENT}.
+     * 
+     * @param minimumNeedleConfig
+     *            the minimum config
+     */
+    public void setMinimumNeedleConfig(final NeedleConfig minimumNeedleConfig) {
+	if (minimumNeedleConfig == null) {
+	    throw new IllegalArgumentException("The minimum NeedleConfig shouldn't be null.");
+	}
+	this.minimumNeedleConfig = minimumNeedleConfig;
+    }
+
+    /**
+     * Sets the amount of checks in a row within half of the budgets before the config gets raised by one level. Default is 3.
+     * 
+     * @param recoveryChecks
+     *            the recovery checks
+     */
+    public void setRecoveryChecks(final int recoveryChecks) {
+	if (recoveryChecks < 1) {
+	    throw new IllegalArgumentException("The recovery checks have to be at least 1 but were: " + recoveryChecks);
+	}
+	this.recoveryChecks = recoveryChecks;
+    }
+
+    /**
+     * Starts the periodic checks. A previously started governor gets stopped. The current maximum config of the {@link NeedleConfigFactory} is the level the governor restores on recovery.
+     */
+    public void start() {
+	synchronized (OverheadGovernor.class) {
+	    final OverheadGovernor previous = governor;
+	    if (previous == this) {
+		return;
+	    }
+	    if (previous != null) {
+		previous.stop();
+	    }
+	    synchronized (this) {
+		maximumNeedleConfig = NeedleConfigFactory.getMaximumNeedleConfig();
+		lastCheckNanos = System.nanoTime();
+		lastOverheadNanos = getOverheadNanos();
+		healthyChecks = 0;
+		executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+		    @Override
+		    public Thread newThread(final Runnable r) {
+			final Thread result = new Thread(r, OverheadGovernor.class.getName() + "-Thread");
+			result.setDaemon(true);
+			return result;
+		    }
+		});
+		executor.scheduleAtFixedRate(new Runnable() {
+		    @Override
+		    public void run() {
+			try {
+			    check();
+			} catch (final RuntimeException e) {
+			    LOG.warn("The overhead check failed.", e);
+			}
+		    }
+		}, checkIntervalMillis, checkIntervalMillis, TimeUnit.MILLISECONDS);
+	    }
+	    governor = this;
+	}
+    }
+
+    /**
+     * Stops the periodic checks and restores the maximum config the governor got started with.
+     */
+    public void stop() {
+	synchronized (OverheadGovernor.class) {
+	    synchronized (this) {
+		if (executor == null) {
+		    return;
+		}
+		executor.shutdownNow();
+		executor = null;
+		NeedleConfigFactory.setMaximumNeedleConfig(maximumNeedleConfig);
+	    }
+	    if (governor == this) {
+		governor = null;
+	    }
+	}
+    }
+
+    /**
+     * Compares the overhead and the queue size since the last check with the budgets and steps the maximum config down or up.
+     */
+    synchronized void check() {
+	final long now = System.nanoTime();
+	final long overhead = getOverheadNanos();
+	final long elapsed = now - lastCheckNanos;
+	if (elapsed <= 0) {
+	    return;
+	}
+	lastOverhead = (overhead - lastOverheadNanos) / ((double) elapsed * Runtime.getRuntime().availableProcessors());
+	lastQueueSize = AggregationContext.getAggregationWorker().getQueueSize();
+	lastCheckNanos = now;
+	lastOverheadNanos = overhead;
+	final NeedleConfig current = NeedleConfigFactory.getMaximumNeedleConfig();
+	if (lastOverhead > maxOverhead || lastQueueSize > maxQueueSize) {
+	    healthyChecks = 0;
+	    if (current.getConfigId() > minimumNeedleConfig.getConfigId()) {
+		downgrades.incrementAndGet();
+		changeNeedleConfig(current, NeedleConfig.getNeedleConfigById(current.getConfigId() - 1));
+	    }
+	} else if (lastOverhead <= maxOverhead / 2 && lastQueueSize <= maxQueueSize / 2) {
+	    if (++healthyChecks >= recoveryChecks && current.getConfigId() < maximumNeedleConfig.getConfigId()) {
+		healthyChecks = 0;
+		upgrades.incrementAndGet();
+		changeNeedleConfig(current, NeedleConfig.getNeedleConfigById(current.getConfigId() + 1));
+	    }
+	} else {
+	    healthyChecks = 0;
+	}
+    }
+
+    private void changeNeedleConfig(final NeedleConfig previous, final NeedleConfig needleConfig) {
+	NeedleConfigFactory.setMaximumNeedleConfig(needleConfig);
+	final OverheadGovernorEvent event = new OverheadGovernorEvent(previous, needleConfig, lastOverhead, lastQueueSize);
+	LOG.info(event);
+	for (final OverheadGovernorListener listener : listeners) {
+	    try {
+		listener.needleConfigChanged(event);
+	    } catch (final RuntimeException e) {
+		LOG.warn("OverheadGovernorListener " + listener + " throws exception on " + event, e);
+	    }
+	}
+    }
+}
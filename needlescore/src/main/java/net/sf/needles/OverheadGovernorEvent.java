@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2013,
+ * Marco Brade
+ * 							[https://github.com/mbrade]
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice,
+ *       this list of conditions and the following disclaimer in the documentation
+ *       and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.sf.needles;
+
+import java.io.Serializable;
+
+/**
+ * A transition of the maximum config made by the {@link OverheadGovernor}.
+ */
+public class OverheadGovernorEvent implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+    private final NeedleConfig previousNeedleConfig;
+    private final NeedleConfig needleConfig;
+    private final double overhead;
+    private final int queueSize;
+    private final long timeMillis = System.currentTimeMillis();
+
+    public OverheadGovernorEvent(final NeedleConfig previousNeedleConfig, final NeedleConfig needleConfig, final double overhead, final int queueSize) {
+	this.previousNeedleConfig = previousNeedleConfig;
+	this.needleConfig = needleConfig;
+	this.overhead = overhead;
+	this.queueSize = queueSize;
+    }
+
+    /**
+     * Gets the maximum config after the transition.
+     * 
+     * @return the needle config
+     */
+    public NeedleConfig getNeedleConfig() {
+	return needleConfig;
+    }
+
+    /**
+     * Gets the share of the available processor time spent within the needle bookkeeping which lead to the transition.
+     * 
+     * @return the overhead
+     */
+    public double getOverhead() {
+	return overhead;
+    }
+
+    /**
+     * Gets the maximum config before the transition.
+     * 
+     * @return the previous needle config
+     */
+    public NeedleConfig getPreviousNeedleConfig() {
+	return previousNeedleConfig;
+    }
+
+    public int getQueueSize() {
+	return queueSize;
+    }
+
+    public long getTimeMillis() {
+	return timeMillis;
+    }
+
+    public boolean isDowngrade() {
+	return needleConfig.getConfigId() < previousNeedleConfig.getConfigId();
+    }
+
+    @Override
+    public String toString() {
+	return String.format("Needles maximum config changed from %1$s to %2$s with an overhead of %3$.4f and a queue size of %4$d.", previousNeedleConfig, needleConfig, overhead, queueSize);
+    }
+}
@@ -30,28 +30,35 @@ package net.sf.needles.aggregation;
 
 import java.io.IOException;
 import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import net.sf.needles.NeedleId;
 import net.sf.needles.NeedleInfo;
 import net.sf.needles.aggregation.keycreator.AggregationKey;
 
 /**
- * The Class AbstractAggregation.
+ * The Class AbstractAggregation. The child aggregations are looked up within a {@link ConcurrentHashMap} without locking. Only the creation of a missing child is serialized, and the children keep
+ * the order of their creation in a list which is only appended to while its lock is held, so adding a child doesn't copy its siblings.
  */
 public abstract class AbstractAggregation<AGGREGATION extends Aggregation<AGGREGATION>> implements Aggregation<AGGREGATION> {
 
     private static final long serialVersionUID = 1L;
     private final String needleName;
     private final NeedleId needleId;
-    private final Map<AggregationKey, AGGREGATION> children = new LinkedHashMap<AggregationKey, AGGREGATION>();
+    //only holds the children while the aggregation gets serialized, which keeps the stream format of the former LinkedHashMap
+    private Map<AggregationKey, AGGREGATION> children = null;
     private AGGREGATION parent = null;
-    private transient ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private transient ConcurrentMap<AggregationKey, AGGREGATION> childMap = new ConcurrentHashMap<AggregationKey, AGGREGATION>();
+    //guarded by its own monitor, which also serializes the creation of missing children
+    private transient List<AGGREGATION> childOrder = new ArrayList<AGGREGATION>();
     private final AggregationFactory<AGGREGATION> aggregationFactory;
     private final AggregationKey aggregationkey;
 
@@ -78,6 +85,19 @@ public abstract class AbstractAggregation<AGGREGATION extends Aggregation<AGGREG
     @Override
     public abstract void aggregate(final NeedleInfo needle);
 
+    /**
+     * Aggregates the given needles, which all belong to this aggregation, at once. The default aggregates the needles one by one. Aggregations which can combine the needles of a batch before
+     * updating their shared state should override this.
+     * 
+     * @param needles
+     *            the needles
+     */
+    public void aggregateBatch(final List<NeedleInfo> needles) {
+	for (final NeedleInfo needle : needles) {
+	    aggregate(needle);
+	}
+    }
+
     /* (non-Javadoc)
      * @see java.lang.Object#equals(java.lang.Object)
      */
@@ -111,21 +131,36 @@ public abstract class AbstractAggregation<AGGREGATION extends Aggregation<AGGREG
 	return true;
     }
 
-    @SuppressWarnings("unchecked")
+    /**
+     * Follows the path of the needle info down from its root through the factory, which takes a lookup per level. If that path doesn't lead to this aggregation or one of its descendants, like
+     * the path of a needle info without its parents, the topmost needle info of the path gets looked up by its key in the factory, and the rest of the path by the keys of the children. Nothing gets
+     * searched.
+     */
     @Override
     public AGGREGATION getAggregationForNeedleInfo(final NeedleInfo needleInfo) {
-	//TODO go to the root of the needleInfo and use the root of this aggregation to go through the childs until you get this needleInfo aggregationKey
-	final AggregationKey key = generateAggregationKey(needleInfo);
-	if (aggregationkey.equals(key)) {
-	    return (AGGREGATION) this;
-	} else {
-	    AGGREGATION aggregation = children.get(key);
-	    AGGREGATION childAggregation = null;
-	    for (final Iterator<AGGREGATION> aggregationIterator = children.values().iterator(); aggregation == null && aggregationIterator.hasNext(); childAggregation = aggregationIterator.next()) {
-		aggregation = childAggregation.getAggregationForNeedleInfo(needleInfo);
-	    }
-	    return aggregation;
+	final AbstractAggregationFactory<AGGREGATION> factory = getIndexingFactory();
+	final AGGREGATION result = (factory != null) ? getDescendant(factory.findAggregation(needleInfo)) : null;
+	return (result != null) ? result : getDescendant(resolveKeyPath(needleInfo, null));
+    }
+
+    /**
+     * Gets the aggregations for the given needle infos within this aggregation and its descendants. The paths of all needle infos get resolved through the factory at once, the needle infos whose
+     * path doesn't lead to this aggregation by their keys like in {@link #getAggregationForNeedleInfo(NeedleInfo)}. Ancestors shared by the needle infos get resolved once.
+     * 
+     * @param needleInfos
+     *            the needle infos
+     * @return the aggregations in the order of the needle infos, null for needle infos without an aggregation
+     */
+    public List<AGGREGATION> getAggregationsForNeedleInfos(final List<? extends NeedleInfo> needleInfos) {
+	final AbstractAggregationFactory<AGGREGATION> factory = getIndexingFactory();
+	final List<AGGREGATION> result = new ArrayList<AGGREGATION>(needleInfos.size());
+	final Map<NeedleInfo, AGGREGATION> resolved = new IdentityHashMap<NeedleInfo, AGGREGATION>();
+	final List<AGGREGATION> found = (factory != null) ? factory.findAggregations(needleInfos) : Collections.<AGGREGATION> nCopies(needleInfos.size(), null);
+	for (int i = 0; i < needleInfos.size(); i++) {
+	    final AGGREGATION aggregation = getDescendant(found.get(i));
+	    result.add((aggregation != null) ? aggregation : getDescendant(resolveKeyPath(needleInfos.get(i), resolved)));
 	}
+	return result;
     }
 
     @Override
@@ -148,28 +183,38 @@ public abstract class AbstractAggregation<AGGREGATION extends Aggregation<AGGREG
     @Override
     public final AGGREGATION getChildAggregation(final NeedleInfo needle) {
 	final AggregationKey aggregationKey = generateAggregationKey(needle);
-	lock.readLock().lock();
-	try {
-	    AGGREGATION result = children.get(aggregationKey);
-	    if (result == null) {
-		lock.readLock().unlock();
-		lock.writeLock().lock();
-		try {
-		    result = children.get(aggregationKey);
-		    if (result == null) {
-			result = getAggregationFactory().createAggregation(needle);
-			result.setParentAggregation((AGGREGATION) this);
-			children.put(aggregationKey, result);
+	AGGREGATION result = childMap.get(aggregationKey);
+	if (result == null) {
+	    synchronized (childOrder) {
+		result = childMap.get(aggregationKey);
+		if (result == null) {
+		    final AbstractAggregationFactory<AGGREGATION> factory = getIndexingFactory();
+		    if (factory == null || factory.admitAggregation(childMap.size())) {
+			result = addChildAggregation(needle, aggregationKey);
+		    } else {
+			//the key got rejected, so the needle ends up in the other aggregation of this parent, or of the factory once the overall limit is reached
+			final NeedleInfo otherNeedle = factory.getOtherNeedle(needleId);
+			final AggregationKey otherKey = generateAggregationKey(otherNeedle);
+			result = childMap.get(otherKey);
+			if (result == null) {
+			    result = factory.admitOtherAggregation() ? addChildAggregation(otherNeedle, otherKey) : factory.getOtherRootAggregation();
+			}
 		    }
-		} finally {
-		    lock.writeLock().unlock();
-		    lock.readLock().lock();
 		}
 	    }
-	    return result;
-	} finally {
-	    lock.readLock().unlock();
 	}
+	return result;
+    }
+
+    /**
+     * Gets the child aggregation of the given key without creating it.
+     * 
+     * @param aggregationKey
+     *            the aggregation key
+     * @return the child or null if there is none for the key
+     */
+    public final AGGREGATION getChildAggregation(final AggregationKey aggregationKey) {
+	return childMap.get(aggregationKey);
     }
 
     /* (non-Javadoc)
@@ -177,11 +222,8 @@ public abstract class AbstractAggregation<AGGREGATION extends Aggregation<AGGREG
      */
     @Override
     public final List<AGGREGATION> getChildAggregations() {
-	lock.readLock().lock();
-	try {
-	    return new ArrayList<AGGREGATION>(children.values());
-	} finally {
-	    lock.readLock().unlock();
+	synchronized (childOrder) {
+	    return new ArrayList<AGGREGATION>(childOrder);
 	}
     }
 
@@ -221,7 +263,7 @@ public abstract class AbstractAggregation<AGGREGATION extends Aggregation<AGGREG
      * @see net.sf.needles.aggregation.Aggregation#hasChildren()
      */
     public boolean hasChildren() {
-	return !children.isEmpty();
+	return !childMap.isEmpty();
     }
 
     /* (non-Javadoc)
@@ -255,9 +297,93 @@ public abstract class AbstractAggregation<AGGREGATION extends Aggregation<AGGREG
 	return AggregationRenderer.buildString(this);
     }
 
+    @SuppressWarnings("unchecked")
+    private AGGREGATION addChildAggregation(final NeedleInfo needle, final AggregationKey aggregationKey) {
+	final AGGREGATION result = getAggregationFactory().createAggregation(needle);
+	result.setParentAggregation((AGGREGATION) this);
+	childOrder.add(result);
+	childMap.put(aggregationKey, result);
+	return result;
+    }
+
+    /**
+     * Gets the given aggregation if it is this aggregation or one of its descendants.
+     * 
+     * @param aggregation
+     *            the aggregation
+     * @return the aggregation or null
+     */
+    private AGGREGATION getDescendant(final AGGREGATION aggregation) {
+	for (AGGREGATION ancestor = aggregation; ancestor != null; ancestor = ancestor.getParentAggregation()) {
+	    if (ancestor == this) {
+		return aggregation;
+	    }
+	}
+	return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private AbstractAggregationFactory<AGGREGATION> getIndexingFactory() {
+	return (aggregationFactory instanceof AbstractAggregationFactory) ? (AbstractAggregationFactory<AGGREGATION>) aggregationFactory : null;
+    }
+
     private void readObject(final ObjectInputStream stream) throws IOException, ClassNotFoundException {
 	stream.defaultReadObject();
-	this.lock = new ReentrantReadWriteLock();
+	childMap = new ConcurrentHashMap<AggregationKey, AGGREGATION>();
+	childOrder = new ArrayList<AGGREGATION>();
+	if (children != null) {
+	    childMap.putAll(children);
+	    childOrder.addAll(children.values());
+	    children = null;
+	}
+    }
+
+    /**
+     * Resolves the path of the needle info by keys. The topmost needle info gets looked up in the factory by its key, each needle info below in the children of the aggregation of its parent. A
+     * needle info of the same key as its parent belongs to the aggregation of the parent, like on creation.
+     * 
+     * @param needleInfo
+     *            the needle info
+     * @param resolved
+     *            the needle infos resolved before or null
+     * @return the aggregation or null if there is none for the keys of the path
+     */
+    @SuppressWarnings("unchecked")
+    private AGGREGATION resolveKeyPath(final NeedleInfo needleInfo, final Map<NeedleInfo, AGGREGATION> resolved) {
+	if (resolved != null && resolved.containsKey(needleInfo)) {
+	    return resolved.get(needleInfo);
+	}
+	final AggregationKey key = generateAggregationKey(needleInfo);
+	final NeedleInfo parent = needleInfo.getParentNeedle();
+	AGGREGATION result = null;
+	if (parent == null) {
+	    result = aggregationkey.equals(key) ? (AGGREGATION) this : aggregationFactory.getAggregation(key);
+	} else {
+	    final AGGREGATION parentAggregation = resolveKeyPath(parent, resolved);
+	    if (parentAggregation == null || key.equals(generateAggregationKey(parent))) {
+		result = parentAggregation;
+	    } else if (parentAggregation instanceof AbstractAggregation) {
+		result = ((AbstractAggregation<AGGREGATION>) parentAggregation).getChildAggregation(key);
+	    }
+	}
+	if (resolved != null) {
+	    resolved.put(needleInfo, result);
+	}
+	return result;
+    }
+
+    private void writeObject(final ObjectOutputStream stream) throws IOException {
+	synchronized (childOrder) {
+	    children = new LinkedHashMap<AggregationKey, AGGREGATION>();
+	    for (final AGGREGATION child : childOrder) {
+		children.put(child.getAggregationKey(), child);
+	    }
+	    try {
+		stream.defaultWriteObject();
+	    } finally {
+		children = null;
+	    }
+	}
     }
 
     protected AggregationKey generateAggregationKey(final NeedleInfo needle) {
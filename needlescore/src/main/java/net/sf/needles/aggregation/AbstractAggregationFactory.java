@@ -29,25 +29,60 @@
 package net.sf.needles.aggregation;
 
 import java.io.Serializable;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
+import net.sf.needles.NeedleId;
 import net.sf.needles.NeedleInfo;
+import net.sf.needles.NeedleStub;
 import net.sf.needles.aggregation.keycreator.AggregationKey;
 import net.sf.needles.aggregation.keycreator.KeyCreator;
 import net.sf.needles.aggregation.keycreator.NeedleIdKeyCreator;
+import net.sf.needles.aggregation.keycreator.StableKeyCreator;
 import net.sf.needles.persistence.PersistenceData;
+import net.sf.needles.util.ClockCache;
 
+/**
+ * The Class AbstractAggregationFactory. With a {@link StableKeyCreator} the aggregation of a needle gets cached by its {@link NeedleId}, which is calculated out of the whole path of the needle, so
+ * needles seen before don't walk the tree from their root again.
+ * <p>
+ * The amount of aggregations is limited overall and per parent, so keys like names containing ids can't grow the trees without bounds. Once a limit is reached, needles of new keys get folded into
+ * the aggregation of the {@link #OTHER_NEEDLE_NAME} next to them, and the rejected keys get counted. These aggregations count against the overall limit as well, once it is reached rejected keys of
+ * any level get folded into the single {@link #OTHER_NEEDLE_NAME} root aggregation, the only aggregation created beyond the limit.
+ */
 public abstract class AbstractAggregationFactory<AGGREGATION extends Aggregation<AGGREGATION>> implements AggregationFactory<AGGREGATION> {
 
-    private KeyCreator keyCreator;
-    private final Map<AggregationKey, AGGREGATION> rootAggregations = new HashMap<AggregationKey, AGGREGATION>();
+    /** The default maximum amount of needle ids the aggregations get cached for. */
+    public static final int DEFAULT_MAX_CACHED_AGGREGATIONS = 1 << 16;
+    /** The default maximum amount of aggregations of a factory. */
+    public static final int DEFAULT_MAX_AGGREGATIONS = 100000;
+    /** The default maximum amount of root aggregations, respectively of child aggregations of a parent. */
+    public static final int DEFAULT_MAX_CHILD_AGGREGATIONS = 10000;
+    /** The name of the aggregations needles of rejected keys get folded into. */
+    public static final String OTHER_NEEDLE_NAME = "[other]";
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final NeedleInfo OTHER_NEEDLE = new NeedleStub(new NeedleId(OTHER_NEEDLE_NAME.getBytes(UTF8)), OTHER_NEEDLE_NAME);
+
+    private volatile KeyCreator keyCreator;
+    private final Map<AggregationKey, AGGREGATION> rootAggregations = new ConcurrentHashMap<AggregationKey, AGGREGATION>();
+    //the root aggregations in the order of their creation, guarded by its own monitor, which also serializes the creation of missing ones
+    private final List<AGGREGATION> rootAggregationOrder = new ArrayList<AGGREGATION>();
     private final Map<AggregationKey, AGGREGATION> allAggregations = new ConcurrentHashMap<AggregationKey, AGGREGATION>();
-    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    //evicts the ids which haven't been looked up for the longest, so new paths still get cached once it is full
+    private final ClockCache<NeedleId, AGGREGATION> aggregationCache = new ClockCache<NeedleId, AGGREGATION>(DEFAULT_MAX_CACHED_AGGREGATIONS);
+    private final AtomicInteger aggregationCount = new AtomicInteger();
+    private final AtomicLong rejectedKeys = new AtomicLong();
+    private volatile int maxAggregations = DEFAULT_MAX_AGGREGATIONS;
+    private volatile int maxChildAggregations = DEFAULT_MAX_CHILD_AGGREGATIONS;
     private String name;
 
     public AbstractAggregationFactory() {
@@ -63,6 +98,7 @@ public abstract class AbstractAggregationFactory<AGGREGATION extends Aggregation
     public final AGGREGATION createAggregation(final NeedleInfo needle) {
 	final AGGREGATION result = doCreateAggregation(needle);
 	allAggregations.put(result.getAggregationKey(), result);
+	aggregationCount.incrementAndGet();
 	return result;
     }
 
@@ -98,12 +134,48 @@ public abstract class AbstractAggregationFactory<AGGREGATION extends Aggregation
 
     @Override
     public void fillPersistenceData(final PersistenceData persistenceData) {
-	lock.readLock().lock();
-	try {
-	    persistenceData.setAggregationData(new HashMap<Serializable, AGGREGATION>(rootAggregations));
-	} finally {
-	    lock.readLock().unlock();
+	final LinkedHashMap<Serializable, AGGREGATION> aggregationData = new LinkedHashMap<Serializable, AGGREGATION>();
+	for (final AGGREGATION rootAggregation : getRootAggregations()) {
+	    aggregationData.put(rootAggregation.getAggregationKey(), rootAggregation);
 	}
+	persistenceData.setAggregationData(aggregationData);
+    }
+
+    /**
+     * Looks the aggregation of the needle up without creating it. The aggregation gets taken out of the cache, otherwise the path of the needle gets followed down from its root aggregation with a
+     * lookup per level.
+     * 
+     * @param needle
+     *            the needle
+     * @return the aggregation or null if there is none for the path of the needle
+     */
+    public AGGREGATION findAggregation(final NeedleInfo needle) {
+	return findAggregation(needle, null);
+    }
+
+    /**
+     * Looks the aggregations of the needles up without creating them. Ancestors shared by the needles get resolved once.
+     * 
+     * @param needles
+     *            the needles
+     * @return the aggregations in the order of the needles, null for needles without an aggregation
+     */
+    public List<AGGREGATION> findAggregations(final List<? extends NeedleInfo> needles) {
+	final Map<NeedleInfo, AGGREGATION> resolved = new IdentityHashMap<NeedleInfo, AGGREGATION>();
+	final List<AGGREGATION> result = new ArrayList<AGGREGATION>(needles.size());
+	for (final NeedleInfo needle : needles) {
+	    result.add(findAggregation(needle, resolved));
+	}
+	return result;
+    }
+
+    /**
+     * Gets the amount of aggregations of this factory.
+     * 
+     * @return the aggregation count
+     */
+    public int getAggregationCount() {
+	return aggregationCount.get();
     }
 
     @Override
@@ -113,7 +185,17 @@ public abstract class AbstractAggregationFactory<AGGREGATION extends Aggregation
 
     @Override
     public AGGREGATION getAggregation(final NeedleInfo needleInfo) {
-	return getAggregation(keyCreator.getKey(needleInfo));
+	final AGGREGATION result = findAggregation(needleInfo);
+	return (result != null) ? result : getAggregation(keyCreator.getKey(needleInfo));
+    }
+
+    /**
+     * Gets the amount of needle ids the aggregations are cached for.
+     * 
+     * @return the cached aggregation count
+     */
+    public int getCachedAggregationCount() {
+	return aggregationCache.size();
     }
 
     @Override
@@ -121,34 +203,59 @@ public abstract class AbstractAggregationFactory<AGGREGATION extends Aggregation
 	return keyCreator;
     }
 
+    /**
+     * Gets the maximum amount of needle ids the aggregations get cached for.
+     * 
+     * @return the maximum amount of cached aggregations
+     */
+    public int getMaxCachedAggregations() {
+	return aggregationCache.getMaximumSize();
+    }
+
+    public int getMaxAggregations() {
+	return maxAggregations;
+    }
+
+    public int getMaxChildAggregations() {
+	return maxChildAggregations;
+    }
+
     public final String getName() {
 	return name;
     }
 
+    /**
+     * Gets the aggregation of the needle out of the cache if the key creator is a {@link StableKeyCreator} and the needle has an id. Otherwise the aggregation of the parent needle gets resolved
+     * first, down from the root.
+     */
     @Override
     public AGGREGATION getOrCreateAggregation(final NeedleInfo needle) {
-	final NeedleInfo parent = needle.getParentNeedle();
-	AGGREGATION result;
-	if (parent != null) {
-	    final AGGREGATION parentAggregation = getOrCreateAggregation(parent);
-	    if (getKeyCreator().getKey(needle).equals(getKeyCreator().getKey(parent))) {
-		result = parentAggregation;
-	    } else {
-		result = parentAggregation.getChildAggregation(needle);
-	    }
-	} else {
-	    result = createRootAggregation(needle);
+	final NeedleId needleId = (keyCreator instanceof StableKeyCreator) ? needle.getId() : null;
+	if (needleId == null) {
+	    return resolveAggregation(needle);
+	}
+	AGGREGATION result = aggregationCache.get(needleId);
+	if (result == null) {
+	    result = resolveAggregation(needle);
+	    aggregationCache.putIfAbsent(needleId, result);
 	}
 	return result;
     }
 
+    /**
+     * Gets how often the aggregation for a new key got rejected because of a limit, and the needle got folded into an {@link #OTHER_NEEDLE_NAME} aggregation instead. Needles found in the cache by
+     * their id aren't counted again.
+     * 
+     * @return the rejected key count
+     */
+    public long getRejectedKeyCount() {
+	return rejectedKeys.get();
+    }
+
     @Override
     public List<AGGREGATION> getRootAggregations() {
-	lock.readLock().lock();
-	try {
-	    return new ArrayList<AGGREGATION>(rootAggregations.values());
-	} finally {
-	    lock.readLock().unlock();
+	synchronized (rootAggregationOrder) {
+	    return new ArrayList<AGGREGATION>(rootAggregationOrder);
 	}
     }
 
@@ -167,20 +274,71 @@ public abstract class AbstractAggregationFactory<AGGREGATION extends Aggregation
     @SuppressWarnings("unchecked")
     @Override
     public void loadPersistenceData(final PersistenceData value) {
-	lock.writeLock().lock();
-	try {
-	    this.rootAggregations.putAll((HashMap<AggregationKey, AGGREGATION>) value.getAggregationData());
-	} finally {
-	    lock.writeLock().unlock();
+	synchronized (rootAggregationOrder) {
+	    for (final Map.Entry<AggregationKey, AGGREGATION> entry : ((HashMap<AggregationKey, AGGREGATION>) value.getAggregationData()).entrySet()) {
+		final AGGREGATION replaced = rootAggregations.put(entry.getKey(), entry.getValue());
+		if (replaced == null) {
+		    rootAggregationOrder.add(entry.getValue());
+		} else {
+		    rootAggregationOrder.set(rootAggregationOrder.indexOf(replaced), entry.getValue());
+		}
+	    }
+	}
+	//cached aggregations may belong to roots replaced by the loaded ones
+	aggregationCache.clear();
+	int count = 0;
+	for (final AGGREGATION rootAggregation : getRootAggregations()) {
+	    count += countAggregations(rootAggregation);
 	}
+	aggregationCount.set(count);
     }
 
     public void setAggregationName(final String name) {
 	this.name = name;
     }
 
+    /**
+     * Sets the maximum amount of aggregations of this factory.
+     * 
+     * @param maxAggregations
+     *            the maximum amount of aggregations
+     */
+    public void setMaxAggregations(final int maxAggregations) {
+	if (maxAggregations < 1) {
+	    throw new IllegalArgumentException("The maximum amount of aggregations has to be at least 1 but was: " + maxAggregations);
+	}
+	this.maxAggregations = maxAggregations;
+    }
+
+    /**
+     * Sets the maximum amount of root aggregations, respectively of child aggregations of a parent.
+     * 
+     * @param maxChildAggregations
+     *            the maximum amount of child aggregations
+     */
+    public void setMaxChildAggregations(final int maxChildAggregations) {
+	if (maxChildAggregations < 1) {
+	    throw new IllegalArgumentException("The maximum amount of child aggregations has to be at least 1 but was: " + maxChildAggregations);
+	}
+	this.maxChildAggregations = maxChildAggregations;
+    }
+
+    /**
+     * Sets the maximum amount of needle ids the aggregations get cached for. Once the cache is full, caching another id evicts one which hasn't been looked up recently.
+     * 
+     * @param maxCachedAggregations
+     *            the maximum amount of cached aggregations
+     */
+    public void setMaxCachedAggregations(final int maxCachedAggregations) {
+	if (maxCachedAggregations < 1) {
+	    throw new IllegalArgumentException("The maximum amount of cached aggregations has to be at least 1 but was: " + maxCachedAggregations);
+	}
+	aggregationCache.setMaximumSize(maxCachedAggregations);
+    }
+
     public void setKeyCreator(final KeyCreator keyCreator) {
 	this.keyCreator = keyCreator;
+	aggregationCache.clear();
     }
 
     @Override
@@ -193,28 +351,143 @@ public abstract class AbstractAggregationFactory<AGGREGATION extends Aggregation
 	return builder.toString();
     }
 
+    private AGGREGATION addRootAggregation(final NeedleInfo needle, final AggregationKey needleKey) {
+	final AGGREGATION result = createAggregation(needle);
+	rootAggregationOrder.add(result);
+	rootAggregations.put(needleKey, result);
+	return result;
+    }
+
+    private int countAggregations(final AGGREGATION aggregation) {
+	int result = 1;
+	for (final AGGREGATION child : aggregation.getChildAggregations()) {
+	    result += countAggregations(child);
+	}
+	return result;
+    }
+
     private AGGREGATION createRootAggregation(final NeedleInfo needle) {
-	AGGREGATION result = null;
-	lock.readLock().lock();
-	try {
+	final AggregationKey needleKey = getKeyCreator().getKey(needle);
+	AGGREGATION result = rootAggregations.get(needleKey);
+	if (result == null) {
+	    synchronized (rootAggregationOrder) {
+		result = rootAggregations.get(needleKey);
+		if (result == null) {
+		    result = admitAggregation(rootAggregations.size()) ? addRootAggregation(needle, needleKey) : getOtherRootAggregation();
+		}
+	    }
+	}
+	return result;
+    }
+
+    private AGGREGATION findAggregation(final NeedleInfo needle, final Map<NeedleInfo, AGGREGATION> resolved) {
+	if (resolved != null && resolved.containsKey(needle)) {
+	    return resolved.get(needle);
+	}
+	final NeedleId needleId = (keyCreator instanceof StableKeyCreator) ? needle.getId() : null;
+	AGGREGATION result = (needleId != null) ? aggregationCache.get(needleId) : null;
+	if (result == null) {
+	    final NeedleInfo parent = needle.getParentNeedle();
 	    final AggregationKey needleKey = getKeyCreator().getKey(needle);
-	    result = rootAggregations.get(needleKey);
-	    if (result == null) {
-		lock.readLock().unlock();
-		lock.writeLock().lock();
-		try {
-		    result = rootAggregations.get(needleKey);
-		    if (result == null) {
-			result = createAggregation(needle);
-			rootAggregations.put(needleKey, result);
-		    }
-		} finally {
-		    lock.writeLock().unlock();
-		    lock.readLock().lock();
+	    if (parent == null) {
+		result = rootAggregations.get(needleKey);
+	    } else {
+		final AGGREGATION parentAggregation = findAggregation(parent, resolved);
+		if (parentAggregation != null) {
+		    result = needleKey.equals(getKeyCreator().getKey(parent)) ? parentAggregation : findChildAggregation(parentAggregation, needleKey);
+		}
+	    }
+	}
+	if (resolved != null) {
+	    resolved.put(needle, result);
+	}
+	return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private AGGREGATION findChildAggregation(final AGGREGATION parentAggregation, final AggregationKey key) {
+	if (parentAggregation instanceof AbstractAggregation) {
+	    return ((AbstractAggregation<AGGREGATION>) parentAggregation).getChildAggregation(key);
+	}
+	//other aggregations only look their children up by needle, which may create the child
+	for (final AGGREGATION child : parentAggregation.getChildAggregations()) {
+	    if (key.equals(child.getAggregationKey())) {
+		return child;
+	    }
+	}
+	return null;
+    }
+
+    private AGGREGATION resolveAggregation(final NeedleInfo needle) {
+	final NeedleInfo parent = needle.getParentNeedle();
+	AGGREGATION result;
+	if (parent != null) {
+	    final AGGREGATION parentAggregation = getOrCreateAggregation(parent);
+	    if (getKeyCreator().getKey(needle).equals(getKeyCreator().getKey(parent))) {
+		result = parentAggregation;
+	    } else {
+		result = parentAggregation.getChildAggregation(needle);
+	    }
+	} else {
+	    result = createRootAggregation(needle);
+	}
+	return result;
+    }
+
+    /**
+     * Checks whether another aggregation may be created next to the given amount of siblings, and counts the key as rejected otherwise.
+     * 
+     * @param siblingCount
+     *            the amount of root aggregations, respectively of child aggregations of the parent
+     * @return true, if the aggregation may be created
+     */
+    boolean admitAggregation(final int siblingCount) {
+	if (siblingCount < maxChildAggregations && aggregationCount.get() < maxAggregations) {
+	    return true;
+	}
+	rejectedKeys.incrementAndGet();
+	return false;
+    }
+
+    /**
+     * Checks whether the aggregation for rejected keys of a parent may be created, which counts against the overall limit but not against the limit per parent.
+     * 
+     * @return true, if the aggregation may be created
+     */
+    boolean admitOtherAggregation() {
+	return aggregationCount.get() < maxAggregations;
+    }
+
+    /**
+     * Gets the needle the aggregation for rejected keys below the given parent gets created from. Its id is derived from the id of the parent, so the aggregations of different parents don't share
+     * their key.
+     * 
+     * @param parentId
+     *            the needle id of the parent aggregation
+     * @return the other needle
+     */
+    NeedleInfo getOtherNeedle(final NeedleId parentId) {
+	if (parentId == null) {
+	    return OTHER_NEEDLE;
+	}
+	return new NeedleStub(new NeedleId((parentId.toString() + OTHER_NEEDLE_NAME).getBytes(UTF8)), OTHER_NEEDLE_NAME);
+    }
+
+    /**
+     * Gets the root aggregation for rejected keys, creating it if necessary even beyond the overall limit.
+     * 
+     * @return the other root aggregation
+     */
+    AGGREGATION getOtherRootAggregation() {
+	final AggregationKey otherKey = getKeyCreator().getKey(OTHER_NEEDLE);
+	AGGREGATION result = rootAggregations.get(otherKey);
+	if (result == null) {
+	    synchronized (rootAggregationOrder) {
+		result = rootAggregations.get(otherKey);
+		if (result == null) {
+		    result = addRootAggregation(OTHER_NEEDLE, otherKey);
 		}
 	    }
-	} finally {
-	    lock.readLock().unlock();
 	}
 	return result;
     }
@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2013,
+ * Marco Brade
+ * 							[https://github.com/mbrade]
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice,
+ *       this list of conditions and the following disclaimer in the documentation
+ *       and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.sf.needles.aggregation;
+
+import net.sf.needles.NeedleInfo;
+
+/**
+ * Folds the durations of the needles into count, total and extremes, weighted by {@link NeedleInfo#getSampleWeight()}.
+ */
+abstract class DurationPreAggregation implements PreAggregation {
+
+    private long count = 0;
+    private long total = 0;
+    private long minimum = Long.MAX_VALUE;
+    private long maximum = 0;
+
+    @Override
+    public void add(final NeedleInfo needle) {
+	final long duration = needle.getDurationNanos();
+	final long weight = needle.getSampleWeight();
+	count += weight;
+	total += weight * duration;
+	minimum = Math.min(minimum, duration);
+	maximum = Math.max(maximum, duration);
+    }
+
+    @Override
+    public void merge() {
+	if (count > 0) {
+	    merge(count, total, minimum, maximum);
+	}
+	count = 0;
+	total = 0;
+	minimum = Long.MAX_VALUE;
+	maximum = 0;
+    }
+
+    /**
+     * Adds the folded durations to the shared aggregation.
+     * 
+     * @param count
+     *            the weighted amount of durations
+     * @param total
+     *            the weighted sum of the durations
+     * @param minimum
+     *            the shortest duration
+     * @param maximum
+     *            the longest duration
+     */
+    abstract void merge(long count, long total, long minimum, long maximum);
+}
@@ -28,19 +28,30 @@
 
 package net.sf.needles.aggregation;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
+import java.util.List;
+
 import net.sf.needles.NeedleInfo;
+import net.sf.needles.util.DurationAccumulator;
 
 /**
- * The Class ExecutionAggregation.
+ * The Class ExecutionAggregation. The durations are kept within a {@link DurationAccumulator}, so concurrent aggregation neither loses updates nor contends on a lock. The average gets calculated on
+ * read.
  */
-public class ExecutionAggregationImpl extends AbstractAggregation<ExecutionAggregation> implements ExecutionAggregation {
+public class ExecutionAggregationImpl extends AbstractAggregation<ExecutionAggregation> implements ExecutionAggregation, PreAggregatable {
 
     private static final long serialVersionUID = 1L;
-    private volatile long amount = 0;
-    private volatile double totalmillis = 0.0;
-    private volatile double maximum = 0.0;
-    private volatile double minimum = Double.MAX_VALUE;
-    private volatile double average = 0.0;
+    //keeps the stream format of the former volatile fields, so persisted aggregations stay readable
+    private static final ObjectStreamField[] serialPersistentFields = {
+	                                                              new ObjectStreamField("amount", Long.TYPE),
+	                                                              new ObjectStreamField("totalmillis", Double.TYPE),
+	                                                              new ObjectStreamField("maximum", Double.TYPE),
+	                                                              new ObjectStreamField("minimum", Double.TYPE),
+	                                                              new ObjectStreamField("average", Double.TYPE) };
+    private transient DurationAccumulator durations = new DurationAccumulator();
 
     /**
      * Instantiates a new execution aggregation.
@@ -54,15 +65,34 @@ public class ExecutionAggregationImpl extends AbstractAggregation<ExecutionAggre
 	super(factory, needleInfo);
     }
 
+    /**
+     * Aggregates the given needle. Sampled needles count as often as given by {@link NeedleInfo#getSampleWeight()}, so the measurements and the total stay accurate while sampling.
+     */
     @Override
     public void aggregate(final NeedleInfo needle) {
-	final double temp = ++amount;
-	synchronized (this) {
-	    average = (needle.getDurationNanos() * (1.0 / temp)) + (average * ((temp - 1.0) / temp));
-	}
-	maximum = Math.max(needle.getDurationNanos(), maximum);
-	minimum = Math.min(needle.getDurationNanos(), minimum);
-	totalmillis += needle.getDurationNanos() / 1000000.0;
+	durations.record(needle.getDurationNanos(), needle.getSampleWeight());
+    }
+
+    /**
+     * Adds up the needles first and updates the shared counters once for the batch.
+     */
+    @Override
+    public void aggregateBatch(final List<NeedleInfo> needles) {
+	durations.recordAll(needles);
+    }
+
+    /**
+     * Creates a pre-aggregation which folds the durations into count, total and extremes, and adds them to the shared counters on merge.
+     */
+    @Override
+    public PreAggregation createPreAggregation() {
+	return new DurationPreAggregation() {
+
+	    @Override
+	    void merge(final long count, final long total, final long minimum, final long maximum) {
+		durations.add(count, total, minimum, maximum);
+	    }
+	};
     }
 
     /* (non-Javadoc)
@@ -89,7 +119,7 @@ public class ExecutionAggregationImpl extends AbstractAggregation<ExecutionAggre
      */
     @Override
     public double getAverage() {
-	return average / 1000000.0;
+	return durations.getAverage() / 1000000.0;
     }
 
     /* (non-Javadoc)
@@ -97,7 +127,7 @@ public class ExecutionAggregationImpl extends AbstractAggregation<ExecutionAggre
      */
     @Override
     public double getMaximum() {
-	return maximum / 1000000.0;
+	return durations.getMaximum() / 1000000.0;
     }
 
     /* (non-Javadoc)
@@ -105,7 +135,7 @@ public class ExecutionAggregationImpl extends AbstractAggregation<ExecutionAggre
      */
     @Override
     public long getMeasurements() {
-	return amount;
+	return durations.getCount();
     }
 
     /* (non-Javadoc)
@@ -113,7 +143,8 @@ public class ExecutionAggregationImpl extends AbstractAggregation<ExecutionAggre
      */
     @Override
     public double getMinimum() {
-	return minimum / 1000000.0;
+	final long result = durations.getMinimum();
+	return ((result != Long.MAX_VALUE) ? result : Double.MAX_VALUE) / 1000000.0;
     }
 
     /* (non-Javadoc)
@@ -121,7 +152,26 @@ public class ExecutionAggregationImpl extends AbstractAggregation<ExecutionAggre
      */
     @Override
     public double getTotal() {
-	return totalmillis;
+	return durations.getTotal() / 1000000.0;
+    }
+
+    private void readObject(final ObjectInputStream in) throws IOException, ClassNotFoundException {
+	final ObjectInputStream.GetField fields = in.readFields();
+	final double readMinimum = fields.get("minimum", Double.MAX_VALUE);
+	durations = new DurationAccumulator();
+	durations.add(fields.get("amount", 0L), Math.round(fields.get("totalmillis", 0.0) * 1000000.0), (readMinimum < Long.MAX_VALUE) ? (long) readMinimum : Long.MAX_VALUE,
+	              (long) fields.get("maximum", 0.0));
+    }
+
+    private void writeObject(final ObjectOutputStream out) throws IOException {
+	final ObjectOutputStream.PutField fields = out.putFields();
+	final long min = durations.getMinimum();
+	fields.put("amount", durations.getCount());
+	fields.put("totalmillis", durations.getTotal() / 1000000.0);
+	fields.put("maximum", (double) durations.getMaximum());
+	fields.put("minimum", (min != Long.MAX_VALUE) ? (double) min : Double.MAX_VALUE);
+	fields.put("average", durations.getAverage());
+	out.writeFields();
     }
 
 }
@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2013,
+ * Marco Brade
+ * 							[https://github.com/mbrade]
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice,
+ *       this list of conditions and the following disclaimer in the documentation
+ *       and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.sf.needles.aggregation;
+
+import net.sf.needles.NeedleInfo;
+
+/**
+ * Collects the durations and weights of the needles, and records them into the histogram of the shared aggregation as one batch. A full buffer gets merged right away, so it never grows beyond its
+ * capacity.
+ */
+abstract class HistogramPreAggregation implements PreAggregation {
+
+    static final int CAPACITY = 256;
+
+    private final long[] durations = new long[CAPACITY];
+    private final long[] weights = new long[CAPACITY];
+    private int size = 0;
+
+    @Override
+    public void add(final NeedleInfo needle) {
+	durations[size] = needle.getDurationNanos();
+	weights[size++] = needle.getSampleWeight();
+	if (size == CAPACITY) {
+	    merge();
+	}
+    }
+
+    @Override
+    public void merge() {
+	if (size > 0) {
+	    record(durations, weights, size);
+	}
+	size = 0;
+    }
+
+    /**
+     * Records the collected durations into the histogram of the shared aggregation.
+     * 
+     * @param durations
+     *            the durations
+     * @param weights
+     *            the weights of the durations
+     * @param length
+     *            the amount of collected durations
+     */
+    abstract void record(long[] durations, long[] weights, int length);
+}
@@ -28,8 +28,6 @@
 
 package net.sf.needles.aggregation;
 
-import java.util.concurrent.atomic.AtomicReference;
-
 import net.sf.needles.NeedleId;
 import net.sf.needles.NeedleInfo;
 import net.sf.needles.NeedleStub;
@@ -38,7 +36,7 @@ import net.sf.needles.aggregation.keycreator.SingletonKeyCreator;
 public class HotspotAggregationFactory extends AbstractAggregationFactory<HotspotAggregation> {
 
     private final int maxHotSpots;
-    private final static AtomicReference<HotspotAggregationImpl> aggregation = new AtomicReference<HotspotAggregationImpl>();
+    private final HotspotAggregationImpl aggregation;
 
     public HotspotAggregationFactory() {
 	this(20, HotspotAggregationImpl.NAME);
@@ -53,7 +51,7 @@ public class HotspotAggregationFactory extends AbstractAggregationFactory<Hotspo
 	this.maxHotSpots = maxHotspots;
 	//Create an dummy Needle
 	final NeedleStub stub = new NeedleStub(NeedleId.EMPTY_LOG_ID, getName());
-	aggregation.compareAndSet(null, new HotspotAggregationImpl(this, stub, getMaxHotspots()));
+	this.aggregation = new HotspotAggregationImpl(this, stub, getMaxHotspots());
     }
 
     public HotspotAggregationFactory(final String aggregationName) {
@@ -62,7 +60,7 @@ public class HotspotAggregationFactory extends AbstractAggregationFactory<Hotspo
 
     @Override
     public HotspotAggregation doCreateAggregation(final NeedleInfo needle) {
-	return aggregation.get();
+	return aggregation;
     }
 
     public int getMaxHotspots() {
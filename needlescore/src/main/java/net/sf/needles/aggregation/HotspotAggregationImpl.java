@@ -28,30 +28,62 @@
 
 package net.sf.needles.aggregation;
 
-import java.util.ArrayList;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
+import java.lang.ref.WeakReference;
 import java.util.List;
 import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import net.sf.needles.NeedleInfo;
+import net.sf.needles.util.BoundedTopK;
 import net.sf.needles.util.NeedleDurationComparator;
 
+/**
+ * Keeps the longest needles of all threads. Every aggregating thread offers its needles to a buffer of its own, which gets merged into the shared hotspots once it admitted as many needles as
+ * hotspots are kept and whenever the hotspots are read. Needles not exceeding the shortest shared hotspot are rejected before touching any buffer. The hotspots get persisted as the sorted set of
+ * needles used before, so persisted aggregations stay readable.
+ */
 public class HotspotAggregationImpl extends AbstractAggregation<HotspotAggregation> implements HotspotAggregation {
 
     private static final long serialVersionUID = 1L;
     public final static String NAME = "Hotspot";
-    private final ConcurrentSkipListSet<NeedleInfo> hotspots = new ConcurrentSkipListSet<NeedleInfo>(NeedleDurationComparator.INSTANCE);
-    private final int maxHotspots;
+    private static final ObjectStreamField[] serialPersistentFields = {
+	                                                              new ObjectStreamField("hotspots", ConcurrentSkipListSet.class),
+	                                                              new ObjectStreamField("maxHotspots", Integer.TYPE) };
+    private transient BoundedTopK hotspots;
+    private transient ThreadLocal<ThreadBuffer> threadBuffer;
+    private transient CopyOnWriteArrayList<ThreadBuffer> threadBuffers;
 
     public HotspotAggregationImpl(final AggregationFactory<HotspotAggregation> factory, final NeedleInfo needle, final int maxHotspots) {
 	super(factory, needle);
-	this.maxHotspots = maxHotspots;
+	this.hotspots = new BoundedTopK(maxHotspots);
+	initThreadBuffers();
     }
 
     @Override
     public void aggregate(final NeedleInfo needle) {
-	hotspots.add(needle);
-	if (hotspots.size() > maxHotspots) {
-	    hotspots.pollLast();
+	if (needle.getDurationNanos() <= hotspots.getThreshold()) {
+	    return;
+	}
+	final ThreadBuffer buffer = threadBuffer.get();
+	if (buffer.needles.offer(needle) && ++buffer.admitted >= hotspots.getCapacity()) {
+	    buffer.admitted = 0;
+	    buffer.needles.drainTo(hotspots);
+	}
+    }
+
+    /**
+     * Merges the buffers of all threads into the shared hotspots. Buffers of terminated threads are released afterwards.
+     */
+    public void flush() {
+	for (final ThreadBuffer buffer : threadBuffers) {
+	    buffer.needles.drainTo(hotspots);
+	    if (buffer.owner.get() == null) {
+		threadBuffers.remove(buffer);
+	    }
 	}
     }
 
@@ -65,7 +97,53 @@ public class HotspotAggregationImpl extends AbstractAggregation<HotspotAggregati
      */
     @Override
     public List<NeedleInfo> getHotspots() {
-	return new ArrayList<NeedleInfo>(hotspots);
+	flush();
+	return hotspots.getNeedles();
+    }
+
+    private void initThreadBuffers() {
+	threadBuffers = new CopyOnWriteArrayList<ThreadBuffer>();
+	threadBuffer = new ThreadLocal<ThreadBuffer>() {
+	    @Override
+	    protected ThreadBuffer initialValue() {
+		final ThreadBuffer result = new ThreadBuffer(hotspots.getCapacity());
+		threadBuffers.add(result);
+		return result;
+	    }
+	};
     }
 
+    @SuppressWarnings("unchecked")
+    private void readObject(final ObjectInputStream in) throws IOException, ClassNotFoundException {
+	final ObjectInputStream.GetField fields = in.readFields();
+	hotspots = new BoundedTopK(fields.get("maxHotspots", 0));
+	final ConcurrentSkipListSet<NeedleInfo> needles = (ConcurrentSkipListSet<NeedleInfo>) fields.get("hotspots", null);
+	if (needles != null) {
+	    for (final NeedleInfo needle : needles) {
+		hotspots.offer(needle);
+	    }
+	}
+	initThreadBuffers();
+    }
+
+    private void writeObject(final ObjectOutputStream out) throws IOException {
+	flush();
+	final ConcurrentSkipListSet<NeedleInfo> needles = new ConcurrentSkipListSet<NeedleInfo>(NeedleDurationComparator.INSTANCE);
+	needles.addAll(hotspots.getNeedles());
+	final ObjectOutputStream.PutField fields = out.putFields();
+	fields.put("hotspots", needles);
+	fields.put("maxHotspots", hotspots.getCapacity());
+	out.writeFields();
+    }
+
+    private static final class ThreadBuffer {
+
+	private final BoundedTopK needles;
+	private final WeakReference<Thread> owner = new WeakReference<Thread>(Thread.currentThread());
+	private int admitted;
+
+	private ThreadBuffer(final int capacity) {
+	    this.needles = new BoundedTopK(capacity);
+	}
+    }
 }
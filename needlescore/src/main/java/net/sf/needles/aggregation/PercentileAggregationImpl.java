@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2013,
+ * Marco Brade
+ * 							[https://github.com/mbrade]
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice,
+ *       this list of conditions and the following disclaimer in the documentation
+ *       and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.sf.needles.aggregation;
+
+import java.util.List;
+
+import net.sf.needles.NeedleInfo;
+import net.sf.needles.util.LogLinearHistogram;
+
+/**
+ * Records the durations of the needles into a {@link LogLinearHistogram} to answer percentile queries.
+ */
+public class PercentileAggregationImpl extends AbstractAggregation<PercentileAggregation> implements PercentileAggregation, PreAggregatable {
+
+    private static final long serialVersionUID = 1L;
+    private final LogLinearHistogram histogram;
+
+    /**
+     * Instantiates a new percentile aggregation.
+     * 
+     * @param factory
+     *            the factory
+     * @param needleInfo
+     *            the needle info
+     * @param maxDurationNanos
+     *            the highest duration tracked with the given precision
+     * @param significantDigits
+     *            the significant digits of the durations
+     */
+    public PercentileAggregationImpl(final AggregationFactory<PercentileAggregation> factory, final NeedleInfo needleInfo, final long maxDurationNanos, final int significantDigits) {
+	super(factory, needleInfo);
+	this.histogram = new LogLinearHistogram(maxDurationNanos, significantDigits);
+    }
+
+    /**
+     * Aggregates the given needle. Sampled needles count as often as given by {@link NeedleInfo#getSampleWeight()}.
+     */
+    @Override
+    public void aggregate(final NeedleInfo needle) {
+	histogram.record(needle.getDurationNanos(), needle.getSampleWeight());
+    }
+
+    /**
+     * Records the needles of the batch at once, so the total count and the extremes of the histogram get updated once for the batch.
+     */
+    @Override
+    public void aggregateBatch(final List<NeedleInfo> needles) {
+	histogram.recordAll(needles);
+    }
+
+    /**
+     * Creates a pre-aggregation which collects the durations and records them into the histogram as one batch on merge.
+     */
+    @Override
+    public PreAggregation createPreAggregation() {
+	return new HistogramPreAggregation() {
+
+	    @Override
+	    void record(final long[] durations, final long[] weights, final int length) {
+		histogram.recordAll(durations, weights, length);
+	    }
+	};
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.needles.aggregation.Aggregation#getAggregationName()
+     */
+    @Override
+    public String getAggregationName() {
+	return AGGREGATION_NAME;
+    }
+
+    @Override
+    public String getAggregationString() {
+	final StringBuilder result = new StringBuilder();
+	result.append("P50: ").append(getPercentile(50.0)).append(" ms");
+	result.append(" ").append("P90: ").append(getPercentile(90.0)).append(" ms");
+	result.append(" ").append("P99: ").append(getPercentile(99.0)).append(" ms");
+	result.append(" ").append("P99.9: ").append(getPercentile(99.9)).append(" ms");
+	result.append(" ").append("Max: ").append(getMaximum()).append(" ms");
+	result.append(" ").append("Count: ").append(getMeasurements());
+	return result.toString();
+    }
+
+    /**
+     * Gets the histogram of the durations in nanoseconds.
+     * 
+     * @return the histogram
+     */
+    public LogLinearHistogram getHistogram() {
+	return histogram;
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.needles.aggregation.PercentileAggregation#getMaximum()
+     */
+    @Override
+    public double getMaximum() {
+	return histogram.getMaximum() / 1000000.0;
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.needles.aggregation.PercentileAggregation#getMeasurements()
+     */
+    @Override
+    public long getMeasurements() {
+	return histogram.getTotalCount();
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.needles.aggregation.PercentileAggregation#getPercentile(double)
+     */
+    @Override
+    public double getPercentile(final double percentile) {
+	return histogram.getValueAtPercentile(percentile) / 1000000.0;
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.needles.aggregation.PercentileAggregation#merge(net.sf.needles.aggregation.PercentileAggregation)
+     */
+    @Override
+    public void merge(final PercentileAggregation aggregation) {
+	if (!(aggregation instanceof PercentileAggregationImpl)) {
+	    throw new IllegalArgumentException("Only PercentileAggregationImpl can be merged but got: " + ((aggregation != null) ? aggregation.getClass().getName() : "null"));
+	}
+	histogram.add(((PercentileAggregationImpl) aggregation).histogram);
+    }
+
+}
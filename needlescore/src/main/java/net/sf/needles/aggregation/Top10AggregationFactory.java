@@ -34,6 +34,11 @@ import net.sf.needles.aggregation.keycreator.NeedleNameKeyCreator;
 
 public class Top10AggregationFactory extends AbstractAggregationFactory<Top10Aggregation> {
 
+    /** The default amount of longest needles kept per aggregation. */
+    public static final int DEFAULT_COUNT = 10;
+
+    private final int count;
+
     public Top10AggregationFactory() {
 	this(NeedleNameKeyCreator.INSTANCE, Top10AggregationImpl.NAME);
     }
@@ -43,7 +48,25 @@ public class Top10AggregationFactory extends AbstractAggregationFactory<Top10Agg
     }
 
     public Top10AggregationFactory(final KeyCreator keyCreator, final String aggregationName) {
+	this(keyCreator, aggregationName, DEFAULT_COUNT);
+    }
+
+    /**
+     * Instantiates a new top aggregation factory.
+     * 
+     * @param keyCreator
+     *            the key creator
+     * @param aggregationName
+     *            the aggregation name
+     * @param count
+     *            the amount of longest needles kept per aggregation
+     */
+    public Top10AggregationFactory(final KeyCreator keyCreator, final String aggregationName, final int count) {
 	super(keyCreator, aggregationName);
+	if (count < 1) {
+	    throw new IllegalArgumentException("The count has to be at least 1 but was: " + count);
+	}
+	this.count = count;
     }
 
     public Top10AggregationFactory(final String aggregationName) {
@@ -52,7 +75,11 @@ public class Top10AggregationFactory extends AbstractAggregationFactory<Top10Agg
 
     @Override
     public Top10Aggregation doCreateAggregation(final NeedleInfo needle) {
-	return new Top10AggregationImpl(this, needle);
+	return new Top10AggregationImpl(this, needle, count);
+    }
+
+    public int getCount() {
+	return count;
     }
 
     @Override
@@ -28,29 +28,51 @@
 
 package net.sf.needles.aggregation;
 
-import java.util.ArrayList;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.util.List;
 import java.util.concurrent.ConcurrentSkipListSet;
 
 import net.sf.needles.NeedleInfo;
+import net.sf.needles.util.BoundedTopK;
 import net.sf.needles.util.NeedleDurationComparator;
 
+/**
+ * The Class Top10AggregationImpl. The longest needles are kept within a {@link BoundedTopK}, which gets persisted as the sorted set of needles used before, so persisted aggregations stay readable.
+ */
 public class Top10AggregationImpl extends AbstractAggregation<Top10Aggregation> implements Top10Aggregation {
 
     private static final long serialVersionUID = 1L;
     public final static String NAME = "TOP10";
-    private final ConcurrentSkipListSet<NeedleInfo> top10 = new ConcurrentSkipListSet<NeedleInfo>(NeedleDurationComparator.INSTANCE);
+    private static final ObjectStreamField[] serialPersistentFields = {
+	                                                              new ObjectStreamField("top10", ConcurrentSkipListSet.class),
+	                                                              new ObjectStreamField("count", Integer.TYPE) };
+    private transient BoundedTopK top10;
 
     public Top10AggregationImpl(final AggregationFactory<Top10Aggregation> factory, final NeedleInfo needle) {
+	this(factory, needle, Top10AggregationFactory.DEFAULT_COUNT);
+    }
+
+    /**
+     * Instantiates a new top aggregation.
+     * 
+     * @param factory
+     *            the factory
+     * @param needle
+     *            the needle
+     * @param count
+     *            the amount of longest needles kept
+     */
+    public Top10AggregationImpl(final AggregationFactory<Top10Aggregation> factory, final NeedleInfo needle, final int count) {
 	super(factory, needle);
+	this.top10 = new BoundedTopK(count);
     }
 
     @Override
     public void aggregate(final NeedleInfo needle) {
-	top10.add(needle);
-	if (top10.size() > 10) {
-	    top10.pollLast();
-	}
+	top10.offer(needle);
     }
 
     @Override
@@ -79,13 +101,30 @@ public class Top10AggregationImpl extends AbstractAggregation<Top10Aggregation>
      */
     @Override
     public List<NeedleInfo> getTop10Needles() {
-	final List<NeedleInfo> result = new ArrayList<NeedleInfo>(10);
-	for (final NeedleInfo needle : top10) {
-	    if (result.size() < 10) {
-		result.add(needle);
+	return top10.getNeedles();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void readObject(final ObjectInputStream in) throws IOException, ClassNotFoundException {
+	final ObjectInputStream.GetField fields = in.readFields();
+	final int count = fields.get("count", 0);
+	//streams written before the count got persisted kept the 10 longest needles
+	top10 = new BoundedTopK((count > 0) ? count : Top10AggregationFactory.DEFAULT_COUNT);
+	final ConcurrentSkipListSet<NeedleInfo> needles = (ConcurrentSkipListSet<NeedleInfo>) fields.get("top10", null);
+	if (needles != null) {
+	    for (final NeedleInfo needle : needles) {
+		top10.offer(needle);
 	    }
 	}
-	return result;
+    }
+
+    private void writeObject(final ObjectOutputStream out) throws IOException {
+	final ConcurrentSkipListSet<NeedleInfo> needles = new ConcurrentSkipListSet<NeedleInfo>(NeedleDurationComparator.INSTANCE);
+	needles.addAll(top10.getNeedles());
+	final ObjectOutputStream.PutField fields = out.putFields();
+	fields.put("top10", needles);
+	fields.put("count", top10.getCapacity());
+	out.writeFields();
     }
 
 }
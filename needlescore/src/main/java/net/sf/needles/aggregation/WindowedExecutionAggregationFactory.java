@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2013,
+ * Marco Brade
+ * 							[https://github.com/mbrade]
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice,
+ *       this list of conditions and the following disclaimer in the documentation
+ *       and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.sf.needles.aggregation;
+
+import java.util.concurrent.TimeUnit;
+
+import net.sf.needles.NeedleInfo;
+import net.sf.needles.aggregation.keycreator.KeyCreator;
+import net.sf.needles.aggregation.keycreator.NeedleIdKeyCreator;
+
+public class WindowedExecutionAggregationFactory extends AbstractAggregationFactory<WindowedExecutionAggregation> {
+
+    /** The default amount of intervals kept per aggregation. */
+    public static final int DEFAULT_BUCKET_COUNT = 15;
+    /** The default interval of a bucket, one minute. */
+    public static final long DEFAULT_BUCKET_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    private final int bucketCount;
+    private final long bucketIntervalMillis;
+
+    public WindowedExecutionAggregationFactory() {
+	this(NeedleIdKeyCreator.INSTANCE, WindowedExecutionAggregation.AGGREGATION_NAME);
+    }
+
+    public WindowedExecutionAggregationFactory(final KeyCreator keyCreator) {
+	this(keyCreator, WindowedExecutionAggregation.AGGREGATION_NAME);
+    }
+
+    public WindowedExecutionAggregationFactory(final KeyCreator keyCreator, final String aggregationName) {
+	this(keyCreator, aggregationName, DEFAULT_BUCKET_COUNT, DEFAULT_BUCKET_INTERVAL_MILLIS);
+    }
+
+    /**
+     * Instantiates a new windowed execution aggregation factory.
+     * 
+     * @param keyCreator
+     *            the key creator
+     * @param aggregationName
+     *            the aggregation name
+     * @param bucketCount
+     *            the amount of intervals kept per aggregation
+     * @param bucketIntervalMillis
+     *            the interval of a bucket in milliseconds, the longest window is the product of both
+     */
+    public WindowedExecutionAggregationFactory(final KeyCreator keyCreator, final String aggregationName, final int bucketCount, final long bucketIntervalMillis) {
+	super(keyCreator, aggregationName);
+	if (bucketCount < 1) {
+	    throw new IllegalArgumentException("The bucket count has to be at least 1 but was: " + bucketCount);
+	}
+	if (bucketIntervalMillis < 1) {
+	    throw new IllegalArgumentException("The bucket interval has to be at least 1 ms but was: " + bucketIntervalMillis);
+	}
+	this.bucketCount = bucketCount;
+	this.bucketIntervalMillis = bucketIntervalMillis;
+    }
+
+    public WindowedExecutionAggregationFactory(final String aggregationName) {
+	this(NeedleIdKeyCreator.INSTANCE, aggregationName);
+    }
+
+    @Override
+    public WindowedExecutionAggregation doCreateAggregation(final NeedleInfo needle) {
+	return new WindowedExecutionAggregationImpl(this, needle, bucketCount, bucketIntervalMillis);
+    }
+
+    public int getBucketCount() {
+	return bucketCount;
+    }
+
+    public long getBucketIntervalMillis() {
+	return bucketIntervalMillis;
+    }
+
+    @Override
+    public void start() {
+    }
+
+    @Override
+    public void shutdown() {
+    }
+
+}
@@ -0,0 +1,232 @@
+/*
+ * Copyright (c) 2013,
+ * Marco Brade
+ * 							[https://github.com/mbrade]
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice,
+ *       this list of conditions and the following disclaimer in the documentation
+ *       and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.sf.needles.aggregation;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import net.sf.needles.NeedleInfo;
+import net.sf.needles.util.DurationAccumulator;
+import net.sf.needles.util.TimeWindowRing;
+
+/**
+ * Keeps a {@link DurationAccumulator} per interval within a {@link TimeWindowRing}. Queries merge the buckets of the requested window.
+ */
+public class WindowedExecutionAggregationImpl extends AbstractAggregation<WindowedExecutionAggregation> implements WindowedExecutionAggregation, PreAggregatable {
+
+    private static final long serialVersionUID = 1L;
+    private static final long[] REPORTED_WINDOWS = { TimeUnit.MINUTES.toMillis(1), TimeUnit.MINUTES.toMillis(5), TimeUnit.MINUTES.toMillis(15) };
+    private final TimeWindowRing<DurationAccumulator> ring;
+
+    /**
+     * Instantiates a new windowed execution aggregation.
+     * 
+     * @param factory
+     *            the factory
+     * @param needleInfo
+     *            the needle info
+     * @param bucketCount
+     *            the amount of intervals kept
+     * @param intervalMillis
+     *            the interval of a bucket in milliseconds
+     */
+    public WindowedExecutionAggregationImpl(final AggregationFactory<WindowedExecutionAggregation> factory, final NeedleInfo needleInfo, final int bucketCount, final long intervalMillis) {
+	super(factory, needleInfo);
+	this.ring = new DurationRing(bucketCount, intervalMillis);
+    }
+
+    /**
+     * Aggregates the given needle into the bucket of the interval it got stopped in. Sampled needles count as often as given by {@link NeedleInfo#getSampleWeight()}. Needles of an interval already rotated
+     * out of the ring get dropped.
+     */
+    @Override
+    public void aggregate(final NeedleInfo needle) {
+	final DurationAccumulator bucket = ring.getCurrentBucket(needle.getStopTimeMillis());
+	if (bucket != null) {
+	    bucket.record(needle.getDurationNanos(), needle.getSampleWeight());
+	}
+    }
+
+    /**
+     * Adds up the needles first and updates the bucket of their interval once for every run of needles stopped in the same interval.
+     */
+    @Override
+    public void aggregateBatch(final List<NeedleInfo> needles) {
+	DurationAccumulator bucket = null;
+	int start = 0;
+	for (int i = 0; i < needles.size(); i++) {
+	    final DurationAccumulator current = ring.getCurrentBucket(needles.get(i).getStopTimeMillis());
+	    if (current != bucket) {
+		if (bucket != null) {
+		    bucket.recordAll(needles.subList(start, i));
+		}
+		bucket = current;
+		start = i;
+	    }
+	}
+	if (bucket != null) {
+	    bucket.recordAll(needles.subList(start, needles.size()));
+	}
+    }
+
+    /**
+     * Creates a pre-aggregation which folds the durations into count, total and extremes. They get added to the bucket of the interval the needles got stopped in, a needle of another interval
+     * merges the folded ones first.
+     */
+    @Override
+    public PreAggregation createPreAggregation() {
+	return new DurationPreAggregation() {
+
+	    private long intervalStart = 0;
+
+	    @Override
+	    public void add(final NeedleInfo needle) {
+		final long stopTime = needle.getStopTimeMillis();
+		final long needleIntervalStart = stopTime - (stopTime % ring.getIntervalMillis());
+		if (needleIntervalStart != intervalStart) {
+		    merge();
+		    intervalStart = needleIntervalStart;
+		}
+		super.add(needle);
+	    }
+
+	    @Override
+	    void merge(final long count, final long total, final long minimum, final long maximum) {
+		final DurationAccumulator bucket = ring.getCurrentBucket(intervalStart);
+		if (bucket != null) {
+		    bucket.add(count, total, minimum, maximum);
+		}
+	    }
+	};
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.needles.aggregation.Aggregation#getAggregationName()
+     */
+    @Override
+    public String getAggregationName() {
+	return AGGREGATION_NAME;
+    }
+
+    @Override
+    public String getAggregationString() {
+	final StringBuilder result = new StringBuilder();
+	for (final long window : REPORTED_WINDOWS) {
+	    if (window <= getWindowMillis()) {
+		final DurationAccumulator durations = getDurations(window);
+		if (result.length() > 0) {
+		    result.append(" ");
+		}
+		result.append("Last ").append(TimeUnit.MILLISECONDS.toMinutes(window)).append("m: ");
+		result.append("Avg: ").append(durations.getAverage() / 1000000.0).append(" ms");
+		result.append(" ").append("Max: ").append(durations.getMaximum() / 1000000.0).append(" ms");
+		result.append(" ").append("Count: ").append(durations.getCount());
+	    }
+	}
+	return result.toString();
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.needles.aggregation.WindowedExecutionAggregation#getAverage(long)
+     */
+    @Override
+    public double getAverage(final long windowMillis) {
+	return getDurations(windowMillis).getAverage() / 1000000.0;
+    }
+
+    /**
+     * Gets the merged durations of the given window ending now.
+     * 
+     * @param windowMillis
+     *            the window in milliseconds
+     * @return the durations in nanoseconds
+     */
+    public DurationAccumulator getDurations(final long windowMillis) {
+	final DurationAccumulator result = new DurationAccumulator();
+	for (final DurationAccumulator bucket : ring.getBuckets(windowMillis)) {
+	    result.add(bucket);
+	}
+	return result;
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.needles.aggregation.WindowedExecutionAggregation#getMaximum(long)
+     */
+    @Override
+    public double getMaximum(final long windowMillis) {
+	return getDurations(windowMillis).getMaximum() / 1000000.0;
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.needles.aggregation.WindowedExecutionAggregation#getMeasurements(long)
+     */
+    @Override
+    public long getMeasurements(final long windowMillis) {
+	return getDurations(windowMillis).getCount();
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.needles.aggregation.WindowedExecutionAggregation#getMinimum(long)
+     */
+    @Override
+    public double getMinimum(final long windowMillis) {
+	final long result = getDurations(windowMillis).getMinimum();
+	return ((result != Long.MAX_VALUE) ? result : Double.MAX_VALUE) / 1000000.0;
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.needles.aggregation.WindowedExecutionAggregation#getTotal(long)
+     */
+    @Override
+    public double getTotal(final long windowMillis) {
+	return getDurations(windowMillis).getTotal() / 1000000.0;
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.needles.aggregation.WindowedExecutionAggregation#getWindowMillis()
+     */
+    @Override
+    public long getWindowMillis() {
+	return ring.getBucketCount() * ring.getIntervalMillis();
+    }
+
+    private static final class DurationRing extends TimeWindowRing<DurationAccumulator> {
+
+	private static final long serialVersionUID = 1L;
+
+	private DurationRing(final int bucketCount, final long intervalMillis) {
+	    super(bucketCount, intervalMillis);
+	}
+
+	@Override
+	protected DurationAccumulator createBucket() {
+	    return new DurationAccumulator();
+	}
+    }
+}
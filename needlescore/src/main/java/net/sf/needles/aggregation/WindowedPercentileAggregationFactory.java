@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2013,
+ * Marco Brade
+ * 							[https://github.com/mbrade]
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice,
+ *       this list of conditions and the following disclaimer in the documentation
+ *       and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.sf.needles.aggregation;
+
+import java.util.concurrent.TimeUnit;
+
+import net.sf.needles.NeedleInfo;
+import net.sf.needles.aggregation.keycreator.KeyCreator;
+import net.sf.needles.aggregation.keycreator.NeedleIdKeyCreator;
+
+public class WindowedPercentileAggregationFactory extends AbstractAggregationFactory<WindowedPercentileAggregation> {
+
+    /** The default significant digits of the durations, lower than {@link PercentileAggregationFactory#DEFAULT_SIGNIFICANT_DIGITS} as every bucket holds a histogram. */
+    public static final int DEFAULT_SIGNIFICANT_DIGITS = 1;
+
+    private final int bucketCount;
+    private final long bucketIntervalMillis;
+    private final long maxDurationMillis;
+    private final int significantDigits;
+
+    public WindowedPercentileAggregationFactory() {
+	this(NeedleIdKeyCreator.INSTANCE, WindowedPercentileAggregation.AGGREGATION_NAME);
+    }
+
+    public WindowedPercentileAggregationFactory(final KeyCreator keyCreator) {
+	this(keyCreator, WindowedPercentileAggregation.AGGREGATION_NAME);
+    }
+
+    public WindowedPercentileAggregationFactory(final KeyCreator keyCreator, final String aggregationName) {
+	this(keyCreator, aggregationName, WindowedExecutionAggregationFactory.DEFAULT_BUCKET_COUNT, WindowedExecutionAggregationFactory.DEFAULT_BUCKET_INTERVAL_MILLIS,
+	     PercentileAggregationFactory.DEFAULT_MAX_DURATION_MILLIS, DEFAULT_SIGNIFICANT_DIGITS);
+    }
+
+    /**
+     * Instantiates a new windowed percentile aggregation factory.
+     * 
+     * @param keyCreator
+     *            the key creator
+     * @param aggregationName
+     *            the aggregation name
+     * @param bucketCount
+     *            the amount of intervals kept per aggregation
+     * @param bucketIntervalMillis
+     *            the interval of a bucket in milliseconds, the longest window is the product of both
+     * @param maxDurationMillis
+     *            the highest duration tracked with the given precision, longer durations are counted as this one
+     * @param significantDigits
+     *            the significant decimal digits of the durations from 1 to 5
+     */
+    public WindowedPercentileAggregationFactory(final KeyCreator keyCreator, final String aggregationName, final int bucketCount, final long bucketIntervalMillis,
+	                                        final long maxDurationMillis, final int significantDigits) {
+	super(keyCreator, aggregationName);
+	if (bucketCount < 1) {
+	    throw new IllegalArgumentException("The bucket count has to be at least 1 but was: " + bucketCount);
+	}
+	if (bucketIntervalMillis < 1) {
+	    throw new IllegalArgumentException("The bucket interval has to be at least 1 ms but was: " + bucketIntervalMillis);
+	}
+	if (maxDurationMillis < 1) {
+	    throw new IllegalArgumentException("The maximum duration has to be at least 1 ms but was: " + maxDurationMillis);
+	}
+	if (significantDigits < 1 || significantDigits > 5) {
+	    throw new IllegalArgumentException("The significant digits have to be between 1 and 5 but were: " + significantDigits);
+	}
+	this.bucketCount = bucketCount;
+	this.bucketIntervalMillis = bucketIntervalMillis;
+	this.maxDurationMillis = maxDurationMillis;
+	this.significantDigits = significantDigits;
+    }
+
+    public WindowedPercentileAggregationFactory(final String aggregationName) {
+	this(NeedleIdKeyCreator.INSTANCE, aggregationName);
+    }
+
+    @Override
+    public WindowedPercentileAggregation doCreateAggregation(final NeedleInfo needle) {
+	return new WindowedPercentileAggregationImpl(this, needle, bucketCount, bucketIntervalMillis, TimeUnit.MILLISECONDS.toNanos(maxDurationMillis), significantDigits);
+    }
+
+    public int getBucketCount() {
+	return bucketCount;
+    }
+
+    public long getBucketIntervalMillis() {
+	return bucketIntervalMillis;
+    }
+
+    public long getMaxDurationMillis() {
+	return maxDurationMillis;
+    }
+
+    public int getSignificantDigits() {
+	return significantDigits;
+    }
+
+    @Override
+    public void start() {
+    }
+
+    @Override
+    public void shutdown() {
+    }
+
+}
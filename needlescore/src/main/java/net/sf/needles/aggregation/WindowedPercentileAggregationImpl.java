@@ -0,0 +1,224 @@
+/*
+ * Copyright (c) 2013,
+ * Marco Brade
+ * 							[https://github.com/mbrade]
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice,
+ *       this list of conditions and the following disclaimer in the documentation
+ *       and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.sf.needles.aggregation;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import net.sf.needles.NeedleInfo;
+import net.sf.needles.util.LogLinearHistogram;
+import net.sf.needles.util.TimeWindowRing;
+
+/**
+ * Keeps a {@link LogLinearHistogram} per interval within a {@link TimeWindowRing}. Queries merge the histograms of the requested window.
+ */
+public class WindowedPercentileAggregationImpl extends AbstractAggregation<WindowedPercentileAggregation> implements WindowedPercentileAggregation, PreAggregatable {
+
+    private static final long serialVersionUID = 1L;
+    private static final long[] REPORTED_WINDOWS = { TimeUnit.MINUTES.toMillis(1), TimeUnit.MINUTES.toMillis(5), TimeUnit.MINUTES.toMillis(15) };
+    private final HistogramRing ring;
+
+    /**
+     * Instantiates a new windowed percentile aggregation.
+     * 
+     * @param factory
+     *            the factory
+     * @param needleInfo
+     *            the needle info
+     * @param bucketCount
+     *            the amount of intervals kept
+     * @param intervalMillis
+     *            the interval of a bucket in milliseconds
+     * @param maxDurationNanos
+     *            the highest duration tracked with the given precision
+     * @param significantDigits
+     *            the significant digits of the durations
+     */
+    public WindowedPercentileAggregationImpl(final AggregationFactory<WindowedPercentileAggregation> factory, final NeedleInfo needleInfo, final int bucketCount, final long intervalMillis,
+	                                     final long maxDurationNanos, final int significantDigits) {
+	super(factory, needleInfo);
+	this.ring = new HistogramRing(bucketCount, intervalMillis, maxDurationNanos, significantDigits);
+    }
+
+    /**
+     * Aggregates the given needle into the histogram of the interval it got stopped in. Sampled needles count as often as given by {@link NeedleInfo#getSampleWeight()}. Needles of an interval already rotated
+     * out of the ring get dropped.
+     */
+    @Override
+    public void aggregate(final NeedleInfo needle) {
+	final LogLinearHistogram bucket = ring.getCurrentBucket(needle.getStopTimeMillis());
+	if (bucket != null) {
+	    bucket.record(needle.getDurationNanos(), needle.getSampleWeight());
+	}
+    }
+
+    /**
+     * Records the needles of the batch at once, so the total count and the extremes of a histogram get updated once for every run of needles stopped in the same interval.
+     */
+    @Override
+    public void aggregateBatch(final List<NeedleInfo> needles) {
+	LogLinearHistogram bucket = null;
+	int start = 0;
+	for (int i = 0; i < needles.size(); i++) {
+	    final LogLinearHistogram current = ring.getCurrentBucket(needles.get(i).getStopTimeMillis());
+	    if (current != bucket) {
+		if (bucket != null) {
+		    bucket.recordAll(needles.subList(start, i));
+		}
+		bucket = current;
+		start = i;
+	    }
+	}
+	if (bucket != null) {
+	    bucket.recordAll(needles.subList(start, needles.size()));
+	}
+    }
+
+    /**
+     * Creates a pre-aggregation which collects the durations. They get recorded into the histogram of the interval the needles got stopped in, a needle of another interval records the
+     * collected ones first.
+     */
+    @Override
+    public PreAggregation createPreAggregation() {
+	return new HistogramPreAggregation() {
+
+	    private long intervalStart = 0;
+
+	    @Override
+	    public void add(final NeedleInfo needle) {
+		final long stopTime = needle.getStopTimeMillis();
+		final long needleIntervalStart = stopTime - (stopTime % ring.getIntervalMillis());
+		if (needleIntervalStart != intervalStart) {
+		    merge();
+		    intervalStart = needleIntervalStart;
+		}
+		super.add(needle);
+	    }
+
+	    @Override
+	    void record(final long[] durations, final long[] weights, final int length) {
+		final LogLinearHistogram bucket = ring.getCurrentBucket(intervalStart);
+		if (bucket != null) {
+		    bucket.recordAll(durations, weights, length);
+		}
+	    }
+	};
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.needles.aggregation.Aggregation#getAggregationName()
+     */
+    @Override
+    public String getAggregationName() {
+	return AGGREGATION_NAME;
+    }
+
+    @Override
+    public String getAggregationString() {
+	final StringBuilder result = new StringBuilder();
+	for (final long window : REPORTED_WINDOWS) {
+	    if (window <= getWindowMillis()) {
+		final LogLinearHistogram histogram = getHistogram(window);
+		if (result.length() > 0) {
+		    result.append(" ");
+		}
+		result.append("Last ").append(TimeUnit.MILLISECONDS.toMinutes(window)).append("m: ");
+		result.append("P50: ").append(histogram.getValueAtPercentile(50.0) / 1000000.0).append(" ms");
+		result.append(" ").append("P99: ").append(histogram.getValueAtPercentile(99.0) / 1000000.0).append(" ms");
+		result.append(" ").append("Count: ").append(histogram.getTotalCount());
+	    }
+	}
+	return result.toString();
+    }
+
+    /**
+     * Gets the merged histogram of the given window ending now.
+     * 
+     * @param windowMillis
+     *            the window in milliseconds
+     * @return the histogram of the durations in nanoseconds
+     */
+    public LogLinearHistogram getHistogram(final long windowMillis) {
+	final LogLinearHistogram result = ring.createBucket();
+	for (final LogLinearHistogram bucket : ring.getBuckets(windowMillis)) {
+	    result.add(bucket);
+	}
+	return result;
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.needles.aggregation.WindowedPercentileAggregation#getMaximum(long)
+     */
+    @Override
+    public double getMaximum(final long windowMillis) {
+	return getHistogram(windowMillis).getMaximum() / 1000000.0;
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.needles.aggregation.WindowedPercentileAggregation#getMeasurements(long)
+     */
+    @Override
+    public long getMeasurements(final long windowMillis) {
+	return getHistogram(windowMillis).getTotalCount();
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.needles.aggregation.WindowedPercentileAggregation#getPercentile(double, long)
+     */
+    @Override
+    public double getPercentile(final double percentile, final long windowMillis) {
+	return getHistogram(windowMillis).getValueAtPercentile(percentile) / 1000000.0;
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.needles.aggregation.WindowedPercentileAggregation#getWindowMillis()
+     */
+    @Override
+    public long getWindowMillis() {
+	return ring.getBucketCount() * ring.getIntervalMillis();
+    }
+
+    private static final class HistogramRing extends TimeWindowRing<LogLinearHistogram> {
+
+	private static final long serialVersionUID = 1L;
+	private final long maxDurationNanos;
+	private final int significantDigits;
+
+	private HistogramRing(final int bucketCount, final long intervalMillis, final long maxDurationNanos, final int significantDigits) {
+	    super(bucketCount, intervalMillis);
+	    this.maxDurationNanos = maxDurationNanos;
+	    this.significantDigits = significantDigits;
+	}
+
+	@Override
+	protected LogLinearHistogram createBucket() {
+	    return new LogLinearHistogram(maxDurationNanos, significantDigits);
+	}
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) 2013,
+ * Marco Brade
+ * 							[https://github.com/mbrade]
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice,
+ *       this list of conditions and the following disclaimer in the documentation
+ *       and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.sf.needles.aggregation.worker;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.sf.needles.NeedleInfo;
+import net.sf.needles.aggregation.Aggregation;
+import net.sf.needles.aggregation.AggregationFactory;
+
+/**
+ * Aggregates the needles of one {@link Aggregator} on a thread of its own, fed by a bounded queue of its own. A slow factory only holds back its own stage, and the lag of every stage shows which
+ * factory can't keep up.
+ */
+public class AggregationStage {
+
+    private final AggregationWorker worker;
+    private final Aggregator aggregator;
+    private final QueueConsumer consumer;
+    private final AtomicLong aggregated = new AtomicLong();
+    private volatile long lagMillis;
+    private volatile long maximumLagMillis;
+
+    /**
+     * Instantiates a new aggregation stage.
+     * 
+     * @param worker
+     *            the worker applying its overflow policy to the queue of the stage
+     * @param aggregator
+     *            the aggregator the needles get aggregated with
+     * @param capacity
+     *            the capacity of the queue of the stage
+     */
+    AggregationStage(final AggregationWorker worker, final Aggregator aggregator, final int capacity) {
+	this.worker = worker;
+	this.aggregator = aggregator;
+	this.consumer = new QueueConsumer(AggregationStage.class.getName() + "-" + aggregator.getAggregationKey(), capacity, worker.getBatchSize()) {
+
+	    @Override
+	    void consume(final List<NeedleInfo> needles) {
+		aggregateNow(needles);
+	    }
+	};
+    }
+
+    /**
+     * Gets the amount of needles aggregated by this stage.
+     * 
+     * @return the aggregated count
+     */
+    public long getAggregatedCount() {
+	return aggregated.get();
+    }
+
+    /**
+     * Gets the aggregation factory of the aggregator.
+     * 
+     * @return the aggregation factory
+     */
+    public AggregationFactory<? extends Aggregation<?>> getAggregationFactory() {
+	return aggregator.getAggregationFactory();
+    }
+
+    /**
+     * Gets the aggregation key of the aggregator.
+     * 
+     * @return the aggregation key
+     */
+    public String getAggregationKey() {
+	return aggregator.getAggregationKey();
+    }
+
+    /**
+     * Gets the aggregator the needles of this stage get aggregated with.
+     * 
+     * @return the aggregator
+     */
+    public Aggregator getAggregator() {
+	return aggregator;
+    }
+
+    /**
+     * Gets the time between the stop of the oldest needle of the last aggregated batch and its aggregation by this stage.
+     * 
+     * @return the lag in milliseconds
+     */
+    public long getLagMillis() {
+	return lagMillis;
+    }
+
+    /**
+     * Gets the largest lag since this stage was created.
+     * 
+     * @return the maximum lag in milliseconds
+     */
+    public long getMaximumLagMillis() {
+	return maximumLagMillis;
+    }
+
+    /**
+     * Gets the amount of needles waiting for this stage.
+     * 
+     * @return the queue size
+     */
+    public int getQueueSize() {
+	return consumer.queue.size();
+    }
+
+    /**
+     * Aggregates the needles queued so far on the calling thread. Needles queued during the drain are left to the thread of this stage.
+     */
+    void drain() {
+	consumer.drain();
+    }
+
+    /**
+     * Queues the given needle for the thread of this stage.
+     * 
+     * @param needle
+     *            the needle
+     */
+    void enqueue(final NeedleInfo needle) {
+	if (worker.enqueue(consumer.queue, needle)) {
+	    consumer.signal();
+	}
+    }
+
+    /**
+     * Queues the given needles for the thread of this stage.
+     * 
+     * @param needles
+     *            the needles
+     */
+    void enqueueBatch(final List<NeedleInfo> needles) {
+	boolean queued = false;
+	for (final NeedleInfo needle : needles) {
+	    queued |= worker.enqueue(consumer.queue, needle);
+	}
+	if (queued) {
+	    consumer.signal();
+	}
+    }
+
+    /**
+     * Lets the thread of this stage terminate once its queue is empty.
+     */
+    void stop() {
+	consumer.stop();
+    }
+
+    private void aggregateNow(final List<NeedleInfo> needles) {
+	aggregator.aggregateBatch(needles);
+	//batches are consumed one at a time, the first needle of a batch waited longest
+	aggregated.lazySet(aggregated.get() + needles.size());
+	final long lag = Math.max(0, System.currentTimeMillis() - needles.get(0).getStopTimeMillis());
+	lagMillis = lag;
+	if (lag > maximumLagMillis) {
+	    maximumLagMillis = lag;
+	}
+    }
+}
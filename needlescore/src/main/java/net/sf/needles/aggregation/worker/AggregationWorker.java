@@ -28,16 +28,21 @@
 
 package net.sf.needles.aggregation.worker;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Queue;
+import java.util.Random;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
 
 import net.sf.needles.NeedleInfo;
 import net.sf.needles.aggregation.Aggregation;
 import net.sf.needles.aggregation.AggregationFactory;
 import net.sf.needles.configuration.PersistenceConfiguration;
+import net.sf.needles.util.BoundedRingBuffer;
+import net.sf.needles.util.StripedCounter;
 
 import org.apache.log4j.Logger;
 
@@ -46,8 +51,27 @@ import org.apache.log4j.Logger;
  */
 public abstract class AggregationWorker {
 
+    /** The default capacity of the queue. */
+    public static final int DEFAULT_QUEUE_CAPACITY = 1 << 16;
+    /** The default time a needle waits for a place within a full queue with {@link OverflowPolicy#BLOCK}. */
+    public static final long DEFAULT_BLOCK_TIMEOUT_MILLIS = 10;
+    /** The default maximum amount of needles drained from a queue and aggregated as one batch. */
+    public static final int DEFAULT_BATCH_SIZE = 256;
+
+    private static final long BLOCK_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    private static final ThreadLocal<Random> random = new ThreadLocal<Random>() {
+	@Override
+	protected Random initialValue() {
+	    return new Random();
+	}
+    };
+
     /** The queue. */
-    final Queue<NeedleInfo> queue = new LinkedBlockingQueue<NeedleInfo>();
+    volatile BoundedRingBuffer<NeedleInfo> queue = new BoundedRingBuffer<NeedleInfo>(DEFAULT_QUEUE_CAPACITY);
+    private volatile OverflowPolicy overflowPolicy = OverflowPolicy.DROP_NEWEST;
+    private volatile long blockTimeoutMillis = DEFAULT_BLOCK_TIMEOUT_MILLIS;
+    private volatile int batchSize = DEFAULT_BATCH_SIZE;
+    private final StripedCounter droppedNeedles = new StripedCounter();
     private final ConcurrentHashMap<String, Aggregator> aggregatorMap = new ConcurrentHashMap<String, Aggregator>();
     private PersistenceConfiguration persistenceConfiguration = null;
 
@@ -70,7 +94,14 @@ public abstract class AggregationWorker {
      *            the needle
      */
     public void aggregate(final NeedleInfo needle) {
-	queue.offer(needle);
+	BoundedRingBuffer<NeedleInfo> currentQueue = queue;
+	enqueue(currentQueue, needle);
+	BoundedRingBuffer<NeedleInfo> replacingQueue;
+	while (currentQueue != (replacingQueue = queue)) {
+	    //the queue got replaced meanwhile, so the needle may have been queued after it was moved. The replacing queue may get replaced during the move as well
+	    transferQueued(currentQueue, replacingQueue);
+	    currentQueue = replacingQueue;
+	}
 	if (shouldAggregateNow()) {
 	    aggregateNow();
 	}
@@ -83,6 +114,12 @@ public abstract class AggregationWorker {
      */
     public abstract boolean continueAggregation();
 
+    /**
+     * Brings the aggregations up to date with the needles the worker holds back, before they get read. The default does nothing, as queued needles are aggregated as soon as possible anyway.
+     */
+    public void flush() {
+    }
+
     /**
      * Gets the aggregation factories.
      * 
@@ -112,6 +149,27 @@ public abstract class AggregationWorker {
 	return (aggregator != null) ? aggregator.getAggregationFactory() : null;
     }
 
+    public int getBatchSize() {
+	return batchSize;
+    }
+
+    public long getBlockTimeoutMillis() {
+	return blockTimeoutMillis;
+    }
+
+    /**
+     * Gets the amount of needles dropped because the queue was full, or by {@link OverflowPolicy#SAMPLE}.
+     * 
+     * @return the dropped needle count
+     */
+    public long getDroppedNeedleCount() {
+	return droppedNeedles.sum();
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+	return overflowPolicy;
+    }
+
     public PersistenceConfiguration getPersistenceConfiguration() {
 	return persistenceConfiguration;
     }
@@ -121,18 +179,75 @@ public abstract class AggregationWorker {
      * 
      * @return the queue size
      */
-    public final int getQueueSize() {
+    public int getQueueSize() {
 	return queue.size();
     }
 
+    /**
+     * Gets the queue capacity.
+     * 
+     * @return the queue capacity
+     */
+    public int getQueueCapacity() {
+	return queue.getCapacity();
+    }
+
+    /**
+     * Removes the aggregation factory with the given name. Needles aggregated afterwards don't reach it anymore.
+     * 
+     * @param key
+     *            the name of the factory
+     * @return the removed factory or null if there was none with the name
+     */
+    public AggregationFactory<? extends Aggregation<?>> removeAggregationFactory(final String key) {
+	final Aggregator aggregator = aggregatorMap.remove(key);
+	return (aggregator != null) ? aggregator.getAggregationFactory() : null;
+    }
+
+    public void setBatchSize(final int batchSize) {
+	if (batchSize < 1) {
+	    throw new IllegalArgumentException("The batch size has to be at least 1 but was: " + batchSize);
+	}
+	this.batchSize = batchSize;
+    }
+
+    public void setBlockTimeoutMillis(final long blockTimeoutMillis) {
+	if (blockTimeoutMillis < 0) {
+	    throw new IllegalArgumentException("The block timeout shouldn't be negative but was: " + blockTimeoutMillis);
+	}
+	this.blockTimeoutMillis = blockTimeoutMillis;
+    }
+
+    public void setOverflowPolicy(final OverflowPolicy overflowPolicy) {
+	if (overflowPolicy == null) {
+	    throw new IllegalArgumentException("The overflow policy shouldn't be null.");
+	}
+	this.overflowPolicy = overflowPolicy;
+    }
+
     public void setPersistenceConfiguration(final PersistenceConfiguration persistenceConfiguration) {
 	this.persistenceConfiguration = persistenceConfiguration;
     }
 
+    /**
+     * Replaces the queue by one of the given capacity. Needles still queued are moved to the new queue as far as they fit, the remaining ones are counted as dropped. Needles queued concurrently into
+     * the replaced queue get moved by their producers, see {@link #aggregate(NeedleInfo)}.
+     * 
+     * @param queueCapacity
+     *            the queue capacity, rounded up to the next power of two of at least 2
+     */
+    public synchronized void setQueueCapacity(final int queueCapacity) {
+	final BoundedRingBuffer<NeedleInfo> oldQueue = queue;
+	final BoundedRingBuffer<NeedleInfo> newQueue = new BoundedRingBuffer<NeedleInfo>(queueCapacity);
+	queue = newQueue;
+	transferQueued(oldQueue, newQueue);
+    }
+
     /**
      * Shutdown.
      */
     public final void shutdown() {
+	flush();
 	PersistenceUtils.persistAggregationData(persistenceConfiguration, getAggregationFactories());
 	doShutdown();
 	for (final Aggregator aggregator : aggregatorMap.values()) {
@@ -148,14 +263,31 @@ public abstract class AggregationWorker {
     }
 
     /**
-     * Creates the aggregator.
+     * Creates the aggregator, a {@link BatchAggregator} unless overridden.
      * 
      * @param factory
      *            the factory
      * @return the aggregator
      */
     protected Aggregator createAggregator(final AggregationFactory<? extends Aggregation<?>> factory) {
-	return new Aggregator(factory);
+	return new BatchAggregator(factory);
+    }
+
+    /**
+     * Aggregates the given needles with every aggregator.
+     * 
+     * @param needles
+     *            the needles
+     */
+    void aggregateBatch(final List<NeedleInfo> needles) {
+	for (final Aggregator aggregator : aggregatorMap.values()) {
+	    try {
+		aggregator.aggregateBatch(needles);
+	    } catch (final Exception e) {
+		final AggregationFactory<? extends Aggregation<?>> factory = aggregator.getAggregationFactory();
+		LOG.warn("AggregationFactory " + ((factory != null) ? factory.getName() : " - null - ") + " throws exception on a batch of " + needles.size() + " logs", e);
+	    }
+	}
     }
 
     /**
@@ -166,35 +298,76 @@ public abstract class AggregationWorker {
      */
     void aggregateNeedle(final NeedleInfo needle) {
 	for (final Aggregator aggregator : aggregatorMap.values()) {
-	    final AggregationFactory<? extends Aggregation<?>> factory = aggregator.getAggregationFactory();
 	    try {
-		aggregateNeedleWithAggregator(needle, factory);
+		aggregator.aggregate(needle);
 	    } catch (final Exception e) {
+		final AggregationFactory<? extends Aggregation<?>> factory = aggregator.getAggregationFactory();
 		LOG.warn("AggregationFactory " + ((factory != null) ? factory.getName() : " - null - ") + " throws exception" + ((needle != null) ? " on log " + needle.toString() : ""), e);
 	    }
 	}
     }
 
     /**
-     * Aggregate needle with aggregator.
+     * Queues the given needle into the given queue according to the overflow policy and counts it if it gets dropped.
      * 
+     * @param queue
+     *            the queue
      * @param needle
      *            the needle
-     * @param factory
-     *            the factory
+     * @return true, if the needle was queued
+     */
+    boolean enqueue(final BoundedRingBuffer<NeedleInfo> queue, final NeedleInfo needle) {
+	final boolean result = offer(queue, needle);
+	if (!result) {
+	    droppedNeedles.increment();
+	}
+	return result;
+    }
+
+    /**
+     * Gets the aggregator of the aggregation factory of the given name.
+     * 
+     * @param key
+     *            the name of the aggregation factory
+     * @return the aggregator or null
+     */
+    Aggregator getAggregator(final String key) {
+	return aggregatorMap.get(key);
+    }
+
+    /**
+     * Gets the aggregators of the aggregation factories.
+     * 
+     * @return the aggregators
      */
-    void aggregateNeedleWithAggregator(final NeedleInfo needle, final AggregationFactory<? extends Aggregation<?>> factory) {
-	final Aggregation<?> aggregation = factory.getOrCreateAggregation(needle);
-	aggregation.aggregate(needle);
+    Collection<Aggregator> getAggregators() {
+	return aggregatorMap.values();
     }
 
     /**
-     * Aggregate now.
+     * Drains the queue in batches of up to the batch size and aggregates every batch at once.
      */
     void aggregateNow() {
-	NeedleInfo needle = null;
-	while ((needle = queue.poll()) != null && continueAggregation()) {
-	    aggregateNeedle(needle);
+	final List<NeedleInfo> needles = new ArrayList<NeedleInfo>(Math.min(batchSize, queue.getCapacity()));
+	while (continueAggregation() && queue.drainTo(needles, batchSize) > 0) {
+	    aggregateBatch(needles);
+	    needles.clear();
+	}
+    }
+
+    /**
+     * Drains and aggregates at most the given amount of needles in batches of up to the batch size, so running producers can't keep the calling thread busy.
+     * 
+     * @param maxNeedles
+     *            the maximum amount of needles
+     */
+    void aggregateNow(final int maxNeedles) {
+	final List<NeedleInfo> needles = new ArrayList<NeedleInfo>(Math.min(batchSize, queue.getCapacity()));
+	int remaining = maxNeedles;
+	while (remaining > 0 && queue.drainTo(needles, Math.min(batchSize, remaining)) > 0) {
+	    remaining -= needles.size();
+	    aggregateBatch(needles);
+	    needles.clear();
 	}
     }
 
@@ -210,4 +383,50 @@ public abstract class AggregationWorker {
      */
     abstract boolean shouldAggregateNow();
 
+    private void transferQueued(final BoundedRingBuffer<NeedleInfo> from, final BoundedRingBuffer<NeedleInfo> to) {
+	NeedleInfo needle = null;
+	while ((needle = from.poll()) != null) {
+	    if (!to.offer(needle)) {
+		droppedNeedles.increment();
+	    }
+	}
+    }
+
+    private boolean offer(final BoundedRingBuffer<NeedleInfo> queue, final NeedleInfo needle) {
+	switch (overflowPolicy) {
+	    case DROP_OLDEST: {
+		while (!queue.offer(needle)) {
+		    if (queue.poll() != null) {
+			droppedNeedles.increment();
+		    }
+		}
+		return true;
+	    }
+	    case BLOCK: {
+		if (queue.offer(needle)) {
+		    return true;
+		}
+		final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(blockTimeoutMillis);
+		while (System.nanoTime() - deadline < 0) {
+		    LockSupport.parkNanos(BLOCK_PARK_NANOS);
+		    if (queue.offer(needle)) {
+			return true;
+		    }
+		}
+		return false;
+	    }
+	    case SAMPLE: {
+		final int capacity = queue.getCapacity();
+		final int free = capacity - queue.size();
+		//above half the capacity needles get queued with the probability of the remaining free share
+		if (free < capacity / 2 && random.get().nextInt(capacity / 2) >= free) {
+		    return false;
+		}
+		return queue.offer(needle);
+	    }
+	    default: {
+		return queue.offer(needle);
+	    }
+	}
+    }
 }
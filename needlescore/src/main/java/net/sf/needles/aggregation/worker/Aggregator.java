@@ -28,12 +28,16 @@
 
 package net.sf.needles.aggregation.worker;
 
+import java.util.List;
+
 import net.sf.needles.Needle;
+import net.sf.needles.NeedleInfo;
+import net.sf.needles.aggregation.AbstractAggregation;
 import net.sf.needles.aggregation.Aggregation;
 import net.sf.needles.aggregation.AggregationFactory;
 
 /**
- * The Aggregator.
+ * The Aggregator. Needles get aggregated one by one, see {@link BatchAggregator} for an aggregator handing every aggregation the needles of a batch at once.
  */
 public class Aggregator {
 
@@ -49,15 +53,42 @@ public class Aggregator {
 	this.aggregationFactory = aggregationFactory;
     }
 
+    /**
+     * Aggregate. A {@link Needle} gets passed on to {@link #aggregate(Needle)}, so subclasses overriding it still see the needles they saw before.
+     * 
+     * @param needle
+     *            the log
+     */
+    public void aggregate(final NeedleInfo needle) {
+	if (needle instanceof Needle) {
+	    aggregate((Needle) needle);
+	} else {
+	    aggregateNeedle(needle);
+	}
+    }
+
     /**
      * Aggregate.
      * 
      * @param needle
      *            the log
+     * @deprecated override {@link #aggregate(NeedleInfo)} instead, which gets every needle and not only the ones of type {@link Needle}
      */
+    @Deprecated
     public void aggregate(final Needle needle) {
-	final Aggregation<?> aggregation = getAggregationFactory().getOrCreateAggregation(needle);
-	aggregation.aggregate(needle);
+	aggregateNeedle(needle);
+    }
+
+    /**
+     * Aggregates the given needles one by one through {@link #aggregate(NeedleInfo)}. Subclasses opt into batching by overriding this method, like the {@link BatchAggregator}.
+     * 
+     * @param needles
+     *            the needles
+     */
+    public void aggregateBatch(final List<NeedleInfo> needles) {
+	for (final NeedleInfo needle : needles) {
+	    aggregate(needle);
+	}
     }
 
     /**
@@ -78,4 +109,27 @@ public class Aggregator {
 	return getAggregationFactory().getName();
     }
 
+    /**
+     * Aggregates the given needles with the given aggregation, at once if it is an {@link AbstractAggregation} and one by one otherwise.
+     * 
+     * @param aggregation
+     *            the aggregation
+     * @param needles
+     *            the needles, which all belong to the aggregation
+     */
+    static void aggregateNeedles(final Aggregation<?> aggregation, final List<NeedleInfo> needles) {
+	if (aggregation instanceof AbstractAggregation) {
+	    ((AbstractAggregation<?>) aggregation).aggregateBatch(needles);
+	} else {
+	    for (final NeedleInfo needle : needles) {
+		aggregation.aggregate(needle);
+	    }
+	}
+    }
+
+    private void aggregateNeedle(final NeedleInfo needle) {
+	final Aggregation<?> aggregation = getAggregationFactory().getOrCreateAggregation(needle);
+	aggregation.aggregate(needle);
+    }
+
 }
@@ -93,6 +93,7 @@ public class AsyncAggregationWorker extends AggregationWorker {
 	try {
 	    executor.execute(aggregationWorker);//this should be called immediately
 	} catch (final RejectedExecutionException ree) {
+	    sema.release();
 	    LOG.warn("aggregateNow shouldn't be called if the Runnable queue has no remaining capacity.");
 	}
     }
@@ -113,6 +114,22 @@ public class AsyncAggregationWorker extends AggregationWorker {
 	executor.shutdown();
     }
 
+    /**
+     * Aggregates the needles still queued on the calling thread, once the thread of this worker is done with the needles it took. Needles queued meanwhile are left to the thread of this worker.
+     */
+    void aggregateQueued() {
+	sema.acquireUninterruptibly(2);
+	try {
+	    super.aggregateNow(queue.size());
+	} finally {
+	    sema.release(2);
+	}
+	//needles queued meanwhile couldn't schedule the thread of this worker
+	if (getQueueSize() > 0 && shouldAggregateNow()) {
+	    aggregateNow();
+	}
+    }
+
     private class AggregationWorker implements Runnable {
 
 	@Override
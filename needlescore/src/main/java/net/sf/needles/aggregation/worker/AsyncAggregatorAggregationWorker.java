@@ -28,76 +28,97 @@
 
 package net.sf.needles.aggregation.worker;
 
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ThreadFactory;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 
-import net.sf.needles.Needle;
+import net.sf.needles.NeedleInfo;
 import net.sf.needles.aggregation.Aggregation;
 import net.sf.needles.aggregation.AggregationFactory;
 
 /**
- * The Class PerAggregatorThreadAggregationWorker uses a Thread for each Aggregator for aggregation.
+ * The Class AsyncAggregatorAggregationWorker fans every needle out to an {@link AggregationStage} per {@link AggregationFactory}. The needles get dispatched on the thread of the
+ * {@link AsyncAggregationWorker} and aggregated on the thread of each stage, so cheap aggregations aren't held back by expensive ones.
  */
 public class AsyncAggregatorAggregationWorker extends AsyncAggregationWorker {
 
-    private final ThreadGroup tg = new ThreadGroup(AsyncAggregatorAggregationWorker.class.getSimpleName());
-    private final ExecutorService executor = Executors.newCachedThreadPool(new ThreadFactory() {
-	private final AtomicInteger ai = new AtomicInteger();
-
-	@Override
-	public Thread newThread(final Runnable r) {
-	    final Thread result = new Thread(tg, r, tg.getName() + "-Thread-" + ai.incrementAndGet());
-	    return result;
-	}
-    });
+    private final ConcurrentHashMap<String, AggregationStage> stages = new ConcurrentHashMap<String, AggregationStage>();
 
+    /**
+     * Adds the aggregation factory together with a stage with a queue of the capacity of this worker.
+     */
     @Override
-    protected Aggregator createAggregator(final AggregationFactory<? extends Aggregation<?>> factory) {
-	return new ThreadedAggregator(factory);
+    public void addAggregationFactory(final AggregationFactory<? extends Aggregation<?>> factory) {
+	super.addAggregationFactory(factory);
+	final Aggregator aggregator = getAggregator(factory.getName());
+	if (aggregator != null && !stages.containsKey(factory.getName())) {
+	    stages.putIfAbsent(factory.getName(), new AggregationStage(this, aggregator, getQueueCapacity()));
+	}
     }
 
-    /* (non-Javadoc)
-     * @see net.sf.needles.aggregation.SingleThreadAggregationWorker#shutdown()
+    /**
+     * Dispatches the needles queued so far by this worker and aggregates the needles queued by every stage on the calling thread.
      */
     @Override
-    void doShutdown() {
-	super.shutdown();
-	executor.shutdown();
+    public void flush() {
+	aggregateQueued();
+	for (final AggregationStage stage : stages.values()) {
+	    stage.drain();
+	}
     }
 
-    private class ThreadedAggregator extends Aggregator implements Runnable {
-
-	private static final long serialVersionUID = 1L;
-
-	private Needle currentNeedle;
+    /**
+     * Gets the stages of the aggregation factories.
+     * 
+     * @return the stages
+     */
+    public List<AggregationStage> getStages() {
+	return new ArrayList<AggregationStage>(stages.values());
+    }
 
-	private ThreadedAggregator(final AggregationFactory<? extends Aggregation<?>> factory) {
-	    super(factory);
+    /**
+     * Removes the aggregation factory together with its stage. The thread of the stage aggregates the needles already queued and terminates.
+     */
+    @Override
+    public AggregationFactory<? extends Aggregation<?>> removeAggregationFactory(final String key) {
+	final AggregationFactory<? extends Aggregation<?>> result = super.removeAggregationFactory(key);
+	final AggregationStage stage = stages.remove(key);
+	if (stage != null) {
+	    stage.stop();
 	}
+	return result;
+    }
 
-	/* (non-Javadoc)
-	 * @see net.sf.needles.aggregation.aggregator.Aggregator#aggregate(net.sf.needles.Needle)
-	 */
-	@Override
-	public void aggregate(final Needle needle) {
-	    if (currentNeedle != null) {
-		throw new IllegalStateException("The PerAggregatorRunnable should get called for one log per time only.");
-	    }
-	    this.currentNeedle = needle;
-	    executor.execute(this);
+    /**
+     * Queues the given needles for every stage.
+     */
+    @Override
+    void aggregateBatch(final List<NeedleInfo> needles) {
+	for (final AggregationStage stage : stages.values()) {
+	    stage.enqueueBatch(needles);
 	}
+    }
 
-	/* (non-Javadoc)
-	 * @see java.lang.Runnable#run()
-	 */
-	@Override
-	public void run() {
-	    super.aggregate(currentNeedle);
-	    currentNeedle = null;
+    /**
+     * Queues the given needle for every stage.
+     */
+    @Override
+    void aggregateNeedle(final NeedleInfo needle) {
+	for (final AggregationStage stage : stages.values()) {
+	    stage.enqueue(needle);
 	}
+    }
 
+    /* (non-Javadoc)
+     * @see net.sf.needles.aggregation.worker.AsyncAggregationWorker#doShutdown()
+     */
+    @Override
+    void doShutdown() {
+	flush();
+	super.doShutdown();
+	for (final AggregationStage stage : stages.values()) {
+	    stage.stop();
+	}
     }
 
 }
@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2013,
+ * Marco Brade
+ * 							[https://github.com/mbrade]
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice,
+ *       this list of conditions and the following disclaimer in the documentation
+ *       and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.sf.needles.aggregation.worker;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.sf.needles.NeedleInfo;
+import net.sf.needles.aggregation.Aggregation;
+import net.sf.needles.aggregation.AggregationFactory;
+
+/**
+ * Aggregator handing every aggregation the needles of a batch at once. The needles get grouped by their aggregation, so aggregations able to batch take one lock or compare and set per batch.
+ * Batches don't pass {@link #aggregate(NeedleInfo)}, subclasses which need to see every needle should extend {@link Aggregator} instead.
+ */
+public class BatchAggregator extends Aggregator {
+
+    /**
+     * Instantiates a new batch aggregator.
+     * 
+     * @param aggregationFactory
+     *            the aggregation factory
+     */
+    public BatchAggregator(final AggregationFactory<? extends Aggregation<?>> aggregationFactory) {
+	super(aggregationFactory);
+    }
+
+    /**
+     * Groups the given needles by their aggregation and aggregates every group as one batch.
+     */
+    @Override
+    public void aggregateBatch(final List<NeedleInfo> needles) {
+	final Map<Aggregation<?>, List<NeedleInfo>> batches = new IdentityHashMap<Aggregation<?>, List<NeedleInfo>>();
+	for (final NeedleInfo needle : needles) {
+	    final Aggregation<?> aggregation = getAggregationFactory().getOrCreateAggregation(needle);
+	    List<NeedleInfo> batch = batches.get(aggregation);
+	    if (batch == null) {
+		batch = new ArrayList<NeedleInfo>();
+		batches.put(aggregation, batch);
+	    }
+	    batch.add(needle);
+	}
+	for (final Map.Entry<Aggregation<?>, List<NeedleInfo>> batch : batches.entrySet()) {
+	    aggregateNeedles(batch.getKey(), batch.getValue());
+	}
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2013,
+ * Marco Brade
+ * 							[https://github.com/mbrade]
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice,
+ *       this list of conditions and the following disclaimer in the documentation
+ *       and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.sf.needles.aggregation.worker;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import net.sf.needles.NeedleInfo;
+import net.sf.needles.aggregation.Aggregation;
+import net.sf.needles.aggregation.PreAggregatable;
+import net.sf.needles.aggregation.PreAggregation;
+
+/**
+ * The pre-aggregation of aggregations which aren't {@link PreAggregatable}. The needles are kept and handed to the aggregation as one batch on merge, or as soon as a batch is full.
+ */
+class NeedleBatchPreAggregation implements PreAggregation {
+
+    private final Aggregation<?> aggregation;
+    private final int batchSize;
+    private final List<NeedleInfo> needles = new ArrayList<NeedleInfo>();
+
+    NeedleBatchPreAggregation(final Aggregation<?> aggregation, final int batchSize) {
+	this.aggregation = aggregation;
+	this.batchSize = batchSize;
+    }
+
+    @Override
+    public void add(final NeedleInfo needle) {
+	needles.add(needle);
+	if (needles.size() >= batchSize) {
+	    merge();
+	}
+    }
+
+    @Override
+    public void merge() {
+	if (!needles.isEmpty()) {
+	    Aggregator.aggregateNeedles(aggregation, needles);
+	    needles.clear();
+	}
+    }
+}
@@ -0,0 +1,378 @@
+/*
+ * Copyright (c) 2013,
+ * Marco Brade
+ * 							[https://github.com/mbrade]
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice,
+ *       this list of conditions and the following disclaimer in the documentation
+ *       and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.sf.needles.aggregation.worker;
+
+import java.lang.ref.WeakReference;
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import net.sf.needles.NeedleId;
+import net.sf.needles.NeedleInfo;
+import net.sf.needles.aggregation.Aggregation;
+import net.sf.needles.aggregation.AggregationFactory;
+import net.sf.needles.aggregation.PreAggregatable;
+import net.sf.needles.aggregation.PreAggregation;
+import net.sf.needles.aggregation.keycreator.StableKeyCreator;
+import net.sf.needles.util.ClockCache;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Folds the needles on the thread stopping them into {@link PreAggregation}s of its own, one per factory and {@link NeedleId}. A daemon thread merges the pre-aggregations of all threads into the
+ * aggregations every merge interval, and so does {@link #flush()}, which gets called before the aggregations are read through {@link net.sf.needles.AggregationContext}. Needle threads neither share
+ * a queue nor look the aggregations up: the merger resolves the aggregation of a needle id once, the needles of an unresolved id are kept until then, up to a batch. The aggregations lag behind by up
+ * to the merge interval. Windowed aggregations account the needles to the interval they stopped in.
+ */
+public class PreAggregatingAggregationWorker extends AggregationWorker {
+
+    /** The default interval of the merges in milliseconds. */
+    public static final long DEFAULT_MERGE_INTERVAL_MILLIS = 1000;
+    /** The maximum amount of needle ids the resolved aggregations are kept for. */
+    public static final int MAX_RESOLVED_AGGREGATIONS = 1 << 16;
+
+    private final static Logger LOG = Logger.getLogger(PreAggregatingAggregationWorker.class);
+
+    private final CopyOnWriteArrayList<ThreadPreAggregations> threadPreAggregations = new CopyOnWriteArrayList<ThreadPreAggregations>();
+    private final ThreadLocal<ThreadPreAggregations> threadPreAggregation = new ThreadLocal<ThreadPreAggregations>() {
+	@Override
+	protected ThreadPreAggregations initialValue() {
+	    final ThreadPreAggregations result = new ThreadPreAggregations();
+	    threadPreAggregations.add(result);
+	    startMerger();
+	    return result;
+	}
+    };
+    //written by the merger, read by the needle threads when they start to pre-aggregate a needle id
+    private final ClockCache<PreAggregationKey, Aggregation<?>> resolvedAggregations = new ClockCache<PreAggregationKey, Aggregation<?>>(MAX_RESOLVED_AGGREGATIONS);
+    private final Object mergeLock = new Object();
+    private volatile long mergeIntervalMillis = DEFAULT_MERGE_INTERVAL_MILLIS;
+    private volatile Thread merger;
+    private volatile boolean running = true;
+
+    /**
+     * Folds the needle into the pre-aggregations of the current thread, without looking its aggregations up. After the shutdown the needle gets aggregated right away.
+     */
+    @Override
+    public void aggregate(final NeedleInfo needle) {
+	if (!running) {
+	    aggregateNeedle(needle);
+	    return;
+	}
+	final ThreadPreAggregations preAggregations = threadPreAggregation.get();
+	synchronized (preAggregations) {
+	    for (final Aggregator aggregator : getAggregators()) {
+		try {
+		    preAggregations.add(aggregator, needle);
+		} catch (final Exception e) {
+		    final AggregationFactory<? extends Aggregation<?>> factory = aggregator.getAggregationFactory();
+		    LOG.warn("AggregationFactory " + ((factory != null) ? factory.getName() : " - null - ") + " throws exception" + ((needle != null) ? " on log " + needle.toString() : ""), e);
+		}
+	    }
+	}
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.needles.aggregation.worker.AggregationWorker#continueAggregation()
+     */
+    @Override
+    public boolean continueAggregation() {
+	return true;
+    }
+
+    /**
+     * Merges the pre-aggregations of all threads into the aggregations. Pre-aggregations of terminated threads are released afterwards.
+     */
+    @Override
+    public void flush() {
+	synchronized (mergeLock) {
+	    for (final ThreadPreAggregations preAggregations : threadPreAggregations) {
+		for (final PreAggregation preAggregation : preAggregations.take().values()) {
+		    try {
+			preAggregation.merge();
+		    } catch (final RuntimeException e) {
+			LOG.warn("Merging a pre-aggregation failed.", e);
+		    }
+		}
+		if (preAggregations.owner.get() == null) {
+		    threadPreAggregations.remove(preAggregations);
+		}
+	    }
+	}
+    }
+
+    /**
+     * Gets the amount of needle ids the aggregations got resolved for.
+     * 
+     * @return the resolved aggregation count
+     */
+    public int getResolvedAggregationCount() {
+	return resolvedAggregations.size();
+    }
+
+    public long getMergeIntervalMillis() {
+	return mergeIntervalMillis;
+    }
+
+    /**
+     * Removes the factory. Pre-aggregations of its needles which are already folded still get merged into its aggregations.
+     */
+    @Override
+    public AggregationFactory<? extends Aggregation<?>> removeAggregationFactory(final String key) {
+	final AggregationFactory<? extends Aggregation<?>> result = super.removeAggregationFactory(key);
+	//drops the aggregations resolved for the factory along with the others, the merger resolves the rest again
+	resolvedAggregations.clear();
+	return result;
+    }
+
+    public void setMergeIntervalMillis(final long mergeIntervalMillis) {
+	if (mergeIntervalMillis < 1) {
+	    throw new IllegalArgumentException("The merge interval has to be at least 1 millisecond but was: " + mergeIntervalMillis);
+	}
+	this.mergeIntervalMillis = mergeIntervalMillis;
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.needles.aggregation.worker.AggregationWorker#doShutdown()
+     */
+    @Override
+    void doShutdown() {
+	running = false;
+	final Thread merger = this.merger;
+	if (merger != null) {
+	    LockSupport.unpark(merger);
+	}
+	flush();
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.needles.aggregation.worker.AggregationWorker#shouldAggregateNow()
+     */
+    @Override
+    boolean shouldAggregateNow() {
+	return false;
+    }
+
+    /**
+     * Gets the id standing for the aggregation of the needle. Only with a {@link StableKeyCreator} the id determines the aggregation, like the aggregation cache of the factories assumes.
+     * 
+     * @param aggregator
+     *            the aggregator
+     * @param needle
+     *            the needle
+     * @return the id or null if the needle has to be resolved on its own
+     */
+    private static NeedleId getStableId(final Aggregator aggregator, final NeedleInfo needle) {
+	return (aggregator.getAggregationFactory().getKeyCreator() instanceof StableKeyCreator) ? needle.getId() : null;
+    }
+
+    private synchronized void startMerger() {
+	if (merger == null && running) {
+	    final Thread result = AccessController.doPrivileged(new PrivilegedAction<Thread>() {
+
+		@Override
+		public Thread run() {
+		    final Thread result = new Thread(new Merger(), PreAggregatingAggregationWorker.class.getName() + "-Merger");
+		    result.setDaemon(true);
+		    return result;
+		}
+	    });
+	    result.start();
+	    merger = result;
+	}
+    }
+
+    private class Merger implements Runnable {
+
+	@Override
+	public void run() {
+	    long nextMerge = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(mergeIntervalMillis);
+	    while (running) {
+		//parking may return early, so the merge waits until its time has come
+		final long remaining = nextMerge - System.nanoTime();
+		if (remaining > 0) {
+		    LockSupport.parkNanos(this, remaining);
+		    continue;
+		}
+		try {
+		    flush();
+		} catch (final RuntimeException e) {
+		    LOG.warn("Merging the pre-aggregations failed.", e);
+		}
+		nextMerge = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(mergeIntervalMillis);
+	    }
+	}
+
+    }
+
+    /**
+     * The pre-aggregations of one thread. Its thread folds needles while holding the monitor, which is contended only while the merge takes the pre-aggregations away.
+     */
+    private final class ThreadPreAggregations {
+
+	private final WeakReference<Thread> owner = new WeakReference<Thread>(Thread.currentThread());
+	private Map<PreAggregationKey, PreAggregation> preAggregations = new HashMap<PreAggregationKey, PreAggregation>();
+
+	private void add(final Aggregator aggregator, final NeedleInfo needle) {
+	    final PreAggregationKey key = new PreAggregationKey(aggregator, getStableId(aggregator, needle));
+	    PreAggregation preAggregation = preAggregations.get(key);
+	    if (preAggregation == null) {
+		preAggregation = new KeyedPreAggregation(key, needle, (key.needleId != null) ? resolvedAggregations.get(key) : null);
+		preAggregations.put(key, preAggregation);
+	    }
+	    preAggregation.add(needle);
+	}
+
+	/**
+	 * Takes the pre-aggregations away, so they get merged without holding up the thread. Only keys which got needles since the last merge keep pre-aggregations.
+	 */
+	private synchronized Map<PreAggregationKey, PreAggregation> take() {
+	    if (preAggregations.isEmpty()) {
+		return Collections.emptyMap();
+	    }
+	    final Map<PreAggregationKey, PreAggregation> result = preAggregations;
+	    preAggregations = new HashMap<PreAggregationKey, PreAggregation>();
+	    return result;
+	}
+    }
+
+    /**
+     * The pre-aggregation of the needles of one aggregator and needle id on one thread. If the merger has resolved the aggregation of the key already, the needles are folded into a
+     * pre-aggregation of it. Otherwise they are kept until the merger resolves the aggregation. If a batch is full before, the thread resolves the aggregation itself, once per key, and only
+     * needles without a stable id get aggregated right away.
+     */
+    private final class KeyedPreAggregation implements PreAggregation {
+
+	private final PreAggregationKey key;
+	//resolves the aggregation of the key
+	private final NeedleInfo firstNeedle;
+	private Aggregation<?> aggregation;
+	private PreAggregation preAggregation;
+	private final List<NeedleInfo> needles = new ArrayList<NeedleInfo>();
+
+	private KeyedPreAggregation(final PreAggregationKey key, final NeedleInfo firstNeedle, final Aggregation<?> aggregation) {
+	    this.key = key;
+	    this.firstNeedle = firstNeedle;
+	    if (aggregation != null) {
+		resolve(aggregation);
+	    }
+	}
+
+	@Override
+	public void add(final NeedleInfo needle) {
+	    if (preAggregation != null) {
+		preAggregation.add(needle);
+		return;
+	    }
+	    needles.add(needle);
+	    if (needles.size() >= getBatchSize()) {
+		if (key.needleId == null) {
+		    key.aggregator.aggregateBatch(needles);
+		    needles.clear();
+		} else {
+		    resolve(resolveAggregation());
+		}
+	    }
+	}
+
+	@Override
+	public void merge() {
+	    if (preAggregation != null) {
+		preAggregation.merge();
+		//the factory may have replaced the aggregation, e.g. by loading persisted ones, then the keys get resolved again from the next merge on
+		if (key.aggregator.getAggregationFactory().getOrCreateAggregation(firstNeedle) != aggregation) {
+		    resolvedAggregations.clear();
+		}
+	    } else if (!needles.isEmpty()) {
+		if (key.needleId == null) {
+		    key.aggregator.aggregateBatch(needles);
+		} else {
+		    Aggregator.aggregateNeedles(resolveAggregation(), needles);
+		}
+		needles.clear();
+	    }
+	}
+
+	/**
+	 * Switches to a pre-aggregation of the given aggregation, which takes over the kept needles.
+	 */
+	private void resolve(final Aggregation<?> aggregation) {
+	    this.aggregation = aggregation;
+	    preAggregation = (aggregation instanceof PreAggregatable) ? ((PreAggregatable) aggregation).createPreAggregation() : new NeedleBatchPreAggregation(aggregation, getBatchSize());
+	    for (final NeedleInfo needle : needles) {
+		preAggregation.add(needle);
+	    }
+	    needles.clear();
+	}
+
+	private Aggregation<?> resolveAggregation() {
+	    final Aggregation<?> result = key.aggregator.getAggregationFactory().getOrCreateAggregation(firstNeedle);
+	    resolvedAggregations.putIfAbsent(key, result);
+	    return result;
+	}
+    }
+
+    /**
+     * The key of a pre-aggregation, the aggregator by identity and the stable id of the needles or null.
+     */
+    private static final class PreAggregationKey {
+
+	private final Aggregator aggregator;
+	private final NeedleId needleId;
+
+	private PreAggregationKey(final Aggregator aggregator, final NeedleId needleId) {
+	    this.aggregator = aggregator;
+	    this.needleId = needleId;
+	}
+
+	@Override
+	public boolean equals(final Object obj) {
+	    if (this == obj) {
+		return true;
+	    }
+	    if (!(obj instanceof PreAggregationKey)) {
+		return false;
+	    }
+	    final PreAggregationKey other = (PreAggregationKey) obj;
+	    return aggregator == other.aggregator && ((needleId == null) ? other.needleId == null : needleId.equals(other.needleId));
+	}
+
+	@Override
+	public int hashCode() {
+	    return 31 * System.identityHashCode(aggregator) + ((needleId == null) ? 0 : needleId.hashCode());
+	}
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2013,
+ * Marco Brade
+ * 							[https://github.com/mbrade]
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice,
+ *       this list of conditions and the following disclaimer in the documentation
+ *       and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.sf.needles.aggregation.worker;
+
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import net.sf.needles.NeedleInfo;
+import net.sf.needles.util.BoundedRingBuffer;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Drains a bounded queue of needles in batches on a daemon thread of its own, which gets started with the first needle signalled. The thread parks while the queue is empty and gets unparked by
+ * {@link #signal()}. Batches are consumed one at a time, so {@link #drain()} consumes the needles queued before it in order after the batch in progress.
+ */
+abstract class QueueConsumer implements Runnable {
+
+    private final static Logger LOG = Logger.getLogger(QueueConsumer.class);
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    final BoundedRingBuffer<NeedleInfo> queue;
+    private final String threadName;
+    private final int batchSize;
+    private final Object consumeLock = new Object();
+    private volatile Thread thread;
+    private volatile boolean waiting;
+    private volatile boolean running = true;
+
+    QueueConsumer(final String threadName, final int capacity, final int batchSize) {
+	this.threadName = threadName;
+	this.queue = new BoundedRingBuffer<NeedleInfo>(capacity);
+	this.batchSize = batchSize;
+    }
+
+    @Override
+    public void run() {
+	final List<NeedleInfo> needles = new ArrayList<NeedleInfo>();
+	while (true) {
+	    if (consumeBatch(needles, batchSize) > 0) {
+		//the next batch may already be queued
+	    } else if (!running) {
+		return;
+	    } else {
+		waiting = true;
+		//the needle may have been queued after the drain but before waiting was set
+		if (queue.size() == 0) {
+		    LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+		}
+		waiting = false;
+	    }
+	}
+    }
+
+    /**
+     * Consumes a batch of needles taken from the queue.
+     * 
+     * @param needles
+     *            the needles
+     */
+    abstract void consume(List<NeedleInfo> needles);
+
+    /**
+     * Consumes the needles queued so far on the calling thread, after the batch the consumer thread may be consuming right now. The drain stops after as many needles as were queued when it started,
+     * so needles queued meanwhile by running producers can't keep the calling thread busy. Both threads take needles from the head of the queue, so all needles queued before the drain are
+     * consumed once it returns.
+     */
+    void drain() {
+	final List<NeedleInfo> needles = new ArrayList<NeedleInfo>();
+	int remaining;
+	//waits for the batch the consumer thread may be consuming, which may have emptied the queue already
+	synchronized (consumeLock) {
+	    remaining = queue.size();
+	}
+	while (remaining > 0) {
+	    final int consumed = consumeBatch(needles, Math.min(remaining, batchSize));
+	    if (consumed == 0) {
+		return;
+	    }
+	    remaining -= consumed;
+	}
+    }
+
+    /**
+     * Wakes the consumer thread up after a needle has been queued, starting it if necessary.
+     */
+    void signal() {
+	final Thread thread = this.thread;
+	if (thread == null) {
+	    start();
+	} else if (waiting) {
+	    LockSupport.unpark(thread);
+	}
+    }
+
+    /**
+     * Lets the consumer thread terminate once the queue is empty.
+     */
+    void stop() {
+	running = false;
+	final Thread thread = this.thread;
+	if (thread != null) {
+	    LockSupport.unpark(thread);
+	}
+    }
+
+    private int consumeBatch(final List<NeedleInfo> needles, final int maxNeedles) {
+	synchronized (consumeLock) {
+	    final int result = queue.drainTo(needles, maxNeedles);
+	    if (result == 0) {
+		return 0;
+	    }
+	    try {
+		consume(needles);
+	    } catch (final RuntimeException e) {
+		LOG.warn("Aggregation of a batch of " + needles.size() + " needles failed.", e);
+	    } finally {
+		needles.clear();
+	    }
+	    return result;
+	}
+    }
+
+    private synchronized void start() {
+	if (thread == null && running) {
+	    final Thread result = AccessController.doPrivileged(new PrivilegedAction<Thread>() {
+
+		@Override
+		public Thread run() {
+		    final Thread result = new Thread(QueueConsumer.this, threadName);
+		    result.setDaemon(true);
+		    return result;
+		}
+	    });
+	    result.start();
+	    thread = result;
+	}
+    }
+}
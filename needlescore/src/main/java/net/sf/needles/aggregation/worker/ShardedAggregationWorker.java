@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) 2013,
+ * Marco Brade
+ * 							[https://github.com/mbrade]
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice,
+ *       this list of conditions and the following disclaimer in the documentation
+ *       and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.sf.needles.aggregation.worker;
+
+import java.util.List;
+
+import net.sf.needles.NeedleId;
+import net.sf.needles.NeedleInfo;
+
+/**
+ * Aggregates on several threads. Every needle goes to the shard chosen by the {@link NeedleId} of its root needle, so all needles of a call tree are aggregated by the same thread in the order
+ * they were stopped. Different root needles may still resolve to the same aggregation, e.g. by the key creators by needle name or the singleton key creator, so aggregations get aggregated and
+ * extended by several shards at once and have to be thread safe. Each shard has a queue of its own with an equal part of the queue capacity. The shards get started with the first needle and their
+ * count can't be changed afterwards.
+ */
+public class ShardedAggregationWorker extends AggregationWorker {
+
+    private int shardCount = Runtime.getRuntime().availableProcessors();
+    private volatile Shard[] shards;
+
+    @Override
+    public void aggregate(final NeedleInfo needle) {
+	final Shard shard = getShard(needle);
+	if (enqueue(shard.queue, needle)) {
+	    shard.signal();
+	}
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.needles.aggregation.worker.AggregationWorker#continueAggregation()
+     */
+    @Override
+    public boolean continueAggregation() {
+	return true;
+    }
+
+    /**
+     * Aggregates the needles every shard has queued so far on the calling thread. Needles queued during the flush are left to the shards.
+     */
+    @Override
+    public void flush() {
+	drainShards();
+    }
+
+    @Override
+    public int getQueueCapacity() {
+	final Shard[] shards = this.shards;
+	return (shards != null) ? shards.length * shards[0].queue.getCapacity() : super.getQueueCapacity();
+    }
+
+    @Override
+    public int getQueueSize() {
+	final Shard[] shards = this.shards;
+	if (shards == null) {
+	    return 0;
+	}
+	int result = 0;
+	for (final Shard shard : shards) {
+	    result += shard.queue.size();
+	}
+	return result;
+    }
+
+    public int getShardCount() {
+	return shardCount;
+    }
+
+    /**
+     * Sets the shard count, which has to happen before the first needle gets aggregated.
+     * 
+     * @param shardCount
+     *            the shard count
+     */
+    public synchronized void setShardCount(final int shardCount) {
+	if (shardCount < 1) {
+	    throw new IllegalArgumentException("The shard count has to be at least 1 but was: " + shardCount);
+	}
+	if (shards != null) {
+	    throw new IllegalStateException("The shard count can't be changed after the shards have been started.");
+	}
+	this.shardCount = shardCount;
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.needles.aggregation.worker.AggregationWorker#doShutdown()
+     */
+    @Override
+    void doShutdown() {
+	final Shard[] shards = this.shards;
+	if (shards != null) {
+	    for (final Shard shard : shards) {
+		shard.stop();
+	    }
+	}
+	drainShards();
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.needles.aggregation.worker.AggregationWorker#shouldAggregateNow()
+     */
+    @Override
+    boolean shouldAggregateNow() {
+	return false;
+    }
+
+    private void drainShards() {
+	final Shard[] shards = this.shards;
+	if (shards != null) {
+	    for (final Shard shard : shards) {
+		shard.drain();
+	    }
+	}
+    }
+
+    private Shard getShard(final NeedleInfo needle) {
+	Shard[] shards = this.shards;
+	if (shards == null) {
+	    shards = startShards();
+	}
+	final NeedleInfo root = needle.getRootNeedle();
+	final NeedleId id = root.getId();
+	int hash = (id != null) ? id.hashCode() : String.valueOf(root.getName()).hashCode();
+	//the finalizer of murmur3 spreads every bit of the hash over the low bits choosing the shard
+	hash ^= hash >>> 16;
+	hash *= 0x85ebca6b;
+	hash ^= hash >>> 13;
+	hash *= 0xc2b2ae35;
+	hash ^= hash >>> 16;
+	return shards[(hash & Integer.MAX_VALUE) % shards.length];
+    }
+
+    private synchronized Shard[] startShards() {
+	if (shards == null) {
+	    final int capacity = Math.max(2, super.getQueueCapacity() / shardCount);
+	    final Shard[] result = new Shard[shardCount];
+	    for (int i = 0; i < result.length; i++) {
+		result[i] = new Shard(i, capacity);
+	    }
+	    shards = result;
+	}
+	return shards;
+    }
+
+    private final class Shard extends QueueConsumer {
+
+	private Shard(final int index, final int capacity) {
+	    super(ShardedAggregationWorker.class.getName() + "-Shard-" + index, capacity, getBatchSize());
+	}
+
+	@Override
+	void consume(final List<NeedleInfo> needles) {
+	    aggregateBatch(needles);
+	}
+    }
+}
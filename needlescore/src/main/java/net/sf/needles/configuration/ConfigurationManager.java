@@ -41,17 +41,31 @@ import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
 
 import net.sf.needles.AggregationContext;
+import net.sf.needles.NeedleContext;
 import net.sf.needles.NeedleException;
+import net.sf.needles.NeedleRetention;
+import net.sf.needles.OverheadGovernor;
+import net.sf.needles.aggregation.AbstractAggregationFactory;
 import net.sf.needles.aggregation.AggregationFactory;
 import net.sf.needles.aggregation.ExecutionAggregationFactory;
 import net.sf.needles.aggregation.HotspotAggregationFactory;
+import net.sf.needles.aggregation.PercentileAggregation;
+import net.sf.needles.aggregation.PercentileAggregationFactory;
 import net.sf.needles.aggregation.Top10AggregationFactory;
+import net.sf.needles.aggregation.Top10AggregationImpl;
+import net.sf.needles.aggregation.WindowedExecutionAggregation;
+import net.sf.needles.aggregation.WindowedExecutionAggregationFactory;
+import net.sf.needles.aggregation.WindowedPercentileAggregation;
+import net.sf.needles.aggregation.WindowedPercentileAggregationFactory;
 import net.sf.needles.aggregation.keycreator.KeyCreator;
 import net.sf.needles.aggregation.keycreator.NeedleIdKeyCreator;
 import net.sf.needles.aggregation.keycreator.NeedleNameKeyCreator;
 import net.sf.needles.aggregation.keycreator.SingletonKeyCreator;
 import net.sf.needles.aggregation.worker.AggregationWorker;
 import net.sf.needles.aggregation.worker.AsyncAggregationWorker;
+import net.sf.needles.aggregation.worker.OverflowPolicy;
+import net.sf.needles.sampling.ProbabilitySampler;
+import net.sf.needles.sampling.RateLimitingSampler;
 
 import org.apache.commons.beanutils.BeanUtilsBean2;
 
@@ -80,6 +94,29 @@ public class ConfigurationManager {
 	if (configuration == null) {
 	    throw new IllegalArgumentException("The configuration shouldn't be null.");
 	}
+	if (configuration.getMaxCallSites() != null) {
+	    NeedleContext.setMaxCallSites(configuration.getMaxCallSites());
+	}
+	if (configuration.getNeedleRetention() != null) {
+	    NeedleContext.setRetention(getNeedleRetention(configuration.getNeedleRetention()),
+		                       (configuration.getNeedleRetentionCount() != null) ? configuration.getNeedleRetentionCount() : NeedleContext.getRetentionCount());
+	}
+	if (configuration.getSamplingProbability() != null && configuration.getSamplingRate() != null) {
+	    throw new IllegalArgumentException("Only one of samplingProbability and samplingRate can be configured.");
+	} else if (configuration.getSamplingProbability() != null) {
+	    NeedleContext.setSampler(new ProbabilitySampler(configuration.getSamplingProbability()));
+	} else if (configuration.getSamplingRate() != null) {
+	    NeedleContext.setSampler(new RateLimitingSampler(configuration.getSamplingRate()));
+	}
+	if (configuration.getOverheadGovernor() != null) {
+	    final OverheadGovernorConfiguration governorConfig = configuration.getOverheadGovernor();
+	    final OverheadGovernor governor = new OverheadGovernor((governorConfig.getCheckInterval() != null) ? governorConfig.getCheckInterval() : OverheadGovernor.DEFAULT_CHECK_INTERVAL_MILLIS,
+		                                                   governorConfig.getMaxOverhead(), governorConfig.getMaxQueueSize());
+	    if (governorConfig.getRecoveryChecks() != null) {
+		governor.setRecoveryChecks(governorConfig.getRecoveryChecks());
+	    }
+	    governor.start();
+	}
 	AggregationWorker worker;
 	if (configuration.getWorkerClass() != null) {
 	    try {
@@ -95,6 +132,25 @@ public class ConfigurationManager {
 
 	worker = AggregationContext.getAggregationWorker();
 	if (worker != null) {
+	    final BeanUtilsBean2 workerBeanUtils = new BeanUtilsBean2();
+	    for (final PropertyType propertyType : configuration.getWorkerProperties()) {
+		try {
+		    workerBeanUtils.setProperty(worker, propertyType.getName(), propertyType.getValue());
+		} catch (final InvocationTargetException ite) {
+		    throw new NeedleException("Failure during invoking of property " + propertyType.getName() + " for: " + worker.getClass().getName(), ite);
+		} catch (final IllegalAccessException iae) {
+		    throw new NeedleException("Property " + propertyType.getName() + " is not accessible for: " + worker.getClass().getName(), iae);
+		}
+	    }
+	    if (configuration.getQueueCapacity() != null) {
+		worker.setQueueCapacity(configuration.getQueueCapacity());
+	    }
+	    if (configuration.getQueueOverflowPolicy() != null) {
+		worker.setOverflowPolicy(getOverflowPolicy(configuration.getQueueOverflowPolicy()));
+	    }
+	    if (configuration.getQueueBlockTimeout() != null) {
+		worker.setBlockTimeoutMillis(configuration.getQueueBlockTimeout());
+	    }
 	    if (configuration.getPersistenceConfiguration() == null) {
 		LOG.info("No needles persistenceConfiguration set.");
 	    } else {
@@ -109,47 +165,61 @@ public class ConfigurationManager {
 		    final HotspotAggregationFactoryConfiguration hotspotConfig = (HotspotAggregationFactoryConfiguration) config;
 		    if (hotspotConfig.getCount() != null) {
 			if (hotspotConfig.getAggregationName() != null) {
-			    worker.addAggregationFactory(new HotspotAggregationFactory(hotspotConfig.getCount(), hotspotConfig.getAggregationName()));
+			    worker.addAggregationFactory(limitAggregations(config, new HotspotAggregationFactory(hotspotConfig.getCount(), hotspotConfig.getAggregationName())));
 			} else {
-			    worker.addAggregationFactory(new HotspotAggregationFactory(hotspotConfig.getCount()));
+			    worker.addAggregationFactory(limitAggregations(config, new HotspotAggregationFactory(hotspotConfig.getCount())));
 			}
 		    } else {
 			if (hotspotConfig.getAggregationName() != null) {
-			    worker.addAggregationFactory(new HotspotAggregationFactory(hotspotConfig.getAggregationName()));
+			    worker.addAggregationFactory(limitAggregations(config, new HotspotAggregationFactory(hotspotConfig.getAggregationName())));
 			} else {
-			    worker.addAggregationFactory(new HotspotAggregationFactory());
+			    worker.addAggregationFactory(limitAggregations(config, new HotspotAggregationFactory()));
 			}
 		    }
 		} else if (config instanceof Top10AggregationFactoryConfiguration) {
 		    final Top10AggregationFactoryConfiguration top10Config = (Top10AggregationFactoryConfiguration) config;
-		    if (top10Config.getKeyCreator() != null) {
-			if (top10Config.getAggregationName() != null) {
-			    worker.addAggregationFactory(new Top10AggregationFactory(getKeyCreator(top10Config.getKeyCreator()), top10Config.getAggregationName()));
-			} else {
-			    worker.addAggregationFactory(new Top10AggregationFactory(getKeyCreator(top10Config.getKeyCreator())));
-			}
-		    } else {
-			if (top10Config.getAggregationName() != null) {
-			    worker.addAggregationFactory(new Top10AggregationFactory(top10Config.getAggregationName()));
-			} else {
-			    worker.addAggregationFactory(new Top10AggregationFactory());
-			}
-		    }
+		    final KeyCreator keyCreator = (top10Config.getKeyCreator() != null) ? getKeyCreator(top10Config.getKeyCreator()) : NeedleNameKeyCreator.INSTANCE;
+		    final String aggregationName = (top10Config.getAggregationName() != null) ? top10Config.getAggregationName() : Top10AggregationImpl.NAME;
+		    final int count = (top10Config.getCount() != null) ? top10Config.getCount() : Top10AggregationFactory.DEFAULT_COUNT;
+		    worker.addAggregationFactory(limitAggregations(config, new Top10AggregationFactory(keyCreator, aggregationName, count)));
 		} else if (config instanceof ExecutionAggregationFactoryConfiguration) {
 		    final ExecutionAggregationFactoryConfiguration executionConfig = (ExecutionAggregationFactoryConfiguration) config;
 		    if (executionConfig.getKeyCreator() != null) {
 			if (executionConfig.getAggregationName() != null) {
-			    worker.addAggregationFactory(new ExecutionAggregationFactory(getKeyCreator(executionConfig.getKeyCreator()), executionConfig.getAggregationName()));
+			    worker.addAggregationFactory(limitAggregations(config, new ExecutionAggregationFactory(getKeyCreator(executionConfig.getKeyCreator()), executionConfig.getAggregationName())));
 			} else {
-			    worker.addAggregationFactory(new ExecutionAggregationFactory(getKeyCreator(executionConfig.getKeyCreator())));
+			    worker.addAggregationFactory(limitAggregations(config, new ExecutionAggregationFactory(getKeyCreator(executionConfig.getKeyCreator()))));
 			}
 		    } else {
 			if (executionConfig.getAggregationName() != null) {
-			    worker.addAggregationFactory(new ExecutionAggregationFactory(executionConfig.getAggregationName()));
+			    worker.addAggregationFactory(limitAggregations(config, new ExecutionAggregationFactory(executionConfig.getAggregationName())));
 			} else {
-			    worker.addAggregationFactory(new ExecutionAggregationFactory());
+			    worker.addAggregationFactory(limitAggregations(config, new ExecutionAggregationFactory()));
 			}
 		    }
+		} else if (config instanceof PercentileAggregationFactoryConfiguration) {
+		    final PercentileAggregationFactoryConfiguration percentileConfig = (PercentileAggregationFactoryConfiguration) config;
+		    final KeyCreator keyCreator = (percentileConfig.getKeyCreator() != null) ? getKeyCreator(percentileConfig.getKeyCreator()) : NeedleIdKeyCreator.INSTANCE;
+		    final String aggregationName = (percentileConfig.getAggregationName() != null) ? percentileConfig.getAggregationName() : PercentileAggregation.AGGREGATION_NAME;
+		    final long maxDuration = (percentileConfig.getMaxDuration() != null) ? percentileConfig.getMaxDuration() : PercentileAggregationFactory.DEFAULT_MAX_DURATION_MILLIS;
+		    final int significantDigits = (percentileConfig.getSignificantDigits() != null) ? percentileConfig.getSignificantDigits() : PercentileAggregationFactory.DEFAULT_SIGNIFICANT_DIGITS;
+		    worker.addAggregationFactory(limitAggregations(config, new PercentileAggregationFactory(keyCreator, aggregationName, maxDuration, significantDigits)));
+		} else if (config instanceof WindowedPercentileAggregationFactoryConfiguration) {
+		    final WindowedPercentileAggregationFactoryConfiguration windowedConfig = (WindowedPercentileAggregationFactoryConfiguration) config;
+		    final KeyCreator keyCreator = (windowedConfig.getKeyCreator() != null) ? getKeyCreator(windowedConfig.getKeyCreator()) : NeedleIdKeyCreator.INSTANCE;
+		    final String aggregationName = (windowedConfig.getAggregationName() != null) ? windowedConfig.getAggregationName() : WindowedPercentileAggregation.AGGREGATION_NAME;
+		    final int bucketCount = (windowedConfig.getBucketCount() != null) ? windowedConfig.getBucketCount() : WindowedExecutionAggregationFactory.DEFAULT_BUCKET_COUNT;
+		    final long bucketInterval = (windowedConfig.getBucketInterval() != null) ? windowedConfig.getBucketInterval() : WindowedExecutionAggregationFactory.DEFAULT_BUCKET_INTERVAL_MILLIS;
+		    final long maxDuration = (windowedConfig.getMaxDuration() != null) ? windowedConfig.getMaxDuration() : PercentileAggregationFactory.DEFAULT_MAX_DURATION_MILLIS;
+		    final int significantDigits = (windowedConfig.getSignificantDigits() != null) ? windowedConfig.getSignificantDigits() : WindowedPercentileAggregationFactory.DEFAULT_SIGNIFICANT_DIGITS;
+		    worker.addAggregationFactory(limitAggregations(config, new WindowedPercentileAggregationFactory(keyCreator, aggregationName, bucketCount, bucketInterval, maxDuration, significantDigits)));
+		} else if (config instanceof WindowedExecutionAggregationFactoryConfiguration) {
+		    final WindowedExecutionAggregationFactoryConfiguration windowedConfig = (WindowedExecutionAggregationFactoryConfiguration) config;
+		    final KeyCreator keyCreator = (windowedConfig.getKeyCreator() != null) ? getKeyCreator(windowedConfig.getKeyCreator()) : NeedleIdKeyCreator.INSTANCE;
+		    final String aggregationName = (windowedConfig.getAggregationName() != null) ? windowedConfig.getAggregationName() : WindowedExecutionAggregation.AGGREGATION_NAME;
+		    final int bucketCount = (windowedConfig.getBucketCount() != null) ? windowedConfig.getBucketCount() : WindowedExecutionAggregationFactory.DEFAULT_BUCKET_COUNT;
+		    final long bucketInterval = (windowedConfig.getBucketInterval() != null) ? windowedConfig.getBucketInterval() : WindowedExecutionAggregationFactory.DEFAULT_BUCKET_INTERVAL_MILLIS;
+		    worker.addAggregationFactory(limitAggregations(config, new WindowedExecutionAggregationFactory(keyCreator, aggregationName, bucketCount, bucketInterval)));
 		} else if (config instanceof CustomAggregationFactoryConfiguration) {
 		    final CustomAggregationFactoryConfiguration customConfig = (CustomAggregationFactoryConfiguration) config;
 		    try {
@@ -240,6 +310,49 @@ public class ConfigurationManager {
 	return configuration;
     }
 
+    private static <FACTORY extends AbstractAggregationFactory<?>> FACTORY limitAggregations(final AggregationFactoryConfiguration config, final FACTORY factory) {
+	if (config.getMaxAggregations() != null) {
+	    factory.setMaxAggregations(config.getMaxAggregations());
+	}
+	if (config.getMaxChildAggregations() != null) {
+	    factory.setMaxChildAggregations(config.getMaxChildAggregations());
+	}
+	return factory;
+    }
+
+    private static OverflowPolicy getOverflowPolicy(final net.sf.needles.configuration.OverflowPolicy overflowPolicy) {
+	switch (overflowPolicy) {
+	    case DROP_NEWEST: {
+		return OverflowPolicy.DROP_NEWEST;
+	    }
+	    case DROP_OLDEST: {
+		return OverflowPolicy.DROP_OLDEST;
+	    }
+	    case BLOCK: {
+		return OverflowPolicy.BLOCK;
+	    }
+	    case SAMPLE: {
+		return OverflowPolicy.SAMPLE;
+	    }
+	}
+	throw new IllegalArgumentException("No known overflowPolicy found for: " + ((overflowPolicy != null) ? overflowPolicy.name() : "null"));
+    }
+
+    private static NeedleRetention getNeedleRetention(final net.sf.needles.configuration.NeedleRetention needleRetention) {
+	switch (needleRetention) {
+	    case KEEP_ALL: {
+		return NeedleRetention.KEEP_ALL;
+	    }
+	    case KEEP_LAST: {
+		return NeedleRetention.KEEP_LAST;
+	    }
+	    case DROP_ON_STOP: {
+		return NeedleRetention.DROP_ON_STOP;
+	    }
+	}
+	throw new IllegalArgumentException("No known needleRetention found for: " + ((needleRetention != null) ? needleRetention.name() : "null"));
+    }
+
     private static KeyCreator getKeyCreator(final net.sf.needles.configuration.KeyCreator keyCreator) {
 	switch (keyCreator) {
 	    case NEEDLE_ID_KEY_CREATOR: {
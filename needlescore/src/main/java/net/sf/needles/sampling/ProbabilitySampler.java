@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2013,
+ * Marco Brade
+ * 							[https://github.com/mbrade]
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice,
+ *       this list of conditions and the following disclaimer in the documentation
+ *       and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.sf.needles.sampling;
+
+import java.util.Random;
+
+/**
+ * Samples root needles with a fixed probability. A sampled needle tree stands for 1/probability trees. Fractions of that weight get rounded randomly, so the weights add up to the total amount of
+ * root needles on average.
+ */
+public class ProbabilitySampler implements Sampler {
+
+    private static final ThreadLocal<Random> random = new ThreadLocal<Random>() {
+	@Override
+	protected Random initialValue() {
+	    return new Random();
+	}
+    };
+    private final double probability;
+    private final double weight;
+
+    /**
+     * Instantiates a new probability sampler.
+     * 
+     * @param probability
+     *            the probability a root needle gets sampled, greater than 0 and at most 1
+     */
+    public ProbabilitySampler(final double probability) {
+	if (!(probability > 0.0 && probability <= 1.0)) {
+	    throw new IllegalArgumentException("The probability has to be greater than 0 and at most 1 but was: " + probability);
+	}
+	this.probability = probability;
+	this.weight = 1.0 / probability;
+    }
+
+    /**
+     * Gets the probability a root needle gets sampled.
+     * 
+     * @return the probability
+     */
+    public double getProbability() {
+	return probability;
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.needles.sampling.Sampler#sample()
+     */
+    @Override
+    public long sample() {
+	if (probability >= 1.0) {
+	    return 1;
+	}
+	final Random current = random.get();
+	if (current.nextDouble() >= probability) {
+	    return 0;
+	}
+	final long result = (long) weight;
+	return (current.nextDouble() < weight - result) ? result + 1 : result;
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2013,
+ * Marco Brade
+ * 							[https://github.com/mbrade]
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice,
+ *       this list of conditions and the following disclaimer in the documentation
+ *       and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.sf.needles.sampling;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Samples at most the given amount of root needles per second with a token bucket. The bucket holds up to one second of tokens, so short bursts after idle periods get sampled completely. Root
+ * needles not sampled get counted per thread and added to the weight of the next one sampled on the same thread.
+ */
+public class RateLimitingSampler implements Sampler {
+
+    private static final long NANOS_PER_SECOND = 1000000000L;
+    private final int rate;
+    private final long nanosPerToken;
+    private final long capacityNanos;
+    //point in time the bucket has been empty, tokens are the nanos elapsed since then divided by nanosPerToken
+    private final AtomicLong emptyNanos;
+    private final ThreadLocal<long[]> skipped = new ThreadLocal<long[]>() {
+	@Override
+	protected long[] initialValue() {
+	    return new long[1];
+	}
+    };
+
+    /**
+     * Instantiates a new rate limiting sampler.
+     * 
+     * @param rate
+     *            the maximum amount of sampled root needles per second
+     */
+    public RateLimitingSampler(final int rate) {
+	if (rate < 1) {
+	    throw new IllegalArgumentException("The rate has to be at least 1 but was: " + rate);
+	}
+	this.rate = rate;
+	nanosPerToken = NANOS_PER_SECOND / rate;
+	capacityNanos = nanosPerToken * rate;
+	emptyNanos = new AtomicLong(System.nanoTime() - capacityNanos);
+    }
+
+    /**
+     * Gets the amount of root needles the current thread didn't sample since its last sampled one.
+     * 
+     * @return the skipped count
+     */
+    public long getSkippedCount() {
+	return skipped.get()[0];
+    }
+
+    /**
+     * Gets the maximum amount of sampled root needles per second.
+     * 
+     * @return the rate
+     */
+    public int getRate() {
+	return rate;
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.needles.sampling.Sampler#sample()
+     */
+    @Override
+    public long sample() {
+	final long[] count = skipped.get();
+	if (acquire()) {
+	    final long result = count[0] + 1;
+	    count[0] = 0;
+	    return result;
+	}
+	count[0]++;
+	return 0;
+    }
+
+    private boolean acquire() {
+	final long now = System.nanoTime();
+	while (true) {
+	    final long current = emptyNanos.get();
+	    //never store more than the capacity of the bucket
+	    final long start = (now - current > capacityNanos) ? now - capacityNanos : current;
+	    final long next = start + nanosPerToken;
+	    if (next - now > 0) {
+		return false;
+	    }
+	    if (emptyNanos.compareAndSet(current, next)) {
+		return true;
+	    }
+	}
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2013,
+ * Marco Brade
+ * 							[https://github.com/mbrade]
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice,
+ *       this list of conditions and the following disclaimer in the documentation
+ *       and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.sf.needles.util;
+
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Growable array for a single writing thread and any number of reading threads. Elements can only be appended. Readers get a consistent view of all elements added before the size they read,
+ * without any locking and without copying the elements.
+ * 
+ * @param <E>
+ *            the element type
+ */
+public final class AppendOnlyList<E> {
+
+    private static final int INITIAL_CAPACITY = 4;
+
+    private volatile Object[] elements;
+    //written after the element, so reading the size publishes all elements below it
+    private volatile int size;
+
+    /**
+     * Instantiates a new empty list.
+     */
+    public AppendOnlyList() {
+	elements = new Object[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Appends the element. Must only be called by one thread at a time.
+     * 
+     * @param element
+     *            the element
+     */
+    public void add(final E element) {
+	final int index = size;
+	Object[] current = elements;
+	if (index == current.length) {
+	    final Object[] grown = new Object[index + (index >> 1) + 1];
+	    System.arraycopy(current, 0, grown, 0, index);
+	    elements = grown;
+	    current = grown;
+	}
+	current[index] = element;
+	size = index + 1;
+    }
+
+    /**
+     * Gets the element at the given index.
+     * 
+     * @param index
+     *            the index
+     * @return the element
+     */
+    @SuppressWarnings("unchecked")
+    public E get(final int index) {
+	if (index < 0 || index >= size) {
+	    throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+	}
+	return (E) elements[index];
+    }
+
+    /**
+     * Checks if no element has been added yet.
+     * 
+     * @return true, if empty
+     */
+    public boolean isEmpty() {
+	return size == 0;
+    }
+
+    /**
+     * Gets the amount of elements.
+     * 
+     * @return the size
+     */
+    public int size() {
+	return size;
+    }
+
+    /**
+     * Returns an unmodifiable view of the elements added so far. The view doesn't copy the elements and doesn't see elements added later.
+     * 
+     * @param <T>
+     *            the element type of the view
+     * @return the view
+     */
+    public <T> List<T> snapshot() {
+	final int currentSize = size;
+	if (currentSize == 0) {
+	    return Collections.emptyList();
+	}
+	return new Snapshot<T>(elements, currentSize);
+    }
+
+    /**
+     * Returns an unmodifiable view of the elements of the given list or an empty list if it is null.
+     * 
+     * @param <T>
+     *            the element type of the view
+     * @param list
+     *            the list, may be null
+     * @return the view
+     */
+    public static <T> List<T> snapshot(final AppendOnlyList<? extends T> list) {
+	return (list == null) ? Collections.<T> emptyList() : list.<T> snapshot();
+    }
+
+    /**
+     * Fixed size view on the elements of a {@link AppendOnlyList}.
+     */
+    private static final class Snapshot<T> extends AbstractList<T> implements RandomAccess, Serializable {
+
+	private static final long serialVersionUID = 1L;
+	private final Object[] elements;
+	private final int size;
+
+	private Snapshot(final Object[] elements, final int size) {
+	    this.elements = elements;
+	    this.size = size;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public T get(final int index) {
+	    if (index < 0 || index >= size) {
+		throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+	    }
+	    return (T) elements[index];
+	}
+
+	@Override
+	public int size() {
+	    return size;
+	}
+
+	private Object writeReplace() {
+	    return new ArrayList<T>(this);
+	}
+    }
+}
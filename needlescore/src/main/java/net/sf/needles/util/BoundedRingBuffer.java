@@ -0,0 +1,173 @@
+/*
+ * Copyright (c) 2013,
+ * Marco Brade
+ * 							[https://github.com/mbrade]
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice,
+ *       this list of conditions and the following disclaimer in the documentation
+ *       and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.sf.needles.util;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded queue on a preallocated ring of slots. Every slot carries a sequence telling producers whether it is free for their position and consumers whether it is filled for theirs, so producers
+ * and consumers only compete by compare and set on the tail respectively the head position and never take a lock. A full queue rejects further elements instead of growing.
+ * 
+ * @param <E>
+ *            the element type
+ */
+public final class BoundedRingBuffer<E> {
+
+    private final int mask;
+    private final AtomicLongArray sequences;
+    private final AtomicReferenceArray<E> elements;
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * Instantiates a new ring buffer.
+     * 
+     * @param capacity
+     *            the minimum capacity, rounded up to the next power of two of at least 2
+     */
+    public BoundedRingBuffer(final int capacity) {
+	if (capacity < 1 || capacity > 1 << 30) {
+	    throw new IllegalArgumentException("The capacity has to be between 1 and 2^30 but was: " + capacity);
+	}
+	//a single slot could not tell a filled slot from a free one of the next round
+	int size = 2;
+	while (size < capacity) {
+	    size <<= 1;
+	}
+	this.mask = size - 1;
+	this.sequences = new AtomicLongArray(size);
+	this.elements = new AtomicReferenceArray<E>(size);
+	for (int i = 0; i < size; i++) {
+	    sequences.set(i, i);
+	}
+    }
+
+    /**
+     * Removes up to the given amount of the oldest elements and adds them to the given collection. The filled slots in a row get claimed with a single compare and set on the head position.
+     * 
+     * @param collection
+     *            the collection
+     * @param maxElements
+     *            the maximum amount of elements removed
+     * @return the amount of elements removed
+     */
+    public int drainTo(final Collection<? super E> collection, final int maxElements) {
+	long position = head.get();
+	while (true) {
+	    int available = 0;
+	    while (available < maxElements && sequences.get((int) ((position + available) & mask)) == position + available + 1) {
+		available++;
+	    }
+	    if (available == 0) {
+		return 0;
+	    }
+	    if (head.compareAndSet(position, position + available)) {
+		for (int i = 0; i < available; i++) {
+		    final int index = (int) ((position + i) & mask);
+		    collection.add(elements.get(index));
+		    elements.set(index, null);
+		    sequences.set(index, position + i + mask + 1);
+		}
+		return available;
+	    }
+	    position = head.get();
+	}
+    }
+
+    public int getCapacity() {
+	return mask + 1;
+    }
+
+    /**
+     * Adds the given element if the queue is not full.
+     * 
+     * @param element
+     *            the element, not null
+     * @return true, if the element was added
+     */
+    public boolean offer(final E element) {
+	if (element == null) {
+	    throw new IllegalArgumentException("The element shouldn't be null.");
+	}
+	long position = tail.get();
+	while (true) {
+	    final int index = (int) (position & mask);
+	    final long difference = sequences.get(index) - position;
+	    if (difference == 0) {
+		if (tail.compareAndSet(position, position + 1)) {
+		    elements.set(index, element);
+		    sequences.set(index, position + 1);
+		    return true;
+		}
+	    } else if (difference < 0) {
+		//the slot still holds the element of the previous round
+		return false;
+	    }
+	    position = tail.get();
+	}
+    }
+
+    /**
+     * Removes the oldest element.
+     * 
+     * @return the element or null if the queue is empty
+     */
+    public E poll() {
+	long position = head.get();
+	while (true) {
+	    final int index = (int) (position & mask);
+	    final long difference = sequences.get(index) - (position + 1);
+	    if (difference == 0) {
+		if (head.compareAndSet(position, position + 1)) {
+		    final E result = elements.get(index);
+		    elements.set(index, null);
+		    sequences.set(index, position + mask + 1);
+		    return result;
+		}
+	    } else if (difference < 0) {
+		//the slot has not been filled for this round yet
+		return null;
+	    }
+	    position = head.get();
+	}
+    }
+
+    /**
+     * Gets the amount of elements, which may be outdated as soon as it is returned.
+     * 
+     * @return the size
+     */
+    public int size() {
+	final long size = tail.get() - head.get();
+	return (int) Math.max(0, Math.min(size, getCapacity()));
+    }
+}
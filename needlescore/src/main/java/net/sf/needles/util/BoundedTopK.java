@@ -0,0 +1,190 @@
+/*
+ * Copyright (c) 2013,
+ * Marco Brade
+ * 							[https://github.com/mbrade]
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice,
+ *       this list of conditions and the following disclaimer in the documentation
+ *       and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.sf.needles.util;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import net.sf.needles.NeedleInfo;
+
+/**
+ * Keeps the needles with the longest durations up to a fixed capacity. Once the capacity is reached, the shortest kept duration becomes a volatile admission threshold, so every needle not exceeding
+ * it is rejected with one comparison and without a lock. Only admitted needles, which get rarer the longer the structure is fed, replace the shortest kept needle within a small heap under the
+ * monitor of this instance.
+ */
+public final class BoundedTopK implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+    private final int capacity;
+    private final long[] durations;
+    private final NeedleInfo[] needles;
+    private int size;
+    private volatile long threshold = -1;
+
+    /**
+     * Instantiates a new bounded top-K structure.
+     * 
+     * @param capacity
+     *            the amount of needles kept
+     */
+    public BoundedTopK(final int capacity) {
+	if (capacity < 1) {
+	    throw new IllegalArgumentException("The capacity has to be at least 1 but was: " + capacity);
+	}
+	this.capacity = capacity;
+	this.durations = new long[capacity];
+	this.needles = new NeedleInfo[capacity];
+    }
+
+    /**
+     * Offers all kept needles to the given target and empties this instance.
+     * 
+     * @param target
+     *            the target
+     */
+    public void drainTo(final BoundedTopK target) {
+	final NeedleInfo[] drained;
+	synchronized (this) {
+	    if (size == 0) {
+		return;
+	    }
+	    drained = Arrays.copyOf(needles, size);
+	    Arrays.fill(needles, null);
+	    size = 0;
+	    threshold = -1;
+	}
+	for (final NeedleInfo needle : drained) {
+	    target.offer(needle);
+	}
+    }
+
+    public int getCapacity() {
+	return capacity;
+    }
+
+    /**
+     * Gets the kept needles.
+     * 
+     * @return the needles, the longest first
+     */
+    public List<NeedleInfo> getNeedles() {
+	final List<NeedleInfo> result;
+	synchronized (this) {
+	    result = new ArrayList<NeedleInfo>(Arrays.asList(needles).subList(0, size));
+	}
+	Collections.sort(result, NeedleDurationComparator.INSTANCE);
+	return result;
+    }
+
+    /**
+     * Gets the duration a needle has to exceed to be admitted.
+     * 
+     * @return the shortest kept duration in nanoseconds or -1 as long as the capacity is not reached
+     */
+    public long getThreshold() {
+	return threshold;
+    }
+
+    /**
+     * Offers the given needle.
+     * 
+     * @param needle
+     *            the needle
+     * @return true, if the needle was admitted
+     */
+    public boolean offer(final NeedleInfo needle) {
+	final long duration = needle.getDurationNanos();
+	if (duration <= threshold) {
+	    return false;
+	}
+	synchronized (this) {
+	    if (size < capacity) {
+		durations[size] = duration;
+		needles[size] = needle;
+		siftUp(size++);
+		if (size == capacity) {
+		    threshold = durations[0];
+		}
+	    } else if (duration > durations[0]) {
+		durations[0] = duration;
+		needles[0] = needle;
+		siftDown(0);
+		threshold = durations[0];
+	    } else {
+		return false;
+	    }
+	}
+	return true;
+    }
+
+    private void siftDown(int index) {
+	while (true) {
+	    final int left = 2 * index + 1;
+	    if (left >= size) {
+		return;
+	    }
+	    final int right = left + 1;
+	    final int smallest = (right < size && durations[right] < durations[left]) ? right : left;
+	    if (durations[index] <= durations[smallest]) {
+		return;
+	    }
+	    swap(index, smallest);
+	    index = smallest;
+	}
+    }
+
+    private void siftUp(int index) {
+	while (index > 0) {
+	    final int parent = (index - 1) / 2;
+	    if (durations[parent] <= durations[index]) {
+		return;
+	    }
+	    swap(index, parent);
+	    index = parent;
+	}
+    }
+
+    private void swap(final int first, final int second) {
+	final long duration = durations[first];
+	final NeedleInfo needle = needles[first];
+	durations[first] = durations[second];
+	needles[first] = needles[second];
+	durations[second] = duration;
+	needles[second] = needle;
+    }
+
+    private synchronized void writeObject(final ObjectOutputStream out) throws IOException {
+	out.defaultWriteObject();
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2013,
+ * Marco Brade
+ * 							[https://github.com/mbrade]
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice,
+ *       this list of conditions and the following disclaimer in the documentation
+ *       and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.sf.needles.util;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Resolves the {@link StackTraceElement} of a call site. If the JVM provides <code>java.lang.StackWalker</code> only the frames up to the requested one get walked, on older JVMs
+ * {@link ExceptionUtils#getStackTraceElement(Throwable, int)} is used. Resolving stays expensive either way, so the {@link net.sf.needles.NeedleContext} keeps the stop elements per
+ * needle id and a {@link net.sf.needles.NeedleCallSite} keeps its start element, later needles of those call sites skip the walk.
+ */
+public final class CallSiteResolver {
+
+    private final static Logger LOG = Logger.getLogger(CallSiteResolver.class);
+    private static final AtomicReferenceArray<Object> frameFunctions = new AtomicReferenceArray<Object>(16);
+    private static volatile Object stackWalker;
+    private static Class<?> functionClass;
+    private static Method walkMethod;
+    private static Method iteratorMethod;
+    private static Method toStackTraceElementMethod;
+
+    static {
+	try {
+	    final Class<?> stackWalkerClass = Class.forName("java.lang.StackWalker");
+	    final Class<?> stackFrameClass = Class.forName("java.lang.StackWalker$StackFrame");
+	    final Class<?> streamClass = Class.forName("java.util.stream.Stream");
+	    functionClass = Class.forName("java.util.function.Function");
+	    walkMethod = stackWalkerClass.getMethod("walk", functionClass);
+	    iteratorMethod = streamClass.getMethod("iterator");
+	    toStackTraceElementMethod = stackFrameClass.getMethod("toStackTraceElement");
+	    stackWalker = stackWalkerClass.getMethod("getInstance").invoke(null);
+	} catch (final Exception e) {
+	    stackWalker = null;
+	}
+    }
+
+    private CallSiteResolver() {
+    }
+
+    /**
+     * Gets the stack trace element of the given index. The index is counted the same way as for a {@link Throwable} created by the caller of this method, so index 0 is the calling method itself.
+     * 
+     * @param index
+     *            the index
+     * @return the stack trace element or null if the stack is not deep enough
+     */
+    public static StackTraceElement getStackTraceElement(final int index) {
+	final Object walker = stackWalker;
+	if (walker != null) {
+	    try {
+		final Object frame = walkMethod.invoke(walker, getFrameFunction(index + 1));
+		return (frame != null) ? (StackTraceElement) toStackTraceElementMethod.invoke(frame) : null;
+	    } catch (final Exception e) {
+		stackWalker = null;
+		LOG.info("Failed to walk the stack with java.lang.StackWalker, falling back to Throwable based stack traces", e);
+	    }
+	}
+	return ExceptionUtils.getStackTraceElement(new Exception(), index + 1);
+    }
+
+    /**
+     * Checks if the stack gets walked by <code>java.lang.StackWalker</code>.
+     * 
+     * @return true, if stack walker is used
+     */
+    public static boolean isStackWalkerAvailable() {
+	return stackWalker != null;
+    }
+
+    private static Object getFrameFunction(final int skip) {
+	if (skip >= frameFunctions.length()) {
+	    return createFrameFunction(skip);
+	}
+	Object result = frameFunctions.get(skip);
+	if (result == null) {
+	    result = createFrameFunction(skip);
+	    frameFunctions.compareAndSet(skip, null, result);
+	}
+	return result;
+    }
+
+    private static Object createFrameFunction(final int skip) {
+	return Proxy.newProxyInstance(CallSiteResolver.class.getClassLoader(), new Class<?>[] { functionClass }, new FrameFunction(skip));
+    }
+
+    /**
+     * Function handed to <code>StackWalker.walk</code> returning the first frame after skipping the given amount of frames.
+     */
+    private static class FrameFunction implements InvocationHandler {
+
+	private final int skip;
+
+	private FrameFunction(final int skip) {
+	    this.skip = skip;
+	}
+
+	@Override
+	public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+	    if ("apply".equals(method.getName())) {
+		//the frames get walked lazily while iterating, so only the skipped ones get visited
+		final Iterator<?> frames = (Iterator<?>) iteratorMethod.invoke(args[0]);
+		for (int i = 0; i < skip && frames.hasNext(); i++) {
+		    frames.next();
+		}
+		return frames.hasNext() ? frames.next() : null;
+	    } else if ("hashCode".equals(method.getName())) {
+		return Integer.valueOf(System.identityHashCode(proxy));
+	    } else if ("equals".equals(method.getName())) {
+		return Boolean.valueOf(proxy == args[0]);
+	    }
+	    return "FrameFunction[skip=" + skip + "]";
+	}
+    }
+}
@@ -0,0 +1,249 @@
+/*
+ * Copyright (c) 2013,
+ * Marco Brade
+ * 							[https://github.com/mbrade]
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice,
+ *       this list of conditions and the following disclaimer in the documentation
+ *       and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.sf.needles.util;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded concurrent map evicting with the CLOCK algorithm. Lookups are lock free and only mark the entry as referenced. Inserting into a full cache sweeps a clock hand over the entries, giving
+ * every referenced entry a second chance and evicting the first one which hasn't been referenced since the last sweep. Hits, misses and evictions are counted.
+ * 
+ * @param <K>
+ *            the key type
+ * @param <V>
+ *            the value type
+ */
+public final class ClockCache<K, V> {
+
+    private final ConcurrentHashMap<K, Entry<K, V>> entries = new ConcurrentHashMap<K, Entry<K, V>>();
+    private final ReentrantLock lock = new ReentrantLock();
+    //counted by every lookup of every thread, so they are striped to keep them from contending
+    private final StripedCounter hits = new StripedCounter();
+    private final StripedCounter misses = new StripedCounter();
+    private final AtomicLong evictions = new AtomicLong();
+    //guarded by lock
+    private Entry<K, V>[] clock;
+    private int hand;
+    private int size;
+
+    /**
+     * Instantiates a new cache.
+     * 
+     * @param maximumSize
+     *            the maximum amount of entries
+     */
+    public ClockCache(final int maximumSize) {
+	clock = newClock(maximumSize);
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static <K, V> Entry<K, V>[] newClock(final int maximumSize) {
+	if (maximumSize < 1) {
+	    throw new IllegalArgumentException("The maximum size has to be at least 1 but was: " + maximumSize);
+	}
+	return new Entry[maximumSize];
+    }
+
+    /**
+     * Removes all entries. The counters are kept.
+     */
+    public void clear() {
+	lock.lock();
+	try {
+	    entries.clear();
+	    clock = newClock(clock.length);
+	    hand = 0;
+	    size = 0;
+	} finally {
+	    lock.unlock();
+	}
+    }
+
+    /**
+     * Gets the value of the given key and marks it as referenced.
+     * 
+     * @param key
+     *            the key
+     * @return the value or null if not cached
+     */
+    public V get(final K key) {
+	final Entry<K, V> entry = entries.get(key);
+	if (entry == null) {
+	    misses.increment();
+	    return null;
+	}
+	hits.increment();
+	if (!entry.referenced) {
+	    entry.referenced = true;
+	}
+	return entry.value;
+    }
+
+    /**
+     * Gets the amount of evicted entries.
+     * 
+     * @return the eviction count
+     */
+    public long getEvictionCount() {
+	return evictions.get();
+    }
+
+    /**
+     * Gets the amount of lookups which found an entry.
+     * 
+     * @return the hit count
+     */
+    public long getHitCount() {
+	return hits.sum();
+    }
+
+    /**
+     * Gets the maximum amount of entries.
+     * 
+     * @return the maximum size
+     */
+    public int getMaximumSize() {
+	lock.lock();
+	try {
+	    return clock.length;
+	} finally {
+	    lock.unlock();
+	}
+    }
+
+    /**
+     * Gets the amount of lookups which didn't find an entry.
+     * 
+     * @return the miss count
+     */
+    public long getMissCount() {
+	return misses.sum();
+    }
+
+    /**
+     * Adds the value if no value is cached for the key yet. If the cache is full another entry gets evicted.
+     * 
+     * @param key
+     *            the key
+     * @param value
+     *            the value
+     * @return the already cached value or null if the given one got added
+     */
+    public V putIfAbsent(final K key, final V value) {
+	Entry<K, V> entry = entries.get(key);
+	if (entry != null) {
+	    return entry.value;
+	}
+	lock.lock();
+	try {
+	    entry = entries.get(key);
+	    if (entry != null) {
+		return entry.value;
+	    }
+	    entry = new Entry<K, V>(key, value);
+	    if (size < clock.length) {
+		clock[size++] = entry;
+	    } else {
+		clock[evict()] = entry;
+	    }
+	    entries.put(key, entry);
+	    return null;
+	} finally {
+	    lock.unlock();
+	}
+    }
+
+    /**
+     * Changes the maximum amount of entries. If the cache holds more entries than the new maximum the surplus gets evicted.
+     * 
+     * @param maximumSize
+     *            the new maximum size
+     */
+    public void setMaximumSize(final int maximumSize) {
+	final Entry<K, V>[] resized = newClock(maximumSize);
+	lock.lock();
+	try {
+	    while (size > maximumSize) {
+		final int index = evict();
+		clock[index] = clock[--size];
+		clock[size] = null;
+	    }
+	    System.arraycopy(clock, 0, resized, 0, size);
+	    clock = resized;
+	    hand = (size == 0) ? 0 : hand % size;
+	} finally {
+	    lock.unlock();
+	}
+    }
+
+    /**
+     * Gets the amount of cached entries.
+     * 
+     * @return the size
+     */
+    public int size() {
+	return entries.size();
+    }
+
+    /**
+     * Moves the clock hand to the first entry which hasn't been referenced since the last sweep and removes it. Must be called with the lock held and a non empty clock.
+     * 
+     * @return the index of the evicted entry
+     */
+    private int evict() {
+	while (true) {
+	    if (hand >= size) {
+		hand = 0;
+	    }
+	    final Entry<K, V> candidate = clock[hand];
+	    if (candidate.referenced) {
+		candidate.referenced = false;
+		hand++;
+	    } else {
+		entries.remove(candidate.key, candidate);
+		evictions.incrementAndGet();
+		return hand++;
+	    }
+	}
+    }
+
+    private static final class Entry<K, V> {
+
+	private final K key;
+	private final V value;
+	private volatile boolean referenced;
+
+	private Entry(final K key, final V value) {
+	    this.key = key;
+	    this.value = value;
+	}
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright (c) 2013,
+ * Marco Brade
+ * 							[https://github.com/mbrade]
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice,
+ *       this list of conditions and the following disclaimer in the documentation
+ *       and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.sf.needles.util;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.sf.needles.NeedleInfo;
+
+/**
+ * Count, total, minimum and maximum of durations recorded by many threads without locks. Count and total are kept within {@link StripedCounter}s, the extremes get updated with compare and set.
+ */
+public final class DurationAccumulator implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+    private transient StripedCounter count = new StripedCounter();
+    private transient StripedCounter total = new StripedCounter();
+    private transient AtomicLong maximum = new AtomicLong(0);
+    private transient AtomicLong minimum = new AtomicLong(Long.MAX_VALUE);
+
+    /**
+     * Adds the values of the given accumulator.
+     * 
+     * @param other
+     *            the other accumulator
+     */
+    public void add(final DurationAccumulator other) {
+	final long otherCount = other.getCount();
+	if (otherCount > 0) {
+	    add(otherCount, other.getTotal(), other.minimum.get(), other.getMaximum());
+	}
+    }
+
+    /**
+     * Adds already accumulated values.
+     * 
+     * @param count
+     *            the amount of durations
+     * @param total
+     *            the sum of the durations
+     * @param minimum
+     *            the smallest duration
+     * @param maximum
+     *            the largest duration
+     */
+    public void add(final long count, final long total, final long minimum, final long maximum) {
+	this.count.add(count);
+	this.total.add(total);
+	updateMaximum(maximum);
+	updateMinimum(minimum);
+    }
+
+    /**
+     * Gets the average duration.
+     * 
+     * @return the average or 0 if nothing has been recorded
+     */
+    public double getAverage() {
+	final long result = count.sum();
+	return (result > 0) ? total.sum() / (double) result : 0.0;
+    }
+
+    public long getCount() {
+	return count.sum();
+    }
+
+    /**
+     * Gets the largest duration.
+     * 
+     * @return the maximum or 0 if nothing has been recorded
+     */
+    public long getMaximum() {
+	return maximum.get();
+    }
+
+    /**
+     * Gets the smallest duration.
+     * 
+     * @return the minimum or {@link Long#MAX_VALUE} if nothing has been recorded
+     */
+    public long getMinimum() {
+	return minimum.get();
+    }
+
+    public long getTotal() {
+	return total.sum();
+    }
+
+    /**
+     * Records a duration.
+     * 
+     * @param duration
+     *            the duration
+     * @param weight
+     *            how often the duration occurred
+     */
+    public void record(final long duration, final long weight) {
+	count.add(weight);
+	total.add(weight * duration);
+	updateMaximum(duration);
+	updateMinimum(duration);
+    }
+
+    /**
+     * Records the durations of the given needles, weighted by {@link NeedleInfo#getSampleWeight()}. The counters and extremes get updated once for all of them.
+     * 
+     * @param needles
+     *            the needles
+     */
+    public void recordAll(final List<NeedleInfo> needles) {
+	long batchCount = 0;
+	long batchTotal = 0;
+	long batchMaximum = 0;
+	long batchMinimum = Long.MAX_VALUE;
+	for (final NeedleInfo needle : needles) {
+	    final long duration = needle.getDurationNanos();
+	    final long weight = needle.getSampleWeight();
+	    batchCount += weight;
+	    batchTotal += weight * duration;
+	    batchMaximum = Math.max(batchMaximum, duration);
+	    batchMinimum = Math.min(batchMinimum, duration);
+	}
+	if (batchCount > 0) {
+	    add(batchCount, batchTotal, batchMinimum, batchMaximum);
+	}
+    }
+
+    private void readObject(final ObjectInputStream in) throws IOException, ClassNotFoundException {
+	in.defaultReadObject();
+	count = new StripedCounter();
+	count.add(in.readLong());
+	total = new StripedCounter();
+	total.add(in.readLong());
+	minimum = new AtomicLong(in.readLong());
+	maximum = new AtomicLong(in.readLong());
+    }
+
+    private void writeObject(final ObjectOutputStream out) throws IOException {
+	out.defaultWriteObject();
+	out.writeLong(count.sum());
+	out.writeLong(total.sum());
+	out.writeLong(minimum.get());
+	out.writeLong(maximum.get());
+    }
+
+    private void updateMaximum(final long value) {
+	long current;
+	while (value > (current = maximum.get()) && !maximum.compareAndSet(current, value)) {
+	    //retry with the value set concurrently
+	}
+    }
+
+    private void updateMinimum(final long value) {
+	long current;
+	while (value < (current = minimum.get()) && !minimum.compareAndSet(current, value)) {
+	    //retry with the value set concurrently
+	}
+    }
+}
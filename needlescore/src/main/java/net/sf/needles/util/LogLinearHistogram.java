@@ -0,0 +1,305 @@
+/*
+ * Copyright (c) 2013,
+ * Marco Brade
+ * 							[https://github.com/mbrade]
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice,
+ *       this list of conditions and the following disclaimer in the documentation
+ *       and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.sf.needles.util;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import net.sf.needles.NeedleInfo;
+
+/**
+ * Histogram of long values with a fixed memory footprint and a configurable relative precision, following the layout of HdrHistogram. The values are split into buckets of power of two ranges, every
+ * bucket is divided into the same amount of linear sub buckets. With n significant digits every recorded value is counted within a range not wider than 10^-n of the value. Recording only increments
+ * an {@link AtomicLongArray} slot and is free of locks and allocations. Histograms with the same layout get merged slot by slot, others by re-recording.
+ */
+public final class LogLinearHistogram implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+    private final long highestTrackableValue;
+    private final int significantDigits;
+    private final int subBucketHalfCountMagnitude;
+    private final int subBucketHalfCount;
+    private final long subBucketMask;
+    private final int leadingZeroCountBase;
+    private final AtomicLongArray counts;
+    private final AtomicLong totalCount = new AtomicLong();
+    private final AtomicLong maximum = new AtomicLong(0);
+    private final AtomicLong minimum = new AtomicLong(Long.MAX_VALUE);
+
+    /**
+     * Instantiates a new histogram.
+     * 
+     * @param highestTrackableValue
+     *            the highest value tracked with the given precision, larger values are counted as this value
+     * @param significantDigits
+     *            the significant decimal digits kept for every value, from 1 to 5
+     */
+    public LogLinearHistogram(final long highestTrackableValue, final int significantDigits) {
+	if (significantDigits < 1 || significantDigits > 5) {
+	    throw new IllegalArgumentException("The significant digits have to be between 1 and 5 but were: " + significantDigits);
+	}
+	if (highestTrackableValue < 2) {
+	    throw new IllegalArgumentException("The highest trackable value has to be at least 2 but was: " + highestTrackableValue);
+	}
+	this.highestTrackableValue = highestTrackableValue;
+	this.significantDigits = significantDigits;
+	long largestValueWithSingleUnitResolution = 2;
+	for (int i = 0; i < significantDigits; i++) {
+	    largestValueWithSingleUnitResolution *= 10;
+	}
+	final int subBucketCountMagnitude = 64 - Long.numberOfLeadingZeros(largestValueWithSingleUnitResolution - 1);
+	subBucketHalfCountMagnitude = subBucketCountMagnitude - 1;
+	final int subBucketCount = 1 << subBucketCountMagnitude;
+	subBucketHalfCount = subBucketCount / 2;
+	subBucketMask = subBucketCount - 1;
+	leadingZeroCountBase = 64 - subBucketHalfCountMagnitude - 1;
+	int bucketCount = 1;
+	long smallestUntrackableValue = subBucketCount;
+	while (smallestUntrackableValue <= highestTrackableValue) {
+	    if (smallestUntrackableValue > Long.MAX_VALUE / 2) {
+		bucketCount++;
+		break;
+	    }
+	    smallestUntrackableValue <<= 1;
+	    bucketCount++;
+	}
+	counts = new AtomicLongArray((bucketCount + 1) * subBucketHalfCount);
+    }
+
+    /**
+     * Adds the counts of the given histogram.
+     * 
+     * @param other
+     *            the other histogram
+     */
+    public void add(final LogLinearHistogram other) {
+	final boolean sameLayout = highestTrackableValue == other.highestTrackableValue && significantDigits == other.significantDigits;
+	for (int i = 0; i < other.counts.length(); i++) {
+	    final long count = other.counts.get(i);
+	    if (count > 0) {
+		if (sameLayout) {
+		    counts.addAndGet(i, count);
+		    totalCount.addAndGet(count);
+		} else {
+		    doRecord(other.valueFromIndex(i), count);
+		}
+	    }
+	}
+	if (other.getTotalCount() > 0) {
+	    updateMaximum(other.maximum.get());
+	    updateMinimum(other.minimum.get());
+	}
+    }
+
+    /**
+     * Gets the highest value tracked with the configured precision.
+     * 
+     * @return the highest trackable value
+     */
+    public long getHighestTrackableValue() {
+	return highestTrackableValue;
+    }
+
+    /**
+     * Gets the largest recorded value.
+     * 
+     * @return the maximum or 0 if nothing has been recorded
+     */
+    public long getMaximum() {
+	return maximum.get();
+    }
+
+    /**
+     * Gets the smallest recorded value.
+     * 
+     * @return the minimum or 0 if nothing has been recorded
+     */
+    public long getMinimum() {
+	final long result = minimum.get();
+	return (result != Long.MAX_VALUE) ? result : 0;
+    }
+
+    public int getSignificantDigits() {
+	return significantDigits;
+    }
+
+    public long getTotalCount() {
+	return totalCount.get();
+    }
+
+    /**
+     * Gets the value at the given percentile. The result is the highest value counted within the same range as the value at the percentile, capped by the maximum.
+     * 
+     * @param percentile
+     *            the percentile from 0 to 100
+     * @return the value or 0 if nothing has been recorded
+     */
+    public long getValueAtPercentile(final double percentile) {
+	if (percentile < 0.0 || percentile > 100.0) {
+	    throw new IllegalArgumentException("The percentile has to be between 0 and 100 but was: " + percentile);
+	}
+	final long total = totalCount.get();
+	if (total == 0) {
+	    return 0;
+	}
+	final long countAtPercentile = Math.max(1, (long) Math.ceil(percentile / 100.0 * total));
+	long count = 0;
+	for (int i = 0; i < counts.length(); i++) {
+	    count += counts.get(i);
+	    if (count >= countAtPercentile) {
+		return Math.min(highestEquivalentValue(valueFromIndex(i)), getMaximum());
+	    }
+	}
+	return getMaximum();
+    }
+
+    /**
+     * Records the given value once.
+     * 
+     * @param value
+     *            the value, negative values are counted as 0
+     */
+    public void record(final long value) {
+	record(value, 1);
+    }
+
+    /**
+     * Records the given value.
+     * 
+     * @param value
+     *            the value, negative values are counted as 0
+     * @param count
+     *            how often the value occurred
+     */
+    public void record(final long value, final long count) {
+	final long recorded = Math.max(0, value);
+	doRecord(recorded, count);
+	updateMaximum(recorded);
+	updateMinimum(recorded);
+    }
+
+    /**
+     * Records the given values at once. The total count and the extremes get updated once for all of them.
+     * 
+     * @param values
+     *            the values, negative values are counted as 0
+     * @param counts
+     *            how often each value occurred
+     * @param length
+     *            the amount of values to record from the start of the arrays
+     */
+    public void recordAll(final long[] values, final long[] counts, final int length) {
+	long total = 0;
+	long batchMaximum = 0;
+	long batchMinimum = Long.MAX_VALUE;
+	for (int i = 0; i < length; i++) {
+	    final long recorded = Math.max(0, values[i]);
+	    this.counts.addAndGet(countsIndex(Math.min(recorded, highestTrackableValue)), counts[i]);
+	    total += counts[i];
+	    batchMaximum = Math.max(batchMaximum, recorded);
+	    batchMinimum = Math.min(batchMinimum, recorded);
+	}
+	if (length > 0) {
+	    totalCount.addAndGet(total);
+	    updateMaximum(batchMaximum);
+	    updateMinimum(batchMinimum);
+	}
+    }
+
+    /**
+     * Records the durations of the given needles at once, weighted by {@link NeedleInfo#getSampleWeight()}. The total count and the extremes get updated once for all of them.
+     * 
+     * @param needles
+     *            the needles
+     */
+    public void recordAll(final List<NeedleInfo> needles) {
+	final long[] durations = new long[needles.size()];
+	final long[] weights = new long[needles.size()];
+	int i = 0;
+	for (final NeedleInfo needle : needles) {
+	    durations[i] = needle.getDurationNanos();
+	    weights[i++] = needle.getSampleWeight();
+	}
+	recordAll(durations, weights, i);
+    }
+
+    /**
+     * Removes all counts. Values recorded concurrently may get lost.
+     */
+    public void reset() {
+	for (int i = 0; i < counts.length(); i++) {
+	    counts.set(i, 0);
+	}
+	totalCount.set(0);
+	maximum.set(0);
+	minimum.set(Long.MAX_VALUE);
+    }
+
+    private void doRecord(final long value, final long count) {
+	counts.addAndGet(countsIndex(Math.min(value, highestTrackableValue)), count);
+	totalCount.addAndGet(count);
+    }
+
+    private int countsIndex(final long value) {
+	final int bucketIndex = leadingZeroCountBase - Long.numberOfLeadingZeros(value | subBucketMask);
+	final int subBucketIndex = (int) (value >>> bucketIndex);
+	return ((bucketIndex + 1) << subBucketHalfCountMagnitude) + (subBucketIndex - subBucketHalfCount);
+    }
+
+    private long highestEquivalentValue(final long value) {
+	final int bucketIndex = leadingZeroCountBase - Long.numberOfLeadingZeros(value | subBucketMask);
+	return value + (1L << bucketIndex) - 1;
+    }
+
+    private void updateMaximum(final long value) {
+	long current;
+	while (value > (current = maximum.get()) && !maximum.compareAndSet(current, value)) {
+	    //retry with the value set concurrently
+	}
+    }
+
+    private void updateMinimum(final long value) {
+	long current;
+	while (value < (current = minimum.get()) && !minimum.compareAndSet(current, value)) {
+	    //retry with the value set concurrently
+	}
+    }
+
+    private long valueFromIndex(final int index) {
+	int bucketIndex = (index >> subBucketHalfCountMagnitude) - 1;
+	int subBucketIndex = (index & (subBucketHalfCount - 1)) + subBucketHalfCount;
+	if (bucketIndex < 0) {
+	    subBucketIndex -= subBucketHalfCount;
+	    bucketIndex = 0;
+	}
+	return ((long) subBucketIndex) << bucketIndex;
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright (c) 2013,
+ * Marco Brade
+ * 							[https://github.com/mbrade]
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice,
+ *       this list of conditions and the following disclaimer in the documentation
+ *       and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.sf.needles.util;
+
+/**
+ * Streaming implementation of the 128 bit x64 variant of MurmurHash3. Values are fed one by one, so no intermediate {@link String} or byte array has to be build before hashing. Instances are not
+ * thread safe but can be reused after calling {@link #reset()}.
+ */
+public final class Murmur3Hasher {
+
+    private static final long C1 = 0x87c37b91114253d5L;
+    private static final long C2 = 0x4cf5ad432745937fL;
+
+    private long h1;
+    private long h2;
+    private long k1;
+    private long k2;
+    private int position;
+    private int length;
+
+    /**
+     * Instantiates a new hasher with seed 0.
+     */
+    public Murmur3Hasher() {
+	reset();
+    }
+
+    private static long fmix(long k) {
+	k ^= k >>> 33;
+	k *= 0xff51afd7ed558ccdL;
+	k ^= k >>> 33;
+	k *= 0xc4ceb9fe1a85ec53L;
+	k ^= k >>> 33;
+	return k;
+    }
+
+    private static long mixK1(long k) {
+	k *= C1;
+	k = Long.rotateLeft(k, 31);
+	k *= C2;
+	return k;
+    }
+
+    private static long mixK2(long k) {
+	k *= C2;
+	k = Long.rotateLeft(k, 33);
+	k *= C1;
+	return k;
+    }
+
+    /**
+     * Finishes the hash and returns the 16 bytes of it. The hasher gets reset afterwards.
+     * 
+     * @return the hash
+     */
+    public byte[] hash() {
+	if (position > 8) {
+	    h2 ^= mixK2(k2);
+	}
+	if (position > 0) {
+	    h1 ^= mixK1(k1);
+	}
+	h1 ^= length;
+	h2 ^= length;
+	h1 += h2;
+	h2 += h1;
+	h1 = fmix(h1);
+	h2 = fmix(h2);
+	h1 += h2;
+	h2 += h1;
+	final byte[] result = new byte[16];
+	for (int i = 0; i < 8; i++) {
+	    result[i] = (byte) (h1 >>> (i * 8));
+	    result[i + 8] = (byte) (h2 >>> (i * 8));
+	}
+	reset();
+	return result;
+    }
+
+    /**
+     * Adds a single byte.
+     * 
+     * @param value
+     *            the value
+     * @return this hasher
+     */
+    public Murmur3Hasher putByte(final byte value) {
+	final long b = value & 0xffL;
+	if (position < 8) {
+	    k1 |= b << (position * 8);
+	} else {
+	    k2 |= b << ((position - 8) * 8);
+	}
+	length++;
+	if (++position == 16) {
+	    processBlock();
+	}
+	return this;
+    }
+
+    /**
+     * Adds all given bytes.
+     * 
+     * @param values
+     *            the values
+     * @return this hasher
+     */
+    public Murmur3Hasher putBytes(final byte[] values) {
+	for (final byte value : values) {
+	    putByte(value);
+	}
+	return this;
+    }
+
+    /**
+     * Adds a char as two bytes, low byte first.
+     * 
+     * @param value
+     *            the value
+     * @return this hasher
+     */
+    public Murmur3Hasher putChar(final char value) {
+	putByte((byte) value);
+	return putByte((byte) (value >>> 8));
+    }
+
+    /**
+     * Adds an int as four bytes, low byte first.
+     * 
+     * @param value
+     *            the value
+     * @return this hasher
+     */
+    public Murmur3Hasher putInt(final int value) {
+	putByte((byte) value);
+	putByte((byte) (value >>> 8));
+	putByte((byte) (value >>> 16));
+	return putByte((byte) (value >>> 24));
+    }
+
+    /**
+     * Adds the chars of the given value followed by its length, so that consecutive strings can't be shifted into each other. A null value is hashed differently than an empty one.
+     * 
+     * @param value
+     *            the value
+     * @return this hasher
+     */
+    public Murmur3Hasher putString(final CharSequence value) {
+	if (value == null) {
+	    return putInt(-1);
+	}
+	final int size = value.length();
+	for (int i = 0; i < size; i++) {
+	    putChar(value.charAt(i));
+	}
+	return putInt(size);
+    }
+
+    /**
+     * Resets the hasher to its initial state.
+     */
+    public void reset() {
+	h1 = 0;
+	h2 = 0;
+	k1 = 0;
+	k2 = 0;
+	position = 0;
+	length = 0;
+    }
+
+    private void processBlock() {
+	h1 ^= mixK1(k1);
+	h1 = Long.rotateLeft(h1, 27);
+	h1 += h2;
+	h1 = h1 * 5 + 0x52dce729;
+	h2 ^= mixK2(k2);
+	h2 = Long.rotateLeft(h2, 31);
+	h2 += h1;
+	h2 = h2 * 5 + 0x38495ab5;
+	k1 = 0;
+	k2 = 0;
+	position = 0;
+    }
+}
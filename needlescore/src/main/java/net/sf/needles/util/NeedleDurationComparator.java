@@ -28,11 +28,14 @@
 
 package net.sf.needles.util;
 
+import java.io.Serializable;
 import java.util.Comparator;
 
 import net.sf.needles.NeedleInfo;
 
-public class NeedleDurationComparator implements Comparator<NeedleInfo> {
+public class NeedleDurationComparator implements Comparator<NeedleInfo>, Serializable {
+
+    private static final long serialVersionUID = 1L;
 
     public final static NeedleDurationComparator INSTANCE = new NeedleDurationComparator();
 
@@ -42,12 +45,16 @@ public class NeedleDurationComparator implements Comparator<NeedleInfo> {
     @Override
     public int compare(final NeedleInfo o1, final NeedleInfo o2) {
 	if (o1 != null && o2 != null) {
-	    if (o1.getDurationNanos() > o2.getDurationNanos()) {
+	    final long duration1 = o1.getDurationNanos();
+	    final long duration2 = o2.getDurationNanos();
+	    if (duration1 > duration2) {
 		return -1;
-	    } else if (o1.getDurationNanos() < o2.getDurationNanos()) {
+	    } else if (duration1 < duration2) {
 		return 1;
 	    } else {
-		return Long.valueOf(o1.getStartTimeMillis()).compareTo(Long.valueOf(o2.getStartTimeMillis())) * -1;
+		final long start1 = o1.getStartTimeMillis();
+		final long start2 = o2.getStartTimeMillis();
+		return (start1 > start2) ? -1 : (start1 < start2) ? 1 : 0;
 	    }
 	} else if (o1 != null) {
 	    return -1;
@@ -57,4 +64,8 @@ public class NeedleDurationComparator implements Comparator<NeedleInfo> {
 	return 0;
     }
 
+    private Object readResolve() {
+	return INSTANCE;
+    }
+
 }
@@ -42,12 +42,16 @@ public class OwnNeedleDurationComparator implements Comparator<NeedleInfo> {
     @Override
     public int compare(final NeedleInfo o1, final NeedleInfo o2) {
 	if (o1 != null && o2 != null) {
-	    if (o1.getOwnDurationNanos() > o2.getOwnDurationNanos()) {
+	    final long duration1 = o1.getOwnDurationNanos();
+	    final long duration2 = o2.getOwnDurationNanos();
+	    if (duration1 > duration2) {
 		return -1;
-	    } else if (o1.getOwnDurationNanos() < o2.getOwnDurationNanos()) {
+	    } else if (duration1 < duration2) {
 		return 1;
 	    } else {
-		return Long.valueOf(o1.getStartTimeMillis()).compareTo(Long.valueOf(o2.getStartTimeMillis())) * -1;
+		final long start1 = o1.getStartTimeMillis();
+		final long start2 = o2.getStartTimeMillis();
+		return (start1 > start2) ? -1 : (start1 < start2) ? 1 : 0;
 	    }
 	} else if (o1 != null) {
 	    return -1;
@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2013,
+ * Marco Brade
+ * 							[https://github.com/mbrade]
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice,
+ *       this list of conditions and the following disclaimer in the documentation
+ *       and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.sf.needles.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Sum of longs updated by many threads. Updates go to a single value as long as they don't contend. Once a compare and set fails, updates get spread over stripes on separate cache lines chosen by
+ * the id of the updating thread, and the sum adds them up at read time. Counters which are never contended keep the footprint of an {@link AtomicLong}.
+ */
+public final class StripedCounter {
+
+    //a stripe occupies its own cache line
+    private static final int STRIPE_WIDTH = 8;
+    private static final int STRIPES = stripes(Runtime.getRuntime().availableProcessors());
+
+    private final AtomicLong base = new AtomicLong();
+    private volatile AtomicLongArray stripes;
+
+    private static int stripes(final int processors) {
+	int result = 1;
+	while (result < processors && result < 64) {
+	    result <<= 1;
+	}
+	return result;
+    }
+
+    /**
+     * Adds the given value.
+     * 
+     * @param value
+     *            the value
+     */
+    public void add(final long value) {
+	AtomicLongArray current = stripes;
+	if (current == null) {
+	    final long sum = base.get();
+	    if (base.compareAndSet(sum, sum + value)) {
+		return;
+	    }
+	    current = getOrCreateStripes();
+	}
+	current.addAndGet(((int) Thread.currentThread().getId() & (STRIPES - 1)) * STRIPE_WIDTH, value);
+    }
+
+    /**
+     * Adds one.
+     */
+    public void increment() {
+	add(1);
+    }
+
+    /**
+     * Sets the sum to 0. Updates made concurrently may get lost.
+     */
+    public void reset() {
+	base.set(0);
+	final AtomicLongArray current = stripes;
+	if (current != null) {
+	    for (int i = 0; i < STRIPES; i++) {
+		current.set(i * STRIPE_WIDTH, 0);
+	    }
+	}
+    }
+
+    /**
+     * Gets the sum of all updates. Updates made concurrently may or may not be included.
+     * 
+     * @return the sum
+     */
+    public long sum() {
+	long result = base.get();
+	final AtomicLongArray current = stripes;
+	if (current != null) {
+	    for (int i = 0; i < STRIPES; i++) {
+		result += current.get(i * STRIPE_WIDTH);
+	    }
+	}
+	return result;
+    }
+
+    @Override
+    public String toString() {
+	return Long.toString(sum());
+    }
+
+    private synchronized AtomicLongArray getOrCreateStripes() {
+	AtomicLongArray result = stripes;
+	if (result == null) {
+	    stripes = result = new AtomicLongArray(STRIPES * STRIPE_WIDTH);
+	}
+	return result;
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2013,
+ * Marco Brade
+ * 							[https://github.com/mbrade]
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice,
+ *       this list of conditions and the following disclaimer in the documentation
+ *       and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.sf.needles.util;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Fixed ring of buckets, each one covering an interval of wall clock time. The bucket of the current interval replaces the bucket of the interval one ring length ago within the same slot by compare
+ * and set, so the ring rotates without locks and without resetting buckets in place, and its memory stays constant. A window over the last intervals gets answered by the buckets still within it.
+ * 
+ * @param <B>
+ *            the bucket type
+ */
+public abstract class TimeWindowRing<B extends Serializable> implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+    private final long intervalMillis;
+    private final AtomicReferenceArray<Slot<B>> slots;
+
+    /**
+     * Instantiates a new ring.
+     * 
+     * @param bucketCount
+     *            the amount of buckets
+     * @param intervalMillis
+     *            the interval covered by a bucket in milliseconds
+     */
+    protected TimeWindowRing(final int bucketCount, final long intervalMillis) {
+	if (bucketCount < 1) {
+	    throw new IllegalArgumentException("The bucket count has to be at least 1 but was: " + bucketCount);
+	}
+	if (intervalMillis < 1) {
+	    throw new IllegalArgumentException("The interval has to be at least 1 ms but was: " + intervalMillis);
+	}
+	this.intervalMillis = intervalMillis;
+	this.slots = new AtomicReferenceArray<Slot<B>>(bucketCount);
+    }
+
+    public int getBucketCount() {
+	return slots.length();
+    }
+
+    /**
+     * Gets the buckets of the given window ending now.
+     * 
+     * @param windowMillis
+     *            the window in milliseconds, rounded up to whole intervals and limited to the ring
+     * @return the buckets, the current one first
+     */
+    public List<B> getBuckets(final long windowMillis) {
+	return getBuckets(windowMillis, System.currentTimeMillis());
+    }
+
+    /**
+     * Gets the buckets of the given window ending at the given time.
+     * 
+     * @param windowMillis
+     *            the window in milliseconds, rounded up to whole intervals and limited to the ring
+     * @param timeMillis
+     *            the end of the window
+     * @return the buckets, the latest one first
+     */
+    public List<B> getBuckets(final long windowMillis, final long timeMillis) {
+	final long epoch = timeMillis / intervalMillis;
+	final long intervals = Math.min(slots.length(), Math.max(1, (windowMillis + intervalMillis - 1) / intervalMillis));
+	final List<B> result = new ArrayList<B>((int) intervals);
+	for (long i = 0; i < intervals; i++) {
+	    final Slot<B> slot = slots.get(index(epoch - i));
+	    if (slot != null && slot.epoch == epoch - i) {
+		result.add(slot.bucket);
+	    }
+	}
+	return result;
+    }
+
+    /**
+     * Gets the bucket of the current interval.
+     * 
+     * @return the bucket or null if the interval already rotated out of the ring
+     */
+    public B getCurrentBucket() {
+	return getCurrentBucket(System.currentTimeMillis());
+    }
+
+    /**
+     * Gets the bucket of the interval containing the given time, replacing the outdated bucket of its slot if necessary.
+     * 
+     * @param timeMillis
+     *            the time
+     * @return the bucket or null if the interval already rotated out of the ring, values of it would fall out of every window and get dropped
+     */
+    public B getCurrentBucket(final long timeMillis) {
+	final long epoch = timeMillis / intervalMillis;
+	final int index = index(epoch);
+	Slot<B> slot = slots.get(index);
+	Slot<B> next = null;
+	while (slot == null || slot.epoch != epoch) {
+	    if (slot != null && slot.epoch > epoch) {
+		return null;
+	    }
+	    if (next == null) {
+		next = new Slot<B>(epoch, createBucket());
+	    }
+	    if (slots.compareAndSet(index, slot, next)) {
+		return next.bucket;
+	    }
+	    slot = slots.get(index);
+	}
+	return slot.bucket;
+    }
+
+    public long getIntervalMillis() {
+	return intervalMillis;
+    }
+
+    /**
+     * Creates an empty bucket.
+     * 
+     * @return the bucket
+     */
+    protected abstract B createBucket();
+
+    private int index(final long epoch) {
+	return (int) (epoch % slots.length());
+    }
+
+    private static final class Slot<B extends Serializable> implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+	private final long epoch;
+	private final B bucket;
+
+	private Slot(final long epoch, final B bucket) {
+	    this.epoch = epoch;
+	    this.bucket = bucket;
+	}
+    }
+}
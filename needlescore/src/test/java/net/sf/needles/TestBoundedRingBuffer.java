@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2013,
+ * Marco Brade
+ * 							[https://github.com/mbrade]
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice,
+ *       this list of conditions and the following disclaimer in the documentation
+ *       and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.sf.needles;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.Assert;
+import net.sf.needles.util.BoundedRingBuffer;
+
+import org.junit.Test;
+
+public class TestBoundedRingBuffer {
+
+    @Test
+    public void testBounds() {
+	final BoundedRingBuffer<Integer> buffer = new BoundedRingBuffer<Integer>(3);
+	Assert.assertEquals(4, buffer.getCapacity());
+	Assert.assertEquals(2, new BoundedRingBuffer<Integer>(1).getCapacity());
+	Assert.assertNull(buffer.poll());
+	for (int round = 0; round < 3; round++) {
+	    for (int i = 0; i < 4; i++) {
+		Assert.assertTrue(buffer.offer(i));
+	    }
+	    Assert.assertFalse(buffer.offer(4));
+	    Assert.assertEquals(4, buffer.size());
+	    for (int i = 0; i < 4; i++) {
+		Assert.assertEquals(Integer.valueOf(i), buffer.poll());
+	    }
+	    Assert.assertNull(buffer.poll());
+	    Assert.assertEquals(0, buffer.size());
+	}
+    }
+
+    @Test
+    public void testDrainTo() {
+	final BoundedRingBuffer<Integer> buffer = new BoundedRingBuffer<Integer>(8);
+	final List<Integer> drained = new ArrayList<Integer>();
+	Assert.assertEquals(0, buffer.drainTo(drained, 4));
+	for (int i = 0; i < 6; i++) {
+	    buffer.offer(i);
+	}
+	Assert.assertEquals(4, buffer.drainTo(drained, 4));
+	//the next elements wrap around the end of the ring
+	for (int i = 6; i < 12; i++) {
+	    Assert.assertTrue(buffer.offer(i));
+	}
+	Assert.assertEquals(8, buffer.drainTo(drained, 100));
+	Assert.assertEquals(0, buffer.size());
+	for (int i = 0; i < 12; i++) {
+	    Assert.assertEquals(Integer.valueOf(i), drained.get(i));
+	}
+	Assert.assertTrue(buffer.offer(12));
+	Assert.assertEquals(Integer.valueOf(12), buffer.poll());
+    }
+
+    @Test
+    public void testConcurrentProducers() throws Exception {
+	final int producers = 8;
+	final int elements = 100000;
+	final BoundedRingBuffer<Long> buffer = new BoundedRingBuffer<Long>(1024);
+	final CyclicBarrier barrier = new CyclicBarrier(producers + 1);
+	final CountDownLatch done = new CountDownLatch(producers);
+	final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+	for (int p = 0; p < producers; p++) {
+	    new Thread(new Runnable() {
+		@Override
+		public void run() {
+		    try {
+			barrier.await();
+			for (long i = 1; i <= elements; i++) {
+			    while (!buffer.offer(i)) {
+				Thread.yield();
+			    }
+			}
+		    } catch (final Throwable e) {
+			failure.set(e);
+		    } finally {
+			done.countDown();
+		    }
+		}
+	    }).start();
+	}
+	barrier.await();
+	final AtomicLong sum = new AtomicLong();
+	long polled = 0;
+	while (polled < (long) producers * elements && failure.get() == null) {
+	    final Long element = buffer.poll();
+	    if (element != null) {
+		sum.addAndGet(element);
+		polled++;
+	    }
+	}
+	done.await();
+	Assert.assertNull(failure.get());
+	Assert.assertNull(buffer.poll());
+	Assert.assertEquals((long) producers * elements * (elements + 1) / 2, sum.get());
+    }
+}
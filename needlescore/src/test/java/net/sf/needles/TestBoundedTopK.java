@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2013,
+ * Marco Brade
+ * 							[https://github.com/mbrade]
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice,
+ *       this list of conditions and the following disclaimer in the documentation
+ *       and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.sf.needles;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.Assert;
+import net.sf.needles.util.BoundedTopK;
+
+import org.junit.Test;
+
+public class TestBoundedTopK {
+
+    private static final NeedleId NEEDLE_ID = new NeedleId(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16 });
+
+    private static NeedleStub needle(final long durationNanos) {
+	return new NeedleStub(NEEDLE_ID, "topK") {
+	    private static final long serialVersionUID = 1L;
+
+	    @Override
+	    public long getDurationNanos() {
+		return durationNanos;
+	    }
+	};
+    }
+
+    @Test
+    public void testAdmission() {
+	final BoundedTopK topK = new BoundedTopK(3);
+	Assert.assertEquals(-1, topK.getThreshold());
+	Assert.assertTrue(topK.offer(needle(5)));
+	Assert.assertTrue(topK.offer(needle(1)));
+	Assert.assertEquals(-1, topK.getThreshold());
+	Assert.assertTrue(topK.offer(needle(3)));
+	Assert.assertEquals(1, topK.getThreshold());
+	Assert.assertFalse(topK.offer(needle(1)));
+	Assert.assertTrue(topK.offer(needle(4)));
+	Assert.assertEquals(3, topK.getThreshold());
+	final List<NeedleInfo> needles = topK.getNeedles();
+	Assert.assertEquals(3, needles.size());
+	Assert.assertEquals(5, needles.get(0).getDurationNanos());
+	Assert.assertEquals(4, needles.get(1).getDurationNanos());
+	Assert.assertEquals(3, needles.get(2).getDurationNanos());
+    }
+
+    @Test
+    public void testConcurrentOffers() throws Exception {
+	final int threads = 16;
+	final int needles = 50000;
+	final int capacity = 20;
+	final BoundedTopK topK = new BoundedTopK(capacity);
+	final CyclicBarrier barrier = new CyclicBarrier(threads);
+	final CountDownLatch done = new CountDownLatch(threads);
+	final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+	for (int t = 0; t < threads; t++) {
+	    final int thread = t;
+	    new Thread(new Runnable() {
+		@Override
+		public void run() {
+		    try {
+			barrier.await();
+			//every thread offers its own distinct durations, interleaved with the other threads
+			for (int i = 0; i < needles; i++) {
+			    topK.offer(needle((long) i * threads + thread));
+			}
+		    } catch (final Throwable e) {
+			failure.set(e);
+		    } finally {
+			done.countDown();
+		    }
+		}
+	    }).start();
+	}
+	done.await();
+	Assert.assertNull(failure.get());
+	final List<NeedleInfo> result = topK.getNeedles();
+	Assert.assertEquals(capacity, result.size());
+	final long longest = (long) needles * threads - 1;
+	for (int i = 0; i < capacity; i++) {
+	    Assert.assertEquals(longest - i, result.get(i).getDurationNanos());
+	}
+	Assert.assertEquals(longest - capacity + 1, topK.getThreshold());
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2013,
+ * Marco Brade
+ * 							[https://github.com/mbrade]
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice,
+ *       this list of conditions and the following disclaimer in the documentation
+ *       and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.sf.needles;
+
+import junit.framework.Assert;
+import net.sf.needles.util.ClockCache;
+
+import org.junit.Test;
+
+public class TestClockCache {
+
+    @Test
+    public void testEviction() {
+	final ClockCache<Integer, String> cache = new ClockCache<Integer, String>(3);
+	Assert.assertNull(cache.putIfAbsent(1, "1"));
+	Assert.assertNull(cache.putIfAbsent(2, "2"));
+	Assert.assertNull(cache.putIfAbsent(3, "3"));
+	Assert.assertEquals("1", cache.putIfAbsent(1, "other"));
+	//referenced entries get a second chance
+	Assert.assertEquals("1", cache.get(1));
+	Assert.assertEquals("3", cache.get(3));
+	Assert.assertNull(cache.putIfAbsent(4, "4"));
+	Assert.assertEquals(3, cache.size());
+	Assert.assertNull(cache.get(2));
+	Assert.assertEquals("1", cache.get(1));
+	Assert.assertEquals("3", cache.get(3));
+	Assert.assertEquals("4", cache.get(4));
+	Assert.assertEquals(1, cache.getEvictionCount());
+	Assert.assertEquals(5, cache.getHitCount());
+	Assert.assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void testSetMaximumSize() {
+	final ClockCache<Integer, String> cache = new ClockCache<Integer, String>(4);
+	for (int i = 0; i < 4; i++) {
+	    cache.putIfAbsent(i, String.valueOf(i));
+	}
+	cache.setMaximumSize(2);
+	Assert.assertEquals(2, cache.size());
+	Assert.assertEquals(2, cache.getMaximumSize());
+	Assert.assertEquals(2, cache.getEvictionCount());
+	cache.setMaximumSize(3);
+	Assert.assertNull(cache.putIfAbsent(10, "10"));
+	Assert.assertEquals(3, cache.size());
+	Assert.assertEquals(2, cache.getEvictionCount());
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2013,
+ * Marco Brade
+ * 							[https://github.com/mbrade]
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice,
+ *       this list of conditions and the following disclaimer in the documentation
+ *       and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.sf.needles;
+
+import junit.framework.Assert;
+import net.sf.needles.util.LogLinearHistogram;
+
+import org.junit.Test;
+
+public class TestLogLinearHistogram {
+
+    private static void assertPrecision(final long expected, final long actual, final double precision) {
+	Assert.assertTrue("Expected " + expected + " but was " + actual, Math.abs(actual - expected) <= expected * precision);
+    }
+
+    @Test
+    public void testMerge() {
+	final LogLinearHistogram lower = new LogLinearHistogram(3600000000000L, 3);
+	final LogLinearHistogram upper = new LogLinearHistogram(3600000000000L, 3);
+	final LogLinearHistogram other = new LogLinearHistogram(1000000, 2);
+	for (long i = 1; i <= 50000; i++) {
+	    lower.record(i);
+	    upper.record(i + 50000);
+	}
+	other.record(200000, 100000);
+	lower.add(upper);
+	Assert.assertEquals(100000, lower.getTotalCount());
+	assertPrecision(50000, lower.getValueAtPercentile(50.0), 0.001);
+	Assert.assertEquals(100000, lower.getMaximum());
+	lower.add(other);
+	Assert.assertEquals(200000, lower.getTotalCount());
+	assertPrecision(200000, lower.getValueAtPercentile(99.0), 0.01);
+    }
+
+    @Test
+    public void testPercentiles() {
+	final LogLinearHistogram histogram = new LogLinearHistogram(3600000000000L, 2);
+	for (long i = 1; i <= 100000; i++) {
+	    histogram.record(i * 1000);
+	}
+	Assert.assertEquals(100000, histogram.getTotalCount());
+	Assert.assertEquals(1000, histogram.getMinimum());
+	Assert.assertEquals(100000000, histogram.getMaximum());
+	assertPrecision(50000000, histogram.getValueAtPercentile(50.0), 0.01);
+	assertPrecision(90000000, histogram.getValueAtPercentile(90.0), 0.01);
+	assertPrecision(99000000, histogram.getValueAtPercentile(99.0), 0.01);
+	assertPrecision(99900000, histogram.getValueAtPercentile(99.9), 0.01);
+	Assert.assertEquals(100000000, histogram.getValueAtPercentile(100.0));
+	//values above the highest trackable value are counted as the highest one
+	histogram.record(Long.MAX_VALUE);
+	assertPrecision(3600000000000L, histogram.getValueAtPercentile(100.0), 0.01);
+	histogram.reset();
+	Assert.assertEquals(0, histogram.getValueAtPercentile(50.0));
+    }
+
+    @Test
+    public void testSmallValuesAreExact() {
+	final LogLinearHistogram histogram = new LogLinearHistogram(1000000, 2);
+	for (long i = 0; i < 100; i++) {
+	    histogram.record(i);
+	}
+	Assert.assertEquals(49, histogram.getValueAtPercentile(50.0));
+	Assert.assertEquals(0, histogram.getValueAtPercentile(0.0));
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) 2013,
+ * Marco Brade
+ * 							[https://github.com/mbrade]
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice,
+ *       this list of conditions and the following disclaimer in the documentation
+ *       and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.sf.needles;
+
+import junit.framework.Assert;
+import net.sf.needles.util.Murmur3Hasher;
+
+import org.junit.Test;
+
+public class TestMurmur3Hasher {
+
+    private static String hash(final String value) throws Exception {
+	return new NeedleId(new Murmur3Hasher().putBytes(value.getBytes("UTF-8")).hash()).toString();
+    }
+
+    @Test
+    public void testKnownValues() throws Exception {
+	Assert.assertEquals("00000000000000000000000000000000", hash(""));
+	Assert.assertEquals("029bbd41b3a7d8cb191dae486a901e5b", hash("hello"));
+	Assert.assertEquals("a7d14acf946de04bda08a7635c5bc387", hash("0123456789abcdef"));
+	Assert.assertEquals("6c1b07bc7bbc4be347939ac4a93c437a", hash("The quick brown fox jumps over the lazy dog"));
+    }
+
+    @Test
+    public void testStringsAreSeparated() {
+	final Murmur3Hasher hasher = new Murmur3Hasher();
+	final NeedleId first = new NeedleId(hasher.putString("ab").putString("c").hash());
+	final NeedleId second = new NeedleId(hasher.putString("a").putString("bc").hash());
+	Assert.assertFalse(first.equals(second));
+	Assert.assertEquals(first, new NeedleId(hasher.putString("ab").putString("c").hash()));
+    }
+}
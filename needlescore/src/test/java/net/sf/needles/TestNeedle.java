@@ -28,12 +28,21 @@
 
 package net.sf.needles;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
 import java.util.concurrent.BrokenBarrierException;
 import java.util.concurrent.CyclicBarrier;
 import java.util.concurrent.Semaphore;
 
 import junit.framework.Assert;
+import net.sf.needles.sampling.Sampler;
 
+import org.junit.Assume;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -114,6 +123,44 @@ public class TestNeedle {
 	Assert.assertEquals(3 + c, NeedleContext.getRootNeedles().size());
     }
 
+    @Test
+    public void testConcurrentAbort() throws InterruptedException {
+	final Needle needle = Needle.start("concurrent");
+	final CyclicBarrier barrier = new CyclicBarrier(8);
+	final Throwable[] reasons = new Throwable[8];
+	final int[] failures = new int[1];
+	final Thread[] threads = new Thread[reasons.length];
+	for (int i = 0; i < threads.length; i++) {
+	    final int index = i;
+	    reasons[i] = new RuntimeException("reason " + i);
+	    threads[i] = new Thread() {
+		@Override
+		public void run() {
+		    try {
+			barrier.await();
+			needle.abort(reasons[index]);
+		    } catch (final Exception e) {
+			synchronized (failures) {
+			    failures[0]++;
+			}
+		    }
+		}
+	    };
+	    threads[i].start();
+	}
+	for (final Thread thread : threads) {
+	    thread.join();
+	}
+	Assert.assertEquals(0, failures[0]);
+	Assert.assertTrue(needle.isAborted());
+	Assert.assertTrue(needle.isStopped());
+	Assert.assertEquals(NeedleState.ABORTED, needle.getNeedleState());
+	Assert.assertTrue(Arrays.asList(reasons).contains(needle.getAbortReason()));
+	final long duration = needle.getDurationNanos();
+	needle.stop();
+	Assert.assertEquals(duration, needle.getDurationNanos());
+    }
+
     @Test
     public void testDebugLines() {
 	final Needle needle = Needle.start("name");
@@ -126,6 +173,53 @@ public class TestNeedle {
 	Assert.assertEquals("3", needle.getDebugLines().get(2));
     }
 
+    @Test
+    public void testDerivedValues() {
+	final Needle root = Needle.start("root");
+	final Needle child = Needle.start("child");
+	final Needle grandChild = Needle.start("grandChild");
+	Assert.assertEquals(1, root.getDepth());
+	Assert.assertEquals(2, child.getDepth());
+	Assert.assertEquals(3, grandChild.getDepth());
+	Assert.assertSame(root, grandChild.getRootNeedle());
+	grandChild.stop();
+	child.stop();
+	root.stop();
+	Assert.assertEquals(child.getDurationNanos() - grandChild.getDurationNanos(), child.getOwnDurationNanos());
+	Assert.assertEquals(root.getDurationNanos() - child.getDurationNanos(), root.getOwnDurationNanos());
+	Assert.assertEquals(grandChild.getDurationNanos(), grandChild.getOwnDurationNanos());
+	final Needle other = new Needle("other");
+	other.addChild(child);
+	Assert.assertEquals(2, child.getDepth());
+	Assert.assertEquals(3, grandChild.getDepth());
+	Assert.assertSame(other, grandChild.getRootNeedle());
+    }
+
+    @Test
+    public void testDisabledNeedleAllocatesNothing() {
+	final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+	Assume.assumeTrue(threadBean instanceof com.sun.management.ThreadMXBean);
+	final com.sun.management.ThreadMXBean allocationBean = (com.sun.management.ThreadMXBean) threadBean;
+	Assume.assumeTrue(allocationBean.isThreadAllocatedMemorySupported());
+	allocationBean.setThreadAllocatedMemoryEnabled(true);
+	NeedleConfigFactory.setNeedleConfig(NeedleConfig.QUIET);
+	try {
+	    final long threadId = Thread.currentThread().getId();
+	    final int calls = 100000;
+	    runDisabledNeedles(calls);//warm up
+	    final long measurementOverhead = allocationBean.getThreadAllocatedBytes(threadId);
+	    final long before = allocationBean.getThreadAllocatedBytes(threadId);
+	    runDisabledNeedles(calls);
+	    final long after = allocationBean.getThreadAllocatedBytes(threadId);
+	    final long allocated = (after - before) - (before - measurementOverhead);
+	    Assert.assertTrue("Disabled needles allocated " + allocated + " bytes for " + calls + " calls.", allocated < calls);
+	    Assert.assertTrue(Needle.start("name").isDisabled());
+	    Assert.assertNull(NeedleContext.getCurrentNeedle());
+	} finally {
+	    NeedleConfigFactory.resetNeedleConfig();
+	}
+    }
+
     @Test
     public void testDoubleStart() {
 	final Needle needle = Needle.start("tst");
@@ -266,4 +360,198 @@ public class TestNeedle {
 	Assert.assertEquals(needle.getStartStackTraceElement().getMethodName(), needle.getStopStackTraceElement().getMethodName());
 	Assert.assertEquals(needle.getStartStackTraceElement().getClassName(), needle.getStopStackTraceElement().getClassName());
     }
+
+    @Test
+    public void testNeedleIdPerCallSite() {
+	NeedleContext.cleanup();
+	final NeedleId[] ids = new NeedleId[2];
+	for (int i = 0; i < ids.length; i++) {
+	    final Needle needle = Needle.start("Name");
+	    ids[i] = needle.getId();
+	    needle.stop();
+	}
+	Assert.assertSame(ids[0], ids[1]);
+	final Needle other = Needle.start("Other name");
+	other.stop();
+	Assert.assertFalse(ids[0].equals(other.getId()));
+	final Needle sameNameOtherLine = Needle.start("Name");
+	sameNameOtherLine.stop();
+	Assert.assertFalse(ids[0].equals(sameNameOtherLine.getId()));
+    }
+
+    @Test
+    public void testNeedleCallSiteResolvesOnce() {
+	NeedleContext.cleanup();
+	final NeedleCallSite callSite = new NeedleCallSite("Name");
+	Assert.assertNull(callSite.getStartElement());
+	final Needle first = callSite.start();
+	first.stop();
+	final StackTraceElement element = callSite.getStartElement();
+	Assert.assertNotNull(element);
+	Assert.assertEquals("testNeedleCallSiteResolvesOnce", element.getMethodName());
+	Assert.assertEquals(element, first.getStartStackTraceElement());
+	//a walk would resolve the line of this start, which results in another id
+	final Needle second = callSite.start();
+	second.stop();
+	Assert.assertSame(element, callSite.getStartElement());
+	Assert.assertSame(first.getId(), second.getId());
+	Assert.assertEquals(element.getLineNumber(), second.getStartStackTraceElement().getLineNumber());
+    }
+
+    @Test
+    public void testStartedNeedlesSurviveCallSiteEviction() {
+	final int maxCallSites = NeedleContext.getMaxCallSites();
+	NeedleContext.setMaxCallSites(1);
+	try {
+	    final Needle first = Needle.start("first");
+	    final Needle second = Needle.start("second");
+	    second.stop();
+	    first.stop();
+	    Assert.assertNotNull(first.getStartStackTraceElement());
+	    Assert.assertNotNull(first.getStopStackTraceElement());
+	    Assert.assertNotNull(second.getStartStackTraceElement());
+	    Assert.assertTrue(NeedleContext.getCallSiteEvictionCount() > 0);
+	} finally {
+	    NeedleContext.setMaxCallSites(maxCallSites);
+	    NeedleContext.cleanup();
+	}
+    }
+    @Test
+    public void testRetention() {
+	final long released = NeedleContext.getReleasedRootNeedleCount();
+	try {
+	    NeedleContext.setRetention(NeedleRetention.KEEP_LAST, 2);
+	    final Needle[] roots = new Needle[3];
+	    for (int i = 0; i < roots.length; i++) {
+		roots[i] = Needle.start("root");
+		Needle.start("child").stop();
+		roots[i].stop();
+	    }
+	    Assert.assertEquals(Arrays.asList(roots[1], roots[2]), NeedleContext.getRootNeedles());
+	    Assert.assertEquals(released + 1, NeedleContext.getReleasedRootNeedleCount());
+	    NeedleContext.cleanup();
+	    NeedleContext.setRetention(NeedleRetention.DROP_ON_STOP, 1);
+	    final Needle root = Needle.start("root");
+	    Needle.start("child").stop();
+	    Assert.assertEquals(1, NeedleContext.getRootNeedles().size());
+	    root.stop();
+	    Assert.assertTrue(NeedleContext.getRootNeedles().isEmpty());
+	    Assert.assertNull(NeedleContext.getCurrentNeedle());
+	    Assert.assertEquals(released + 2, NeedleContext.getReleasedRootNeedleCount());
+	} finally {
+	    NeedleContext.setRetention(NeedleRetention.KEEP_ALL, 1);
+	    NeedleContext.cleanup();
+	}
+    }
+
+    @Test
+    public void testSampling() {
+	try {
+	    NeedleContext.setSampler(new Sampler() {
+		private int calls = 0;
+
+		@Override
+		public long sample() {
+		    //skips every second root needle
+		    return (calls++ % 2 == 0) ? 0 : 2;
+		}
+	    });
+	    final Needle skipped = Needle.start("skipped");
+	    Assert.assertTrue(skipped.isDisabled());
+	    final Needle skippedChild = new Needle("skippedChild");
+	    skippedChild.start();
+	    Assert.assertTrue(skippedChild.isDisabled());
+	    skippedChild.stop();
+	    //stopping twice mustn't leave the level of the skipped root
+	    skippedChild.stop();
+	    final Needle staticChild = Needle.start("skippedChild");
+	    staticChild.stop();
+	    staticChild.stop();
+	    Assert.assertTrue(NeedleContext.getNeedleContext().isUnsampled());
+	    skipped.stop();
+	    Assert.assertFalse(NeedleContext.getNeedleContext().isUnsampled());
+	    Assert.assertTrue(NeedleContext.getRootNeedles().isEmpty());
+	    final Needle root = Needle.start("root");
+	    final Needle child = Needle.start("child");
+	    child.stop();
+	    root.stop();
+	    Assert.assertFalse(root.isDisabled());
+	    Assert.assertEquals(Arrays.asList(root), NeedleContext.getRootNeedles());
+	    Assert.assertEquals(2, root.getSampleWeight());
+	    Assert.assertEquals(2, child.getSampleWeight());
+	    Assert.assertEquals(2, root.toNeedleStub().getSampleWeight());
+	} finally {
+	    NeedleContext.setSampler(null);
+	    NeedleContext.cleanup();
+	}
+    }
+
+    @Test
+    public void testUnsampledTreeEndsWithItsRoot() {
+	try {
+	    NeedleContext.setSampler(new Sampler() {
+		private int calls = 0;
+
+		@Override
+		public long sample() {
+		    //skips the first two root needles only
+		    return (calls++ < 2) ? 0 : 1;
+		}
+	    });
+	    final Needle skipped = Needle.start("skipped");
+	    final Needle child = Needle.start("child");
+	    //stopping the same inert needle twice leaves its level once
+	    Needle.stopCurrentNeedle();
+	    child.stop();
+	    Assert.assertTrue(child.isStopped());
+	    Assert.assertTrue(NeedleContext.getNeedleContext().isUnsampled());
+	    skipped.stop();
+	    Assert.assertFalse(NeedleContext.getNeedleContext().isUnsampled());
+
+	    final Needle leaking = Needle.start("leaking");
+	    //a child which never gets stopped mustn't keep the thread within the skipped tree
+	    Needle.start("leaked");
+	    leaking.stop();
+	    Assert.assertFalse(NeedleContext.getNeedleContext().isUnsampled());
+	    final Needle root = Needle.start("root");
+	    Assert.assertFalse(root.isDisabled());
+	    root.stop();
+	    Assert.assertEquals(Arrays.asList(root), NeedleContext.getRootNeedles());
+	} finally {
+	    NeedleContext.setSampler(null);
+	    NeedleContext.cleanup();
+	}
+    }
+
+    @Test
+    public void testSerialization() throws Exception {
+	final Needle root = Needle.start("root");
+	root.debug("line");
+	final Needle leaf = Needle.start("leaf");
+	leaf.stop();
+	root.stop();
+	Assert.assertTrue(leaf.getDebugLines().isEmpty());
+	Assert.assertEquals(0, leaf.getChildCount());
+	final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+	final ObjectOutputStream out = new ObjectOutputStream(bytes);
+	out.writeObject(root);
+	out.close();
+	final Needle copy = (Needle) new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+	Assert.assertEquals(NeedleState.STOPPED, copy.getNeedleState());
+	Assert.assertEquals(root.getDurationNanos(), copy.getDurationNanos());
+	Assert.assertEquals(Arrays.asList("line"), copy.getDebugLines());
+	Assert.assertEquals(1, copy.getChildCount());
+	Assert.assertSame(copy, copy.getChildren().get(0).getParentNeedle());
+	Assert.assertEquals(leaf.getId(), copy.getChildren().get(0).getId());
+    }
+
+    private void runDisabledNeedles(final int calls) {
+	for (int i = 0; i < calls; i++) {
+	    final Needle needle = Needle.start("disabled");
+	    needle.debug("line");
+	    needle.addContextEntry("key", "value");
+	    needle.stop();
+	    Needle.stopCurrentNeedle();
+	}
+    }
 }
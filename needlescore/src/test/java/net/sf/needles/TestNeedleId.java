@@ -28,12 +28,37 @@
 
 package net.sf.needles;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
 import junit.framework.Assert;
 
 import org.junit.Test;
 
 public class TestNeedleId {
 
+    //NeedleId { 1, 2, 3, -4 } as serialized by the byte array based implementation
+    private static final String SERIALIZED_ID = "aced0005737200176e65742e73662e6e6565646c65732e4e6565646c65496400000000000000010200015b000576616c75657400025b427870757200025b42acf317f8060854e0020000787000000004010203fc";
+
+    private static Object deserialize(final byte[] bytes) throws Exception {
+	final ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes));
+	try {
+	    return in.readObject();
+	} finally {
+	    in.close();
+	}
+    }
+
+    private static byte[] serialize(final Object value) throws Exception {
+	final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+	final ObjectOutputStream out = new ObjectOutputStream(bytes);
+	out.writeObject(value);
+	out.close();
+	return bytes.toByteArray();
+    }
+
     @Test
     public void testCompareTo() {
 	final NeedleId id = new NeedleId(new byte[] { 0 });
@@ -41,6 +66,14 @@ public class TestNeedleId {
 	Assert.assertEquals(0, id.compareTo(id2));
 	Assert.assertEquals(1, id.compareTo(new NeedleId(new byte[] { 1 })));
 	Assert.assertEquals(-1, new NeedleId(new byte[] { 1 }).compareTo(id));
+	Assert.assertEquals(1, new NeedleId(new byte[] { -1 }).compareTo(new NeedleId(new byte[] { 1 })));
+	Assert.assertEquals(1, new NeedleId(new byte[] { 0, 0, 0, 0, 0, 0, 0, 0, 0, -1 }).compareTo(new NeedleId(new byte[] { 0, 0, 0, 0, 0, 0, 0, 0, 0, 1 })));
+	Assert.assertEquals(1, new NeedleId(new byte[] { 1, 1 }).compareTo(new NeedleId(new byte[] { 0, 0, 0 })));
+	final byte[] value = new byte[20];
+	final byte[] other = new byte[20];
+	other[19] = 1;
+	Assert.assertEquals(1, new NeedleId(value).compareTo(new NeedleId(other)));
+	Assert.assertEquals(0, new NeedleId(other).compareTo(new NeedleId(other.clone())));
     }
 
     @Test
@@ -54,6 +87,22 @@ public class TestNeedleId {
 	Assert.assertFalse(id.equals(null));
     }
 
+    @Test
+    public void testSerialization() throws Exception {
+	final NeedleId id = new NeedleId(new byte[] { 1, 2, 3, -4 });
+	final byte[] serialized = new byte[SERIALIZED_ID.length() / 2];
+	for (int i = 0; i < serialized.length; i++) {
+	    serialized[i] = (byte) Integer.parseInt(SERIALIZED_ID.substring(i * 2, i * 2 + 2), 16);
+	}
+	Assert.assertEquals(id, deserialize(serialized));
+	Assert.assertEquals(id, deserialize(serialize(id)));
+	final NeedleId longId = new NeedleId(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 17 });
+	final Object copy = deserialize(serialize(longId));
+	Assert.assertEquals(longId, copy);
+	Assert.assertEquals(longId.hashCode(), copy.hashCode());
+	Assert.assertEquals("0102030405060708090a0b0c0d0e0f1011", copy.toString());
+    }
+
     @Test
     public void testToString() {
 	Assert.assertEquals("0001", new NeedleId(new byte[] {
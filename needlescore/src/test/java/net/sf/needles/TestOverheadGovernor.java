@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2013,
+ * Marco Brade
+ * 							[https://github.com/mbrade]
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice,
+ *       this list of conditions and the following disclaimer in the documentation
+ *       and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.sf.needles;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+public class TestOverheadGovernor {
+
+    @Test
+    public void testStepDownAndRecover() {
+	final OverheadGovernor governor = new OverheadGovernor(3600000, 0.01, 1000);
+	governor.setRecoveryChecks(2);
+	final List<OverheadGovernorEvent> events = new ArrayList<OverheadGovernorEvent>();
+	governor.addListener(new OverheadGovernorListener() {
+	    @Override
+	    public void needleConfigChanged(final OverheadGovernorEvent event) {
+		events.add(event);
+	    }
+	});
+	governor.start();
+	try {
+	    Assert.assertSame(governor, OverheadGovernor.getGovernor());
+	    OverheadGovernor.recordOverhead(3600000000000L);
+	    governor.check();
+	    Assert.assertEquals(NeedleConfig.CONTEXT, NeedleConfigFactory.getMaximumNeedleConfig());
+	    OverheadGovernor.recordOverhead(3600000000000L);
+	    governor.check();
+	    OverheadGovernor.recordOverhead(3600000000000L);
+	    governor.check();
+	    //never below the minimum config
+	    Assert.assertEquals(NeedleConfig.MEASUREMENT, NeedleConfigFactory.getMaximumNeedleConfig());
+	    Assert.assertEquals(2, governor.getDowngradeCount());
+	    governor.check();
+	    Assert.assertEquals(NeedleConfig.MEASUREMENT, NeedleConfigFactory.getMaximumNeedleConfig());
+	    governor.check();
+	    Assert.assertEquals(NeedleConfig.CONTEXT, NeedleConfigFactory.getMaximumNeedleConfig());
+	    Assert.assertEquals(1, governor.getUpgradeCount());
+	    Assert.assertEquals(3, events.size());
+	    Assert.assertTrue(events.get(0).isDowngrade());
+	    Assert.assertEquals(NeedleConfig.DEBUG, events.get(0).getPreviousNeedleConfig());
+	    Assert.assertFalse(events.get(2).isDowngrade());
+	} finally {
+	    governor.stop();
+	}
+	Assert.assertNull(OverheadGovernor.getGovernor());
+	Assert.assertEquals(NeedleConfig.DEBUG, NeedleConfigFactory.getMaximumNeedleConfig());
+    }
+}
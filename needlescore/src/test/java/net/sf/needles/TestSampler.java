@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2013,
+ * Marco Brade
+ * 							[https://github.com/mbrade]
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice,
+ *       this list of conditions and the following disclaimer in the documentation
+ *       and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.sf.needles;
+
+import junit.framework.Assert;
+import net.sf.needles.sampling.ProbabilitySampler;
+import net.sf.needles.sampling.RateLimitingSampler;
+import net.sf.needles.sampling.Sampler;
+
+import org.junit.Test;
+
+public class TestSampler {
+
+    @Test
+    public void testProbabilityKeepsTotal() {
+	for (final double probability : new double[] { 0.1, 0.3 }) {
+	    final Sampler sampler = new ProbabilitySampler(probability);
+	    long total = 0;
+	    long sampled = 0;
+	    for (int i = 0; i < 100000; i++) {
+		final long weight = sampler.sample();
+		total += weight;
+		if (weight > 0) {
+		    sampled++;
+		}
+	    }
+	    //every sampled tree stands for 1/probability trees on average
+	    Assert.assertTrue(String.valueOf(total), total > 95000 && total < 105000);
+	    Assert.assertTrue(String.valueOf(sampled), sampled > 100000 * probability * 0.9 && sampled < 100000 * probability * 1.1);
+	}
+    }
+
+    @Test
+    public void testRateLimit() {
+	final Sampler sampler = new RateLimitingSampler(10);
+	int sampled = 0;
+	for (int i = 0; i < 1000; i++) {
+	    if (sampler.sample() > 0) {
+		sampled++;
+	    }
+	}
+	//the bucket starts full and refills with 10 tokens per second
+	Assert.assertTrue(String.valueOf(sampled), sampled >= 10 && sampled <= 12);
+    }
+
+    @Test
+    public void testRateLimitCountsSkippedPerThread() throws InterruptedException {
+	final RateLimitingSampler sampler = new RateLimitingSampler(2);
+	final long[] weights = new long[2];
+	final Thread other = new Thread() {
+	    @Override
+	    public void run() {
+		weights[0] = sampler.sample();
+		weights[1] = sampler.sample();
+	    }
+	};
+	//the two tokens of the full bucket get used by the other thread, the needles skipped here mustn't add to its weights
+	other.start();
+	other.join();
+	for (int i = 0; i < 5; i++) {
+	    Assert.assertEquals(0, sampler.sample());
+	}
+	Assert.assertEquals(1, weights[0]);
+	Assert.assertEquals(1, weights[1]);
+	Assert.assertEquals(5, sampler.getSkippedCount());
+	Thread.sleep(600);
+	Assert.assertEquals(6, sampler.sample());
+	Assert.assertEquals(0, sampler.getSkippedCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testIllegalProbability() {
+	new ProbabilitySampler(0.0);
+    }
+}
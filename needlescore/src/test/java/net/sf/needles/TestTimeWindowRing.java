@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2013,
+ * Marco Brade
+ * 							[https://github.com/mbrade]
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice,
+ *       this list of conditions and the following disclaimer in the documentation
+ *       and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.sf.needles;
+
+import java.util.List;
+
+import junit.framework.Assert;
+import net.sf.needles.util.DurationAccumulator;
+import net.sf.needles.util.TimeWindowRing;
+
+import org.junit.Test;
+
+public class TestTimeWindowRing {
+
+    private static final class DurationRing extends TimeWindowRing<DurationAccumulator> {
+
+	private static final long serialVersionUID = 1L;
+
+	private DurationRing(final int bucketCount, final long intervalMillis) {
+	    super(bucketCount, intervalMillis);
+	}
+
+	@Override
+	protected DurationAccumulator createBucket() {
+	    return new DurationAccumulator();
+	}
+    }
+
+    private static long count(final List<DurationAccumulator> buckets) {
+	long result = 0;
+	for (final DurationAccumulator bucket : buckets) {
+	    result += bucket.getCount();
+	}
+	return result;
+    }
+
+    @Test
+    public void testRotation() {
+	final DurationRing ring = new DurationRing(5, 1000);
+	final long start = 1000000;
+	for (int i = 0; i < 5; i++) {
+	    ring.getCurrentBucket(start + i * 1000).record(10, i + 1);
+	}
+	Assert.assertEquals(5, ring.getBuckets(1000, start + 4000).get(0).getCount());
+	Assert.assertEquals(5 + 4, count(ring.getBuckets(2000, start + 4000)));
+	Assert.assertEquals(5 + 4 + 3, count(ring.getBuckets(2500, start + 4000)));
+	Assert.assertEquals(15, count(ring.getBuckets(5000, start + 4000)));
+	Assert.assertEquals(15, count(ring.getBuckets(60000, start + 4000)));
+
+	//the first interval gets replaced, the second one falls out of the window without being replaced
+	ring.getCurrentBucket(start + 5000).record(10, 100);
+	Assert.assertEquals(100 + 5 + 4 + 3 + 2, count(ring.getBuckets(5000, start + 5000)));
+	Assert.assertEquals(100 + 5 + 4 + 3, count(ring.getBuckets(5000, start + 6000)));
+
+	//a late caller of a rotated out interval gets no bucket and does not touch the ring
+	Assert.assertNull(ring.getCurrentBucket(start));
+	Assert.assertEquals(100 + 5 + 4 + 3 + 2, count(ring.getBuckets(5000, start + 5000)));
+
+	Assert.assertEquals(0, count(ring.getBuckets(5000, start + 60000)));
+    }
+}
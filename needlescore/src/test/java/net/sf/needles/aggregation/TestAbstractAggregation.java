@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2013,
+ * Marco Brade
+ * 							[https://github.com/mbrade]
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice,
+ *       this list of conditions and the following disclaimer in the documentation
+ *       and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.sf.needles.aggregation;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.Assert;
+import net.sf.needles.NeedleId;
+import net.sf.needles.NeedleStub;
+
+import org.junit.Test;
+
+public class TestAbstractAggregation {
+
+    private static NeedleStub needle(final int i) {
+	return new NeedleStub(new NeedleId(new byte[] { (byte) (i >> 8), (byte) i, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16 }), "needle" + i);
+    }
+
+    @Test
+    public void testChildrenKeepCreationOrder() throws Exception {
+	final ExecutionAggregationImpl root = new ExecutionAggregationImpl(new SerializableExecutionAggregationFactory(), needle(1000));
+	for (int i = 9; i >= 0; i--) {
+	    root.getChildAggregation(needle(i));
+	}
+	final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+	final ObjectOutputStream out = new ObjectOutputStream(bytes);
+	out.writeObject(root);
+	out.close();
+	final ExecutionAggregationImpl copy = (ExecutionAggregationImpl) new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+	for (final ExecutionAggregationImpl aggregation : new ExecutionAggregationImpl[] { root, copy }) {
+	    final List<ExecutionAggregation> children = aggregation.getChildAggregations();
+	    Assert.assertEquals(10, children.size());
+	    for (int i = 0; i < 10; i++) {
+		Assert.assertEquals("needle" + (9 - i), children.get(i).getNeedleName());
+		Assert.assertSame(aggregation, children.get(i).getParentAggregation());
+	    }
+	    Assert.assertSame(children.get(0), aggregation.getChildAggregation(needle(9)));
+	}
+    }
+
+    @Test
+    public void testConcurrentChildCreation() throws Exception {
+	final int threads = 8;
+	final int keys = 200;
+	final ExecutionAggregationImpl root = new ExecutionAggregationImpl(new ExecutionAggregationFactory(), needle(1000));
+	final ExecutionAggregation[][] seen = new ExecutionAggregation[threads][keys];
+	final CyclicBarrier barrier = new CyclicBarrier(threads);
+	final CountDownLatch done = new CountDownLatch(threads);
+	final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+	for (int t = 0; t < threads; t++) {
+	    final int thread = t;
+	    new Thread(new Runnable() {
+		@Override
+		public void run() {
+		    try {
+			barrier.await();
+			for (int i = 0; i < keys; i++) {
+			    //every other thread walks the keys backwards to collide in the middle
+			    final int key = (thread % 2 == 0) ? i : keys - 1 - i;
+			    seen[thread][key] = root.getChildAggregation(needle(key));
+			}
+		    } catch (final Throwable e) {
+			failure.set(e);
+		    } finally {
+			done.countDown();
+		    }
+		}
+	    }).start();
+	}
+	done.await();
+	Assert.assertNull(failure.get());
+	Assert.assertEquals(keys, root.getChildAggregations().size());
+	for (int i = 0; i < keys; i++) {
+	    for (int t = 1; t < threads; t++) {
+		Assert.assertSame(seen[0][i], seen[t][i]);
+	    }
+	}
+    }
+
+    private static class SerializableExecutionAggregationFactory extends ExecutionAggregationFactory implements Serializable {
+	private static final long serialVersionUID = 1L;
+    }
+}
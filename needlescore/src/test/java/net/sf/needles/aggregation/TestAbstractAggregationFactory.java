@@ -0,0 +1,208 @@
+/*
+ * Copyright (c) 2013,
+ * Marco Brade
+ * 							[https://github.com/mbrade]
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice,
+ *       this list of conditions and the following disclaimer in the documentation
+ *       and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.sf.needles.aggregation;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import junit.framework.Assert;
+import net.sf.needles.NeedleId;
+import net.sf.needles.NeedleInfo;
+import net.sf.needles.NeedleStub;
+import net.sf.needles.aggregation.keycreator.AggregationKey;
+import net.sf.needles.aggregation.keycreator.KeyCreator;
+import net.sf.needles.persistence.PersistenceData;
+
+import org.junit.Test;
+
+public class TestAbstractAggregationFactory {
+
+    private static NeedleStub needle(final int i, final NeedleInfo parent) {
+	return new NeedleStub(new NeedleId(new byte[] { (byte) i, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16 }), "needle" + i) {
+	    private static final long serialVersionUID = 1L;
+
+	    @Override
+	    public NeedleInfo getParentNeedle() {
+		return parent;
+	    }
+	};
+    }
+
+    @Test
+    public void testAggregationsAreCachedByNeedleId() {
+	final ExecutionAggregationFactory factory = new ExecutionAggregationFactory();
+	final NeedleStub root = needle(1, null);
+	final NeedleStub child = needle(2, root);
+	final NeedleStub leaf = needle(3, child);
+	final ExecutionAggregation aggregation = factory.getOrCreateAggregation(leaf);
+	Assert.assertEquals("needle3", aggregation.getNeedleName());
+	Assert.assertEquals("needle2", aggregation.getParentAggregation().getNeedleName());
+	Assert.assertEquals(3, factory.getCachedAggregationCount());
+	//another needle of the same path resolves to the cached aggregation
+	Assert.assertSame(aggregation, factory.getOrCreateAggregation(needle(3, null)));
+	Assert.assertEquals(3, factory.getCachedAggregationCount());
+
+	final PersistenceData persistenceData = new PersistenceData();
+	final LinkedHashMap<AggregationKey, ExecutionAggregation> roots = new LinkedHashMap<AggregationKey, ExecutionAggregation>();
+	roots.put(root.getId(), new ExecutionAggregationImpl(factory, root));
+	persistenceData.setAggregationData(roots);
+	factory.loadPersistenceData(persistenceData);
+	Assert.assertEquals(0, factory.getCachedAggregationCount());
+	Assert.assertEquals(1, factory.getRootAggregations().size());
+	Assert.assertSame(roots.get(root.getId()), factory.getOrCreateAggregation(leaf).getParentAggregation().getParentAggregation());
+    }
+
+    @Test
+    public void testPathsAreCachedAfterTheCacheFilledUp() {
+	final ExecutionAggregationFactory factory = new ExecutionAggregationFactory();
+	factory.setMaxCachedAggregations(2);
+	for (int i = 1; i <= 4; i++) {
+	    factory.getOrCreateAggregation(needle(i, null));
+	}
+	Assert.assertEquals(2, factory.getCachedAggregationCount());
+	final ExecutionAggregation aggregation = factory.getOrCreateAggregation(needle(5, needle(1, null)));
+	Assert.assertEquals(2, factory.getCachedAggregationCount());
+	//a needle without its parent only resolves to the child if the path got cached
+	Assert.assertSame(aggregation, factory.getOrCreateAggregation(needle(5, null)));
+	Assert.assertEquals(4, factory.getRootAggregations().size());
+    }
+
+    @Test
+    public void testFindAggregations() {
+	final ExecutionAggregationFactory factory = new ExecutionAggregationFactory();
+	final NeedleStub root = needle(1, null);
+	final NeedleStub child = needle(2, root);
+	final NeedleStub leaf = needle(3, child);
+	final ExecutionAggregation leafAggregation = factory.getOrCreateAggregation(leaf);
+	final NeedleStub otherRoot = needle(4, null);
+	Assert.assertSame(leafAggregation, factory.findAggregation(needle(3, needle(2, needle(1, null)))));
+	Assert.assertNull(factory.findAggregation(otherRoot));
+	final List<ExecutionAggregation> aggregations = factory.findAggregations(Arrays.asList(root, child, leaf, otherRoot));
+	Assert.assertEquals(Arrays.asList(leafAggregation.getParentAggregation().getParentAggregation(), leafAggregation.getParentAggregation(), leafAggregation, null), aggregations);
+	//nothing gets created while looking up
+	Assert.assertEquals(1, factory.getRootAggregations().size());
+	Assert.assertSame(leafAggregation, leafAggregation.getParentAggregation().getParentAggregation().getAggregationForNeedleInfo(leaf));
+	Assert.assertNull(leafAggregation.getAggregationForNeedleInfo(root));
+	//without its path the needle gets looked up by its id or its key
+	Assert.assertSame(leafAggregation, leafAggregation.getParentAggregation().getAggregationForNeedleInfo(needle(3, null)));
+	Assert.assertEquals(Arrays.asList(leafAggregation, leafAggregation.getParentAggregation(), null),
+	                    ((ExecutionAggregationImpl) leafAggregation.getParentAggregation()).getAggregationsForNeedleInfos(Arrays.asList(needle(3, null), child, otherRoot)));
+    }
+
+    @Test
+    public void testMissesAreResolvedByTheirKeys() {
+	final ExecutionAggregationFactory factory = new ExecutionAggregationFactory();
+	//the cache can't answer for the leaf
+	factory.setMaxCachedAggregations(1);
+	final NeedleStub root = needle(1, null);
+	final ExecutionAggregation leafAggregation = factory.getOrCreateAggregation(needle(3, needle(2, root)));
+	factory.getOrCreateAggregation(needle(4, null));
+	final ExecutionAggregation rootAggregation = factory.findAggregation(root);
+	final ExecutionAggregation childAggregation = leafAggregation.getParentAggregation();
+	//the topmost needle of the path gets looked up by its key, the others in the children
+	Assert.assertSame(leafAggregation, rootAggregation.getAggregationForNeedleInfo(needle(3, needle(2, null))));
+	Assert.assertSame(leafAggregation, childAggregation.getAggregationForNeedleInfo(needle(3, null)));
+	Assert.assertNull(childAggregation.getAggregationForNeedleInfo(needle(4, null)));
+	Assert.assertNull(rootAggregation.getAggregationForNeedleInfo(needle(5, needle(2, null))));
+	Assert.assertEquals(Arrays.asList(leafAggregation, childAggregation, null),
+	                    ((ExecutionAggregationImpl) rootAggregation).getAggregationsForNeedleInfos(Arrays.asList(needle(3, needle(2, null)), needle(2, null), needle(4, null))));
+	Assert.assertEquals(2, factory.getRootAggregations().size());
+    }
+
+    @Test
+    public void testRejectedKeysAreFoldedIntoOtherAggregation() {
+	final ExecutionAggregationFactory factory = new ExecutionAggregationFactory();
+	factory.setMaxChildAggregations(2);
+	final ExecutionAggregation first = factory.getOrCreateAggregation(needle(1, null));
+	final ExecutionAggregation second = factory.getOrCreateAggregation(needle(2, null));
+	final ExecutionAggregation otherRoot = factory.getOrCreateAggregation(needle(3, null));
+	Assert.assertEquals(AbstractAggregationFactory.OTHER_NEEDLE_NAME, otherRoot.getNeedleName());
+	Assert.assertSame(otherRoot, factory.getOrCreateAggregation(needle(4, null)));
+	Assert.assertEquals(Arrays.asList(first, second, otherRoot), factory.getRootAggregations());
+	Assert.assertEquals(2, factory.getRejectedKeyCount());
+
+	final ExecutionAggregation child = factory.getOrCreateAggregation(needle(5, needle(1, null)));
+	Assert.assertSame(first, child.getParentAggregation());
+	factory.getOrCreateAggregation(needle(6, needle(1, null)));
+	final ExecutionAggregation otherChild = factory.getOrCreateAggregation(needle(7, needle(1, null)));
+	Assert.assertEquals(AbstractAggregationFactory.OTHER_NEEDLE_NAME, otherChild.getNeedleName());
+	Assert.assertSame(first, otherChild.getParentAggregation());
+	Assert.assertEquals(3, factory.getRejectedKeyCount());
+	//the other aggregations of different parents don't share their key
+	Assert.assertFalse(otherChild.getAggregationKey().equals(otherRoot.getAggregationKey()));
+	Assert.assertSame(otherChild, factory.getAggregation(otherChild.getAggregationKey()));
+	Assert.assertSame(otherRoot, factory.getAggregation(otherRoot.getAggregationKey()));
+
+	//the overall limit applies to all levels and to the other aggregations of parents
+	factory.setMaxAggregations(factory.getAggregationCount());
+	Assert.assertSame(otherRoot, factory.getOrCreateAggregation(needle(8, needle(2, null))));
+	Assert.assertSame(otherRoot, factory.getOrCreateAggregation(needle(9, needle(5, needle(1, null)))));
+	Assert.assertEquals(6, factory.getAggregationCount());
+	Assert.assertEquals(5, factory.getRejectedKeyCount());
+	//the other aggregation of a parent keeps taking its rejected keys
+	Assert.assertSame(otherChild, factory.getOrCreateAggregation(needle(10, needle(1, null))));
+	Assert.assertEquals(6, factory.getAggregationCount());
+    }
+
+    @Test
+    public void testOtherRootAggregationIsTheOnlyOneBeyondTheLimit() {
+	final ExecutionAggregationFactory factory = new ExecutionAggregationFactory();
+	factory.setMaxAggregations(4);
+	final NeedleStub root = needle(1, null);
+	for (int i = 2; i <= 4; i++) {
+	    factory.getOrCreateAggregation(needle(i, root));
+	}
+	Assert.assertEquals(4, factory.getAggregationCount());
+	//every parent gets a rejected key, but no other aggregation of its own
+	final ExecutionAggregation otherRoot = factory.getOrCreateAggregation(needle(5, root));
+	Assert.assertEquals(AbstractAggregationFactory.OTHER_NEEDLE_NAME, otherRoot.getNeedleName());
+	Assert.assertNull(otherRoot.getParentAggregation());
+	for (int i = 2; i <= 4; i++) {
+	    Assert.assertSame(otherRoot, factory.getOrCreateAggregation(needle(10 + i, needle(i, root))));
+	}
+	Assert.assertEquals(5, factory.getAggregationCount());
+	Assert.assertEquals(4, factory.getRejectedKeyCount());
+    }
+
+    @Test
+    public void testUnstableKeyCreatorIsNotCached() {
+	final ExecutionAggregationFactory factory = new ExecutionAggregationFactory(new KeyCreator() {
+	    private static final long serialVersionUID = 1L;
+
+	    @Override
+	    public AggregationKey getKey(final NeedleInfo needle) {
+		return needle.getId();
+	    }
+	}, "unstable");
+	final NeedleStub root = needle(1, null);
+	Assert.assertSame(factory.getOrCreateAggregation(needle(2, root)), factory.getOrCreateAggregation(needle(2, root)));
+	Assert.assertEquals(0, factory.getCachedAggregationCount());
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2013,
+ * Marco Brade
+ * 							[https://github.com/mbrade]
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice,
+ *       this list of conditions and the following disclaimer in the documentation
+ *       and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.sf.needles.aggregation;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.Assert;
+import net.sf.needles.NeedleId;
+import net.sf.needles.NeedleInfo;
+import net.sf.needles.NeedleStub;
+
+import org.junit.Test;
+
+public class TestExecutionAggregationImpl {
+
+    private static final NeedleId NEEDLE_ID = new NeedleId(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16 });
+
+    private static NeedleStub needle(final long durationNanos) {
+	return new NeedleStub(NEEDLE_ID, "execution") {
+	    private static final long serialVersionUID = 1L;
+
+	    @Override
+	    public long getDurationNanos() {
+		return durationNanos;
+	    }
+	};
+    }
+
+    @Test
+    public void testAggregateBatch() {
+	final ExecutionAggregationImpl aggregation = new ExecutionAggregationImpl(new ExecutionAggregationFactory(), needle(0));
+	aggregation.aggregate(needle(1000000));
+	aggregation.aggregateBatch(Arrays.<NeedleInfo> asList(needle(2000000), needle(6000000), needle(3000000)));
+	Assert.assertEquals(4, aggregation.getMeasurements());
+	Assert.assertEquals(12.0, aggregation.getTotal(), 0.0);
+	Assert.assertEquals(6.0, aggregation.getMaximum(), 0.0);
+	Assert.assertEquals(1.0, aggregation.getMinimum(), 0.0);
+	Assert.assertEquals(3.0, aggregation.getAverage(), 0.0);
+    }
+
+    @Test
+    public void testConcurrentAggregation() throws Exception {
+	final int threads = 32;
+	final int needles = 20000;
+	final ExecutionAggregationImpl aggregation = new ExecutionAggregationImpl(new ExecutionAggregationFactory(), needle(0));
+	final CyclicBarrier barrier = new CyclicBarrier(threads);
+	final CountDownLatch done = new CountDownLatch(threads);
+	final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+	for (int t = 0; t < threads; t++) {
+	    final NeedleStub needle = needle(t + 1);
+	    new Thread(new Runnable() {
+		@Override
+		public void run() {
+		    try {
+			barrier.await();
+			for (int i = 0; i < needles; i++) {
+			    aggregation.aggregate(needle);
+			}
+		    } catch (final Throwable e) {
+			failure.set(e);
+		    } finally {
+			done.countDown();
+		    }
+		}
+	    }).start();
+	}
+	done.await();
+	Assert.assertNull(failure.get());
+	Assert.assertEquals((long) threads * needles, aggregation.getMeasurements());
+	//every thread aggregates its own duration of 1 to 32 nanos
+	final long totalNanos = (long) needles * threads * (threads + 1) / 2;
+	Assert.assertEquals(totalNanos / 1000000.0, aggregation.getTotal(), 0.0);
+	Assert.assertEquals(threads / 1000000.0, aggregation.getMaximum(), 0.0);
+	Assert.assertEquals(1 / 1000000.0, aggregation.getMinimum(), 0.0);
+	Assert.assertEquals(totalNanos / ((double) threads * needles) / 1000000.0, aggregation.getAverage(), 1e-15);
+    }
+
+    @Test
+    public void testSerialization() throws Exception {
+	final ExecutionAggregationImpl aggregation = new ExecutionAggregationImpl(new SerializableExecutionAggregationFactory(), needle(0));
+	aggregation.aggregate(needle(2000000));
+	aggregation.aggregate(needle(4000000));
+	final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+	final ObjectOutputStream out = new ObjectOutputStream(bytes);
+	out.writeObject(aggregation);
+	out.close();
+	final ExecutionAggregationImpl copy = (ExecutionAggregationImpl) new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+	Assert.assertEquals(2, copy.getMeasurements());
+	Assert.assertEquals(6.0, copy.getTotal(), 0.0);
+	Assert.assertEquals(3.0, copy.getAverage(), 0.0);
+	Assert.assertEquals(2.0, copy.getMinimum(), 0.0);
+	Assert.assertEquals(4.0, copy.getMaximum(), 0.0);
+    }
+
+    private static class SerializableExecutionAggregationFactory extends ExecutionAggregationFactory implements Serializable {
+	private static final long serialVersionUID = 1L;
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2013,
+ * Marco Brade
+ * 							[https://github.com/mbrade]
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice,
+ *       this list of conditions and the following disclaimer in the documentation
+ *       and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.sf.needles.aggregation;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.Serializable;
+import java.util.List;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.Assert;
+import net.sf.needles.NeedleId;
+import net.sf.needles.NeedleInfo;
+import net.sf.needles.NeedleStub;
+
+import org.junit.Test;
+
+public class TestHotspotAggregationImpl {
+
+    private static final NeedleId NEEDLE_ID = new NeedleId(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16 });
+
+    private static NeedleStub needle(final long durationNanos) {
+	return new NeedleStub(NEEDLE_ID, "hotspot") {
+	    private static final long serialVersionUID = 1L;
+
+	    @Override
+	    public long getDurationNanos() {
+		return durationNanos;
+	    }
+	};
+    }
+
+    @Test
+    public void testConcurrentAggregation() throws Exception {
+	final int threads = 16;
+	final int needles = 20000;
+	final HotspotAggregationFactory factory = new HotspotAggregationFactory(15);
+	final HotspotAggregation aggregation = factory.doCreateAggregation(needle(0));
+	final CyclicBarrier barrier = new CyclicBarrier(threads);
+	final CountDownLatch done = new CountDownLatch(threads);
+	final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+	for (int t = 0; t < threads; t++) {
+	    final int thread = t;
+	    new Thread(new Runnable() {
+		@Override
+		public void run() {
+		    try {
+			barrier.await();
+			for (int i = 0; i < needles; i++) {
+			    aggregation.aggregate(needle((long) i * threads + thread));
+			}
+		    } catch (final Throwable e) {
+			failure.set(e);
+		    } finally {
+			done.countDown();
+		    }
+		}
+	    }).start();
+	}
+	done.await();
+	Assert.assertNull(failure.get());
+	//the buffers of the threads get merged on read
+	final List<NeedleInfo> hotspots = aggregation.getHotspots();
+	Assert.assertEquals(15, hotspots.size());
+	final long longest = (long) needles * threads - 1;
+	for (int i = 0; i < 15; i++) {
+	    Assert.assertEquals(longest - i, hotspots.get(i).getDurationNanos());
+	}
+    }
+
+    @Test
+    public void testFactoriesAreIndependent() {
+	final HotspotAggregationFactory first = new HotspotAggregationFactory(2, "first");
+	final HotspotAggregationFactory second = new HotspotAggregationFactory(3, "second");
+	final HotspotAggregation firstAggregation = first.doCreateAggregation(needle(0));
+	final HotspotAggregation secondAggregation = second.doCreateAggregation(needle(0));
+	Assert.assertNotSame(firstAggregation, secondAggregation);
+	Assert.assertSame(firstAggregation, first.doCreateAggregation(needle(1)));
+	for (int i = 1; i <= 5; i++) {
+	    firstAggregation.aggregate(needle(i));
+	}
+	Assert.assertEquals(2, firstAggregation.getHotspots().size());
+	Assert.assertTrue(secondAggregation.getHotspots().isEmpty());
+    }
+
+    @Test
+    public void testSerialization() throws Exception {
+	//the stream keeps the sorted set of earlier versions
+	Assert.assertEquals(ConcurrentSkipListSet.class, ObjectStreamClass.lookup(HotspotAggregationImpl.class).getField("hotspots").getType());
+	final HotspotAggregation aggregation = new SerializableHotspotAggregationFactory().doCreateAggregation(needle(0));
+	for (int i = 1; i <= 5; i++) {
+	    aggregation.aggregate(needle(i));
+	}
+	final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+	final ObjectOutputStream out = new ObjectOutputStream(bytes);
+	out.writeObject(aggregation);
+	out.close();
+	final HotspotAggregation copy = (HotspotAggregation) new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+	List<NeedleInfo> hotspots = copy.getHotspots();
+	Assert.assertEquals(3, hotspots.size());
+	Assert.assertEquals(5, hotspots.get(0).getDurationNanos());
+	Assert.assertEquals(3, hotspots.get(2).getDurationNanos());
+	//the copy stays bounded and aggregates again
+	for (int i = 6; i <= 8; i++) {
+	    copy.aggregate(needle(i));
+	}
+	hotspots = copy.getHotspots();
+	Assert.assertEquals(3, hotspots.size());
+	Assert.assertEquals(8, hotspots.get(0).getDurationNanos());
+	Assert.assertEquals(6, hotspots.get(2).getDurationNanos());
+    }
+
+    private static class SerializableHotspotAggregationFactory extends HotspotAggregationFactory implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	private SerializableHotspotAggregationFactory() {
+	    super(3);
+	}
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2013,
+ * Marco Brade
+ * 							[https://github.com/mbrade]
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice,
+ *       this list of conditions and the following disclaimer in the documentation
+ *       and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.sf.needles.aggregation;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.Serializable;
+import java.util.List;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+import junit.framework.Assert;
+import net.sf.needles.NeedleId;
+import net.sf.needles.NeedleInfo;
+import net.sf.needles.NeedleStub;
+
+import org.junit.Test;
+
+public class TestTop10AggregationImpl {
+
+    private static final NeedleId NEEDLE_ID = new NeedleId(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16 });
+
+    private static NeedleStub needle(final long durationNanos) {
+	return new NeedleStub(NEEDLE_ID, "top10") {
+	    private static final long serialVersionUID = 1L;
+
+	    @Override
+	    public long getDurationNanos() {
+		return durationNanos;
+	    }
+	};
+    }
+
+    @Test
+    public void testSerialization() throws Exception {
+	//the stream keeps the sorted set of earlier versions
+	Assert.assertEquals(ConcurrentSkipListSet.class, ObjectStreamClass.lookup(Top10AggregationImpl.class).getField("top10").getType());
+	final Top10AggregationImpl aggregation = new Top10AggregationImpl(new SerializableTop10AggregationFactory(), needle(0));
+	for (int i = 1; i <= 15; i++) {
+	    aggregation.aggregate(needle(i));
+	}
+	final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+	final ObjectOutputStream out = new ObjectOutputStream(bytes);
+	out.writeObject(aggregation);
+	out.close();
+	final Top10AggregationImpl copy = (Top10AggregationImpl) new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+	List<NeedleInfo> top10 = copy.getTop10Needles();
+	Assert.assertEquals(10, top10.size());
+	Assert.assertEquals(15, top10.get(0).getDurationNanos());
+	Assert.assertEquals(6, top10.get(9).getDurationNanos());
+	//the copy stays bounded
+	copy.aggregate(needle(100));
+	top10 = copy.getTop10Needles();
+	Assert.assertEquals(10, top10.size());
+	Assert.assertEquals(100, top10.get(0).getDurationNanos());
+	Assert.assertEquals(7, top10.get(9).getDurationNanos());
+    }
+
+    private static class SerializableTop10AggregationFactory extends Top10AggregationFactory implements Serializable {
+	private static final long serialVersionUID = 1L;
+    }
+}
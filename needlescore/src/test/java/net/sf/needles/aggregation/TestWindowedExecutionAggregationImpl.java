@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2013,
+ * Marco Brade
+ * 							[https://github.com/mbrade]
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice,
+ *       this list of conditions and the following disclaimer in the documentation
+ *       and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.sf.needles.aggregation;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.Assert;
+import net.sf.needles.NeedleId;
+import net.sf.needles.NeedleInfo;
+import net.sf.needles.NeedleStub;
+
+import org.junit.Test;
+
+public class TestWindowedExecutionAggregationImpl {
+
+    private static final NeedleId NEEDLE_ID = new NeedleId(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16 });
+    private static final long INTERVAL = TimeUnit.MINUTES.toMillis(1);
+
+    private static NeedleStub needle(final long stopTimeMillis) {
+	return new NeedleStub(NEEDLE_ID, "windowed") {
+	    private static final long serialVersionUID = 1L;
+
+	    @Override
+	    public long getDurationNanos() {
+		return 1000000;
+	    }
+
+	    @Override
+	    public long getStopTimeMillis() {
+		return stopTimeMillis;
+	    }
+	};
+    }
+
+    @Test
+    public void testNeedlesLandInTheIntervalTheyStoppedIn() {
+	final WindowedExecutionAggregationImpl aggregation = new WindowedExecutionAggregationImpl(new WindowedExecutionAggregationFactory(), needle(0), 5, INTERVAL);
+	final long now = System.currentTimeMillis();
+	aggregation.aggregate(needle(now));
+	aggregation.aggregate(needle(now - 2 * INTERVAL));
+	aggregation.aggregateBatch(Arrays.<NeedleInfo> asList(needle(now - 2 * INTERVAL), needle(now), needle(now - 3 * INTERVAL)));
+	//rotated out of the ring, so it gets dropped
+	aggregation.aggregate(needle(now - 10 * INTERVAL));
+	Assert.assertEquals(2, aggregation.getMeasurements(INTERVAL));
+	Assert.assertEquals(4, aggregation.getMeasurements(3 * INTERVAL));
+	Assert.assertEquals(5, aggregation.getMeasurements(5 * INTERVAL));
+    }
+
+    @Test
+    public void testPreAggregationMergesPerInterval() {
+	final WindowedExecutionAggregationImpl aggregation = new WindowedExecutionAggregationImpl(new WindowedExecutionAggregationFactory(), needle(0), 5, INTERVAL);
+	final long now = System.currentTimeMillis();
+	final PreAggregation preAggregation = aggregation.createPreAggregation();
+	preAggregation.add(needle(now - 2 * INTERVAL));
+	preAggregation.add(needle(now - 2 * INTERVAL));
+	preAggregation.add(needle(now));
+	preAggregation.merge();
+	Assert.assertEquals(1, aggregation.getMeasurements(INTERVAL));
+	Assert.assertEquals(3, aggregation.getMeasurements(3 * INTERVAL));
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2013,
+ * Marco Brade
+ * 							[https://github.com/mbrade]
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice,
+ *       this list of conditions and the following disclaimer in the documentation
+ *       and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.sf.needles.aggregation.worker;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.Assert;
+import net.sf.needles.Needle;
+import net.sf.needles.NeedleConfigFactory;
+import net.sf.needles.NeedleId;
+import net.sf.needles.NeedleInfo;
+import net.sf.needles.NeedleStub;
+import net.sf.needles.aggregation.ExecutionAggregationFactory;
+import net.sf.needles.aggregation.ExecutionAggregationImpl;
+import net.sf.needles.aggregation.keycreator.NeedleIdKeyCreator;
+
+import org.junit.Test;
+
+public class TestAggregator {
+
+    private static NeedleStub needle(final int i) {
+	return new NeedleStub(new NeedleId(new byte[] { (byte) i, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16 }), "needle" + i);
+    }
+
+    @Test
+    public void testBatchIsGroupedByAggregation() {
+	final ExecutionAggregationFactory factory = new ExecutionAggregationFactory(NeedleIdKeyCreator.INSTANCE);
+	final Aggregator aggregator = new BatchAggregator(factory);
+	aggregator.aggregateBatch(Arrays.<NeedleInfo> asList(needle(1), needle(2), needle(1)));
+	aggregator.aggregateBatch(Arrays.<NeedleInfo> asList(needle(2)));
+	Assert.assertEquals(2, factory.getRootAggregations().size());
+	Assert.assertEquals(2, ((ExecutionAggregationImpl) factory.getOrCreateAggregation(needle(1))).getMeasurements());
+	Assert.assertEquals(2, ((ExecutionAggregationImpl) factory.getOrCreateAggregation(needle(2))).getMeasurements());
+    }
+
+    @Test
+    public void testBatchGoesThroughOverriddenAggregate() {
+	final ExecutionAggregationFactory factory = new ExecutionAggregationFactory(NeedleIdKeyCreator.INSTANCE);
+	final List<NeedleInfo> aggregated = new ArrayList<NeedleInfo>();
+	final Aggregator aggregator = new Aggregator(factory) {
+	    @Override
+	    public void aggregate(final NeedleInfo needle) {
+		aggregated.add(needle);
+		super.aggregate(needle);
+	    }
+	};
+	final List<NeedleInfo> needles = Arrays.<NeedleInfo> asList(needle(1), needle(2), needle(1));
+	aggregator.aggregateBatch(needles);
+	Assert.assertEquals(needles, aggregated);
+	Assert.assertEquals(2, ((ExecutionAggregationImpl) factory.getOrCreateAggregation(needle(1))).getMeasurements());
+    }
+
+    @Test
+    public void testDeprecatedNeedleOverrideIsStillCalled() {
+	final ExecutionAggregationFactory factory = new ExecutionAggregationFactory(NeedleIdKeyCreator.INSTANCE);
+	final List<NeedleInfo> aggregated = new ArrayList<NeedleInfo>();
+	final Aggregator aggregator = new Aggregator(factory) {
+	    @Deprecated
+	    @Override
+	    public void aggregate(final Needle needle) {
+		aggregated.add(needle);
+	    }
+	};
+	try {
+	    final Needle needle = new Needle("needle");
+	    aggregator.aggregateBatch(Arrays.<NeedleInfo> asList(needle));
+	    Assert.assertEquals(Arrays.<NeedleInfo> asList(needle), aggregated);
+	    Assert.assertTrue(factory.getRootAggregations().isEmpty());
+	} finally {
+	    //the needle pinned the config of this thread, later tests expect the default one
+	    NeedleConfigFactory.resetNeedleConfig();
+	}
+    }
+}
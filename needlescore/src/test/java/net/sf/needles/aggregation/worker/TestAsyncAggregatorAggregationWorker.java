@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) 2013,
+ * Marco Brade
+ * 							[https://github.com/mbrade]
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice,
+ *       this list of conditions and the following disclaimer in the documentation
+ *       and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.sf.needles.aggregation.worker;
+
+import java.util.List;
+
+import junit.framework.Assert;
+import net.sf.needles.NeedleId;
+import net.sf.needles.NeedleInfo;
+import net.sf.needles.NeedleStub;
+import net.sf.needles.aggregation.ExecutionAggregation;
+import net.sf.needles.aggregation.ExecutionAggregationFactory;
+import net.sf.needles.aggregation.ExecutionAggregationImpl;
+import net.sf.needles.aggregation.keycreator.NeedleIdKeyCreator;
+
+import org.junit.Test;
+
+public class TestAsyncAggregatorAggregationWorker {
+
+    private static final NeedleId NEEDLE_ID = new NeedleId(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16 });
+
+    /**
+     * Creates aggregations taking 50 ms per needle.
+     */
+    private static class SlowAggregationFactory extends ExecutionAggregationFactory {
+
+	private SlowAggregationFactory() {
+	    super(NeedleIdKeyCreator.INSTANCE, "slow");
+	}
+
+	@Override
+	public ExecutionAggregation doCreateAggregation(final NeedleInfo needle) {
+	    return new ExecutionAggregationImpl(this, needle) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		public void aggregate(final NeedleInfo needle) {
+		    try {
+			Thread.sleep(50);
+		    } catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+		    }
+		    super.aggregate(needle);
+		}
+
+		@Override
+		public void aggregateBatch(final List<NeedleInfo> needles) {
+		    for (final NeedleInfo needle : needles) {
+			aggregate(needle);
+		    }
+		}
+	    };
+	}
+    }
+
+    private static AggregationStage stage(final AsyncAggregatorAggregationWorker worker, final String name) {
+	for (final AggregationStage stage : worker.getStages()) {
+	    if (stage.getAggregationKey().equals(name)) {
+		return stage;
+	    }
+	}
+	throw new AssertionError("No stage found for " + name);
+    }
+
+    @Test
+    public void testFlushDrainsStages() {
+	final AsyncAggregatorAggregationWorker worker = new AsyncAggregatorAggregationWorker();
+	worker.addAggregationFactory(new ExecutionAggregationFactory(NeedleIdKeyCreator.INSTANCE, "fast"));
+	worker.addAggregationFactory(new SlowAggregationFactory());
+	try {
+	    for (int i = 0; i < 5; i++) {
+		worker.aggregate(new NeedleStub(NEEDLE_ID, "needle"));
+	    }
+	    worker.flush();
+	    Assert.assertEquals(5, stage(worker, "fast").getAggregatedCount());
+	    Assert.assertEquals(5, stage(worker, "slow").getAggregatedCount());
+	    Assert.assertEquals(0, stage(worker, "slow").getQueueSize());
+	} finally {
+	    worker.doShutdown();
+	}
+    }
+
+    @Test
+    public void testRemovedFactoryLosesItsStage() {
+	final AsyncAggregatorAggregationWorker worker = new AsyncAggregatorAggregationWorker();
+	worker.addAggregationFactory(new ExecutionAggregationFactory(NeedleIdKeyCreator.INSTANCE, "fast"));
+	final ExecutionAggregationFactory removed = new ExecutionAggregationFactory(NeedleIdKeyCreator.INSTANCE, "removed");
+	worker.addAggregationFactory(removed);
+	try {
+	    worker.aggregate(new NeedleStub(NEEDLE_ID, "needle"));
+	    worker.flush();
+	    final AggregationStage stage = stage(worker, "removed");
+	    Assert.assertEquals(1, stage.getAggregatedCount());
+	    Assert.assertSame(removed, worker.removeAggregationFactory("removed"));
+	    Assert.assertNull(worker.getAggregationFactory("removed"));
+	    Assert.assertEquals(1, worker.getStages().size());
+	    worker.aggregate(new NeedleStub(NEEDLE_ID, "needle"));
+	    worker.flush();
+	    Assert.assertEquals(2, stage(worker, "fast").getAggregatedCount());
+	    Assert.assertEquals(1, stage.getAggregatedCount());
+	    Assert.assertEquals(0, stage.getQueueSize());
+	} finally {
+	    worker.doShutdown();
+	}
+    }
+
+    @Test
+    public void testSingleNeedleIsAggregatedOnce() throws InterruptedException {
+	final AsyncAggregatorAggregationWorker worker = new AsyncAggregatorAggregationWorker();
+	worker.addAggregationFactory(new ExecutionAggregationFactory(NeedleIdKeyCreator.INSTANCE, "fast"));
+	try {
+	    worker.aggregate(new NeedleStub(NEEDLE_ID, "needle"));
+	    final AggregationStage fast = stage(worker, "fast");
+	    final long deadline = System.currentTimeMillis() + 5000;
+	    while (fast.getAggregatedCount() < 1 && System.currentTimeMillis() < deadline) {
+		Thread.sleep(5);
+	    }
+	    //a batch of one needle must not be queued to the stage again
+	    Thread.sleep(50);
+	    Assert.assertEquals(1, fast.getAggregatedCount());
+	} finally {
+	    worker.doShutdown();
+	}
+    }
+
+    @Test
+    public void testSlowStageDoesNotHoldBackOthers() throws InterruptedException {
+	final AsyncAggregatorAggregationWorker worker = new AsyncAggregatorAggregationWorker();
+	worker.addAggregationFactory(new ExecutionAggregationFactory(NeedleIdKeyCreator.INSTANCE, "fast"));
+	worker.addAggregationFactory(new SlowAggregationFactory());
+	try {
+	    for (int i = 0; i < 20; i++) {
+		worker.aggregate(new NeedleStub(NEEDLE_ID, "needle"));
+	    }
+	    final AggregationStage fast = stage(worker, "fast");
+	    final AggregationStage slow = stage(worker, "slow");
+	    final long deadline = System.currentTimeMillis() + 5000;
+	    while (fast.getAggregatedCount() < 20 && System.currentTimeMillis() < deadline) {
+		Thread.sleep(5);
+	    }
+	    Assert.assertEquals(20, fast.getAggregatedCount());
+	    //the slow stage needs a second for all needles
+	    Assert.assertTrue(slow.getAggregatedCount() < 20);
+	    while (slow.getAggregatedCount() < 20 && System.currentTimeMillis() < deadline) {
+		Thread.sleep(5);
+	    }
+	    Assert.assertEquals(20, slow.getAggregatedCount());
+	    Assert.assertTrue(slow.getMaximumLagMillis() >= fast.getMaximumLagMillis());
+	    Assert.assertEquals(0, worker.getDroppedNeedleCount());
+	} finally {
+	    worker.doShutdown();
+	}
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2013,
+ * Marco Brade
+ * 							[https://github.com/mbrade]
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice,
+ *       this list of conditions and the following disclaimer in the documentation
+ *       and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.sf.needles.aggregation.worker;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.Assert;
+import net.sf.needles.NeedleId;
+import net.sf.needles.NeedleInfo;
+import net.sf.needles.NeedleStub;
+
+import org.junit.Test;
+
+public class TestOverflowPolicy {
+
+    private static final NeedleId NEEDLE_ID = new NeedleId(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16 });
+
+    /**
+     * Queues needles without ever aggregating them.
+     */
+    private static class QueueingAggregationWorker extends AggregationWorker {
+
+	@Override
+	public boolean continueAggregation() {
+	    return true;
+	}
+
+	@Override
+	void doShutdown() {
+	}
+
+	@Override
+	boolean shouldAggregateNow() {
+	    return false;
+	}
+    }
+
+    private static AggregationWorker worker(final OverflowPolicy overflowPolicy) {
+	final AggregationWorker result = new QueueingAggregationWorker();
+	result.setQueueCapacity(4);
+	result.setOverflowPolicy(overflowPolicy);
+	for (int i = 0; i < 6; i++) {
+	    result.aggregate(new NeedleStub(NEEDLE_ID, "needle" + i));
+	}
+	return result;
+    }
+
+    @Test
+    public void testBlock() {
+	final AggregationWorker worker = new QueueingAggregationWorker();
+	worker.setQueueCapacity(2);
+	worker.setOverflowPolicy(OverflowPolicy.BLOCK);
+	worker.setBlockTimeoutMillis(20);
+	worker.aggregate(new NeedleStub(NEEDLE_ID, "first"));
+	worker.aggregate(new NeedleStub(NEEDLE_ID, "first"));
+	final long start = System.nanoTime();
+	worker.aggregate(new NeedleStub(NEEDLE_ID, "second"));
+	Assert.assertTrue(System.nanoTime() - start >= 20000000);
+	Assert.assertEquals(1, worker.getDroppedNeedleCount());
+	Assert.assertEquals("first", worker.queue.poll().getName());
+    }
+
+    @Test
+    public void testDropNewest() {
+	final AggregationWorker worker = worker(OverflowPolicy.DROP_NEWEST);
+	Assert.assertEquals(4, worker.getQueueSize());
+	Assert.assertEquals(2, worker.getDroppedNeedleCount());
+	Assert.assertEquals("needle0", worker.queue.poll().getName());
+    }
+
+    @Test
+    public void testDropOldest() {
+	final AggregationWorker worker = worker(OverflowPolicy.DROP_OLDEST);
+	Assert.assertEquals(4, worker.getQueueSize());
+	Assert.assertEquals(2, worker.getDroppedNeedleCount());
+	Assert.assertEquals("needle2", worker.queue.poll().getName());
+    }
+
+    @Test
+    public void testQueueCapacityChangeKeepsNeedles() throws Exception {
+	final int threads = 4;
+	final int needles = 50000;
+	final AggregationWorker worker = new QueueingAggregationWorker();
+	final CyclicBarrier barrier = new CyclicBarrier(threads + 1);
+	final CountDownLatch done = new CountDownLatch(threads);
+	final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+	for (int t = 0; t < threads; t++) {
+	    new Thread(new Runnable() {
+		@Override
+		public void run() {
+		    try {
+			barrier.await();
+			for (int i = 0; i < needles; i++) {
+			    worker.aggregate(new NeedleStub(NEEDLE_ID, "needle"));
+			}
+		    } catch (final Throwable e) {
+			failure.set(e);
+		    } finally {
+			done.countDown();
+		    }
+		}
+	    }).start();
+	}
+	barrier.await();
+	//replace the queue while the needles get queued and consumed
+	int consumed = 0;
+	for (int i = 0; done.getCount() > 0; i++) {
+	    worker.setQueueCapacity(((i & 1) == 0) ? 512 : 1024);
+	    while (worker.queue.poll() != null) {
+		consumed++;
+	    }
+	}
+	done.await();
+	Assert.assertNull(failure.get());
+	//every needle got either consumed, is still queued or was counted as dropped
+	Assert.assertEquals(threads * needles, consumed + worker.getQueueSize() + worker.getDroppedNeedleCount());
+    }
+
+    @Test
+    public void testSample() {
+	final AggregationWorker worker = new QueueingAggregationWorker();
+	worker.setQueueCapacity(1024);
+	worker.setOverflowPolicy(OverflowPolicy.SAMPLE);
+	for (int i = 0; i < 10000; i++) {
+	    worker.aggregate(new NeedleStub(NEEDLE_ID, "needle"));
+	}
+	//the first half gets queued unconditionally, the rest only by chance
+	Assert.assertTrue(worker.getQueueSize() >= 512);
+	Assert.assertEquals(10000, worker.getQueueSize() + worker.getDroppedNeedleCount());
+	NeedleInfo needle = null;
+	int polled = 0;
+	while ((needle = worker.queue.poll()) != null) {
+	    Assert.assertEquals("needle", needle.getName());
+	    polled++;
+	}
+	Assert.assertTrue(polled >= 512);
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2013,
+ * Marco Brade
+ * 							[https://github.com/mbrade]
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice,
+ *       this list of conditions and the following disclaimer in the documentation
+ *       and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.sf.needles.aggregation.worker;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import junit.framework.Assert;
+import net.sf.needles.NeedleId;
+import net.sf.needles.NeedleInfo;
+import net.sf.needles.NeedleStub;
+import net.sf.needles.aggregation.Aggregation;
+import net.sf.needles.aggregation.ExecutionAggregation;
+import net.sf.needles.aggregation.ExecutionAggregationFactory;
+import net.sf.needles.aggregation.ExecutionAggregationImpl;
+import net.sf.needles.aggregation.PercentileAggregationFactory;
+import net.sf.needles.aggregation.PercentileAggregationImpl;
+import net.sf.needles.aggregation.Top10AggregationFactory;
+import net.sf.needles.aggregation.Top10AggregationImpl;
+import net.sf.needles.aggregation.keycreator.NeedleIdKeyCreator;
+
+import org.junit.Test;
+
+public class TestPreAggregatingAggregationWorker {
+
+    private static final NeedleId NEEDLE_ID = new NeedleId(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16 });
+    private static final int THREADS = 4;
+    private static final int NEEDLES_PER_THREAD = 1000;
+
+    @Test
+    public void testNeedlesAreMergedOnFlush() throws InterruptedException {
+	final PreAggregatingAggregationWorker worker = new PreAggregatingAggregationWorker();
+	worker.setMergeIntervalMillis(60 * 60 * 1000);
+	final ExecutionAggregationFactory execution = new ExecutionAggregationFactory(NeedleIdKeyCreator.INSTANCE, "execution");
+	final PercentileAggregationFactory percentile = new PercentileAggregationFactory(NeedleIdKeyCreator.INSTANCE, "percentile");
+	final Top10AggregationFactory top10 = new Top10AggregationFactory(NeedleIdKeyCreator.INSTANCE, "top10");
+	worker.addAggregationFactory(execution);
+	worker.addAggregationFactory(percentile);
+	worker.addAggregationFactory(top10);
+	try {
+	    final Thread[] threads = new Thread[THREADS];
+	    for (int i = 0; i < threads.length; i++) {
+		threads[i] = new Thread() {
+		    @Override
+		    public void run() {
+			for (int j = 0; j < NEEDLES_PER_THREAD; j++) {
+			    worker.aggregate(new NeedleStub(NEEDLE_ID, "needle"));
+			}
+		    }
+		};
+		threads[i].start();
+	    }
+	    for (final Thread thread : threads) {
+		thread.join();
+	    }
+	    final NeedleStub needle = new NeedleStub(NEEDLE_ID, "needle");
+	    final ExecutionAggregationImpl executionAggregation = (ExecutionAggregationImpl) execution.getAggregation(needle);
+	    //the durations are held back by the threads until the merge
+	    Assert.assertEquals(0, executionAggregation.getMeasurements());
+	    worker.flush();
+	    Assert.assertEquals(THREADS * NEEDLES_PER_THREAD, executionAggregation.getMeasurements());
+	    Assert.assertEquals(THREADS * NEEDLES_PER_THREAD, ((PercentileAggregationImpl) percentile.getAggregation(needle)).getMeasurements());
+	    Assert.assertEquals(10, ((Top10AggregationImpl) top10.getAggregation(needle)).getTop10Needles().size());
+	    Assert.assertEquals(0, worker.getDroppedNeedleCount());
+	} finally {
+	    worker.doShutdown();
+	}
+    }
+
+    @Test
+    public void testMergerMergesPeriodically() throws InterruptedException {
+	final PreAggregatingAggregationWorker worker = new PreAggregatingAggregationWorker();
+	worker.setMergeIntervalMillis(10);
+	final ExecutionAggregationFactory execution = new ExecutionAggregationFactory(NeedleIdKeyCreator.INSTANCE, "execution");
+	worker.addAggregationFactory(execution);
+	try {
+	    final NeedleStub needle = new NeedleStub(NEEDLE_ID, "needle");
+	    worker.aggregate(needle);
+	    //the merger creates the aggregation as well
+	    final long deadline = System.currentTimeMillis() + 5000;
+	    ExecutionAggregationImpl executionAggregation = null;
+	    while ((executionAggregation == null || executionAggregation.getMeasurements() < 1) && System.currentTimeMillis() < deadline) {
+		Thread.sleep(5);
+		executionAggregation = (ExecutionAggregationImpl) execution.getAggregation(needle);
+	    }
+	    Assert.assertEquals(1, executionAggregation.getMeasurements());
+	} finally {
+	    worker.doShutdown();
+	}
+	//after the shutdown needles get aggregated right away
+	worker.aggregate(new NeedleStub(NEEDLE_ID, "needle"));
+	Assert.assertEquals(2, ((ExecutionAggregationImpl) execution.getAggregation(new NeedleStub(NEEDLE_ID, "needle"))).getMeasurements());
+    }
+
+    @Test
+    public void testNeedleThreadsDontLookUpAggregations() throws InterruptedException {
+	final PreAggregatingAggregationWorker worker = new PreAggregatingAggregationWorker();
+	worker.setMergeIntervalMillis(60 * 60 * 1000);
+	final Set<Thread> lookingUp = Collections.newSetFromMap(new ConcurrentHashMap<Thread, Boolean>());
+	final ExecutionAggregationFactory execution = new ExecutionAggregationFactory(NeedleIdKeyCreator.INSTANCE, "execution") {
+	    @Override
+	    public ExecutionAggregation getOrCreateAggregation(final NeedleInfo needle) {
+		lookingUp.add(Thread.currentThread());
+		return super.getOrCreateAggregation(needle);
+	    }
+	};
+	worker.addAggregationFactory(execution);
+	try {
+	    final Thread[] threads = new Thread[THREADS];
+	    for (int round = 0; round < 2; round++) {
+		//the first round gets resolved by the merge, the second one gets folded into pre-aggregations of the resolved aggregation
+		for (int i = 0; i < threads.length; i++) {
+		    threads[i] = new Thread() {
+			@Override
+			public void run() {
+			    for (int j = 0; j < worker.getBatchSize() - 1; j++) {
+				worker.aggregate(new NeedleStub(NEEDLE_ID, "needle"));
+			    }
+			}
+		    };
+		    threads[i].start();
+		}
+		for (final Thread thread : threads) {
+		    thread.join();
+		}
+		worker.flush();
+		for (final Thread thread : threads) {
+		    Assert.assertFalse(lookingUp.contains(thread));
+		}
+	    }
+	    final Aggregation<?> aggregation = execution.getAggregation(new NeedleStub(NEEDLE_ID, "needle"));
+	    Assert.assertEquals(2 * THREADS * (worker.getBatchSize() - 1), ((ExecutionAggregationImpl) aggregation).getMeasurements());
+	    Assert.assertEquals(1, worker.getResolvedAggregationCount());
+	} finally {
+	    worker.doShutdown();
+	}
+    }
+}
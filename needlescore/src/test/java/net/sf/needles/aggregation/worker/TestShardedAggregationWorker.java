@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2013,
+ * Marco Brade
+ * 							[https://github.com/mbrade]
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice,
+ *       this list of conditions and the following disclaimer in the documentation
+ *       and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.sf.needles.aggregation.worker;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.Assert;
+import net.sf.needles.NeedleId;
+import net.sf.needles.NeedleStub;
+import net.sf.needles.aggregation.Aggregation;
+import net.sf.needles.aggregation.ExecutionAggregationFactory;
+import net.sf.needles.aggregation.ExecutionAggregationImpl;
+import net.sf.needles.aggregation.keycreator.NeedleNameKeyCreator;
+
+import org.junit.Test;
+
+public class TestShardedAggregationWorker {
+
+    private static long measurements(final ExecutionAggregationFactory factory) {
+	long result = 0;
+	for (final Aggregation<?> aggregation : factory.getRootAggregations()) {
+	    result += ((ExecutionAggregationImpl) aggregation).getMeasurements();
+	}
+	return result;
+    }
+
+    private static void aggregate(final ShardedAggregationWorker worker, final int threads, final int needles, final int roots, final boolean idPerNeedle) throws Exception {
+	final CyclicBarrier barrier = new CyclicBarrier(threads);
+	final CountDownLatch done = new CountDownLatch(threads);
+	final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+	for (int t = 0; t < threads; t++) {
+	    new Thread(new Runnable() {
+		@Override
+		public void run() {
+		    try {
+			barrier.await();
+			for (int i = 0; i < needles; i++) {
+			    final byte root = (byte) (i % roots);
+			    worker.aggregate(new NeedleStub(new NeedleId(new byte[] { root, (byte) (idPerNeedle ? i : 2), 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16 }), "root" + root));
+			}
+		    } catch (final Throwable e) {
+			failure.set(e);
+		    } finally {
+			done.countDown();
+		    }
+		}
+	    }).start();
+	}
+	done.await();
+	Assert.assertNull(failure.get());
+    }
+
+    @Test
+    public void testShardedAggregation() throws Exception {
+	final int threads = 8;
+	final int roots = 32;
+	final int needles = 4800;
+	final ShardedAggregationWorker worker = new ShardedAggregationWorker();
+	worker.setShardCount(4);
+	final ExecutionAggregationFactory factory = new ExecutionAggregationFactory();
+	worker.addAggregationFactory(factory);
+	aggregate(worker, threads, needles, roots, false);
+	try {
+	    //the queued needles get aggregated by the flush
+	    worker.flush();
+	    Assert.assertEquals(0, worker.getQueueSize());
+	    Assert.assertEquals(0, worker.getDroppedNeedleCount());
+	    Assert.assertEquals((long) threads * needles, measurements(factory));
+	    Assert.assertEquals(roots, factory.getRootAggregations().size());
+	    for (final Aggregation<?> aggregation : factory.getRootAggregations()) {
+		Assert.assertEquals((long) threads * needles / roots, ((ExecutionAggregationImpl) aggregation).getMeasurements());
+	    }
+	} finally {
+	    worker.doShutdown();
+	}
+    }
+
+    @Test
+    public void testRootsOfSeveralShardsShareAnAggregation() throws Exception {
+	final int threads = 8;
+	final int roots = 32;
+	final int needles = 4800;
+	final ShardedAggregationWorker worker = new ShardedAggregationWorker();
+	worker.setShardCount(4);
+	final ExecutionAggregationFactory factory = new ExecutionAggregationFactory(NeedleNameKeyCreator.INSTANCE);
+	worker.addAggregationFactory(factory);
+	//every needle has a root id of its own, the roots of a name are spread over all shards
+	aggregate(worker, threads, needles, roots, true);
+	worker.doShutdown();
+	Assert.assertEquals(0, worker.getQueueSize());
+	Assert.assertEquals(0, worker.getDroppedNeedleCount());
+	Assert.assertEquals(roots, factory.getRootAggregations().size());
+	Assert.assertEquals((long) threads * needles, measurements(factory));
+	for (final Aggregation<?> aggregation : factory.getRootAggregations()) {
+	    Assert.assertEquals((long) threads * needles / roots, ((ExecutionAggregationImpl) aggregation).getMeasurements());
+	}
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testShardCountIsFixedOnceStarted() {
+	final ShardedAggregationWorker worker = new ShardedAggregationWorker();
+	try {
+	    worker.aggregate(new NeedleStub(new NeedleId(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16 }), "root"));
+	    worker.setShardCount(2);
+	} finally {
+	    worker.doShutdown();
+	}
+    }
+}